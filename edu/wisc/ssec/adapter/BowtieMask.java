@@ -0,0 +1,239 @@
+/*
+ * This file is part of McIDAS-V
+ *
+ * Copyright 2007-2025
+ * Space Science and Engineering Center (SSEC)
+ * University of Wisconsin - Madison
+ * 1225 W. Dayton Street, Madison, WI 53706, USA
+ * https://www.ssec.wisc.edu/mcidas/
+ * 
+ * All Rights Reserved
+ * 
+ * McIDAS-V is built on Unidata's IDV and SSEC's VisAD libraries, and
+ * some McIDAS-V source code is based on IDV and VisAD source code.  
+ * 
+ * McIDAS-V is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * McIDAS-V is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/.
+ */
+
+package edu.wisc.ssec.adapter;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Precomputed bowtie (scan overlap) mask for a whisk-broom sensor. The mask
+ * depends only on the detector layout, so it is built once per sensor name
+ * and shared by every granule and band of that sensor.
+ */
+public class BowtieMask {
+
+    private static final Map<String, BowtieMask> masks = new ConcurrentHashMap<>();
+
+    /** Placeholder for sensors without a bowtie mask. */
+    private static final BowtieMask NONE = new BowtieMask(null, 0, 0);
+
+    private final String sensorName;
+
+    private final int numDetectors;
+
+    private final int scanWidth;
+
+    /** masked[detIdx][fov] is true if that pixel should be dropped. */
+    private final boolean[][] masked;
+
+    /** Whether detector detIdx has any masked pixel at all. */
+    private final boolean[] detectorMasked;
+
+    private BowtieMask(String sensorName, int numDetectors, int scanWidth) {
+        this.sensorName = sensorName;
+        this.numDetectors = numDetectors;
+        this.scanWidth = scanWidth;
+        this.masked = new boolean[numDetectors][scanWidth];
+        this.detectorMasked = new boolean[numDetectors];
+
+        for (int detIdx = 0; detIdx < numDetectors; detIdx++) {
+            for (int fov = 0; fov < scanWidth; fov++) {
+                if (isMasked(sensorName, detIdx, fov)) {
+                    masked[detIdx][fov] = true;
+                    detectorMasked[detIdx] = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the shared mask for a sensor.
+     *
+     * @param sensorName Sensor name as returned by the data source, e.g. {@code MODIS_1KM}.
+     * @return The mask, or {@code null} if the sensor has no bowtie mask.
+     */
+    public static BowtieMask getMask(String sensorName) {
+        if (sensorName == null) {
+            return null;
+        }
+        BowtieMask mask = masks.computeIfAbsent(sensorName, name -> {
+            switch (name) {
+                case "MODIS_1KM":
+                    return new BowtieMask(name, 10, 1354);
+                case "MODIS_HKM":
+                    return new BowtieMask(name, 20, 2708);
+                case "MODIS_QKM":
+                    return new BowtieMask(name, 40, 5416);
+                case "MERSI_QKM":
+                    return new BowtieMask(name, 40, 8192);
+                default:
+                    return NONE;
+            }
+        });
+        return (mask == NONE) ? null : mask;
+    }
+
+    public String getSensorName() {
+        return sensorName;
+    }
+
+    public int getNumDetectors() {
+        return numDetectors;
+    }
+
+    /**
+     * Set masked pixels of one along-track row to NaN.
+     *
+     * @param values   Range values.
+     * @param offset   Index of the first pixel of the row in {@code values}.
+     * @param length   Number of pixels in the row.
+     * @param line     Absolute along-track line (scan line) of the row.
+     * @param fovStart Absolute cross-track index of the first pixel.
+     * @param fovStride Cross-track stride between pixels.
+     */
+    public void apply(float[] values, int offset, int length, int line, int fovStart, int fovStride) {
+        int detIdx = line % numDetectors;
+        if (detIdx < 0 || !detectorMasked[detIdx]) {
+            return;
+        }
+        boolean[] row = masked[detIdx];
+        for (int i = 0; i < length; i++) {
+            int fov = fovStart + i * fovStride;
+            if (fov >= 0 && fov < scanWidth && row[fov]) {
+                values[offset + i] = Float.NaN;
+            }
+        }
+    }
+
+    /**
+     * Set masked pixels of a swath subset, laid out row-major as
+     * (track, xtrack), to NaN.
+     *
+     * @param values      Range values, length {@code trackLen * xtrackLen}.
+     * @param trackLen    Number of along-track rows.
+     * @param xtrackLen   Number of pixels per row.
+     * @param trackStart  Absolute along-track line of the first row.
+     * @param trackStride Along-track stride between rows.
+     * @param fovStart    Absolute cross-track index of the first column.
+     * @param fovStride   Cross-track stride between columns.
+     */
+    public void apply(float[] values, int trackLen, int xtrackLen, int trackStart, int trackStride,
+                      int fovStart, int fovStride) {
+        for (int row = 0; row < trackLen; row++) {
+            apply(values, row * xtrackLen, xtrackLen, trackStart + row * trackStride, fovStart, fovStride);
+        }
+    }
+
+    /**
+     * Bowtie overlap regions per sensor, evaluated only while building a mask.
+     */
+    private static boolean isMasked(String sensorName, int detIdx, int fov) {
+        switch (sensorName) {
+            case "MODIS_1KM":
+                if ((fov >= 0 && fov < 250) || (fov < 1354 && fov >= 1104)) {
+                    if ((detIdx == 9) || (detIdx == 0)) {
+                        return true;
+                    }
+                }
+                if ((fov >= 250 && fov < 340) || (fov >= 1014 && fov <= 1104)) {
+                    if ((detIdx == 9)) {
+                        return true;
+                    }
+                }
+                return false;
+
+            case "MODIS_HKM":
+                if ((fov >= 0 && fov < 500) || (fov < 2708 && fov >= 2208)) {
+                    if ((detIdx >= 0 && detIdx < 2) || (detIdx >= 18)) {
+                        return true;
+                    }
+                }
+                if ((fov >= 500 && fov < 800) || (fov >= 1908 && fov <= 2208)) {
+                    if ((detIdx == 0) || (detIdx == 19)) {
+                        return true;
+                    }
+                }
+                return false;
+
+            case "MODIS_QKM":
+                if ((fov >= 0 && fov < 1000) || (fov < 5416 && fov >= 4416)) {
+                    if ((detIdx < 3) || (detIdx >= 37)) {
+                        return true;
+                    }
+                }
+                if ((fov >= 1000 && fov < 1300) || (fov >= 4116 && fov < 4416)) {
+                    if ((detIdx < 2) || (detIdx >= 38)) {
+                        return true;
+                    }
+                }
+                if ((fov >= 1300 && fov < 1600) || (fov >= 3816 && fov < 4116)) {
+                    if ((detIdx <= 1) || (detIdx >= 38)) {
+                        return true;
+                    }
+                }
+                if ((fov >= 1600 && fov < 2600) || (fov >= 2860 && fov < 3816)) {
+                    if ((detIdx == 0) || (detIdx == 39)) {
+                        return true;
+                    }
+                }
+                return false;
+
+            case "MERSI_QKM":
+                if ((fov >= 0 && fov < 1024) || (fov < 8192 && fov >= 7168)) {
+                    if ((detIdx < 6) || (detIdx > 33)) {
+                        return true;
+                    }
+                }
+                if ((fov >= 1024 && fov < 1576) || (fov >= 6516 && fov <= 7168)) {
+                    if ((detIdx < 5) || (detIdx > 35)) {
+                        return true;
+                    }
+                }
+                if ((fov >= 1576 && fov < 2176) || (fov >= 6016 && fov <= 6516)) {
+                    if ((detIdx < 2) || (detIdx > 37)) {
+                        return true;
+                    }
+                }
+                if ((fov >= 2176 && fov < 3176) || (fov >= 5016 && fov <= 6016)) {
+                    if ((detIdx < 1) || (detIdx > 38)) {
+                        return true;
+                    }
+                }
+                if ((fov >= 3176 && fov < 3600) || (fov >= 4416 && fov <= 5016)) {
+                    if ((detIdx < 1) || (detIdx >= 40)) {
+                        return true;
+                    }
+                }
+                return false;
+
+            default:
+                return false;
+        }
+    }
+}
@@ -33,7 +33,7 @@ import visad.FlatField;
 import java.util.HashMap;
 
 /**
- *
+ * Reflectance normalized by the cosine of the solar zenith angle.
  */
 public class ReflSolzenCorr extends RangeProcessor {
 
@@ -57,7 +57,7 @@ public class ReflSolzenCorr extends RangeProcessor {
         float[] solzen = null;
 
         try {
-            solzen = ((FlatField) solzenAdapter.getData(subset)).getFloats()[0];
+            solzen = ((FlatField) solzenAdapter.getData(subset)).getFloats(false)[0];
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -57,6 +57,7 @@ import ucar.unidata.util.Range;
 import ucar.unidata.util.ColorTable;
 import edu.wisc.ssec.hydra.data.DataChoice;
 import edu.wisc.ssec.hydra.data.DataSelection;
+import edu.wisc.ssec.adapter.BowtieMask;
 import edu.wisc.ssec.adapter.MultiSpectralData;
 import edu.wisc.ssec.adapter.MultiDimensionSubset;
 import edu.wisc.ssec.adapter.LongitudeLatitudeCoordinateSystem;
@@ -649,142 +650,20 @@ public class Hydra {
     }
 
     public static void reduceSwathBowtie(FlatField image, String sensorName) throws VisADException, RemoteException {
-        if (sensorName == null) {
+        BowtieMask mask = BowtieMask.getMask(sensorName);
+        if (mask == null) {
             return;
         }
         Linear2DSet domSet = (Linear2DSet) image.getDomainSet();
-        float start = (float) domSet.getY().getFirst();
+        int trackStart = (int) domSet.getY().getFirst();
+        int trackStride = Math.max(1, (int) Math.round(domSet.getY().getStep()));
         int fovStart = (int) domSet.getX().getFirst();
-        float[][] newRngVals = image.getFloats(true);
+        int fovStride = Math.max(1, (int) Math.round(domSet.getX().getStep()));
         int[] lens = domSet.getLengths();
-        int XTrkLen = lens[0];
-        int TrkLen = lens[1];
-
-        int numDetectors = 0;
-
-        if (sensorName.equals("MODIS_1KM")) {
-            numDetectors = 10;
-        } else if (sensorName.equals("MODIS_HKM")) {
-            numDetectors = 20;
-        } else if (sensorName.equals("MODIS_QKM")) {
-            numDetectors = 40;
-        } else if (sensorName.equals("MERSI_QKM")) {
-            numDetectors = 40;
-        } else if (sensorName.equals("MERSI_1KM")) {
-            numDetectors = 10;
-        } else {
-            return;
-        }
 
-        switch (sensorName) {
-            case "MODIS_1KM":
-                for (int j = 0; j < TrkLen; j++) {
-                    int detIdx = (j + ((int) start)) % numDetectors;
-                    for (int i = 0; i < XTrkLen; i++) {
-                        int idx = j * XTrkLen + i;
-                        int fov = fovStart + i;
-                        if ((fov >= 0 && fov < 250) || (fov < 1354 && fov >= 1104)) {
-                            if ((detIdx == 9) || (detIdx == 0)) {
-                                newRngVals[0][idx] = Float.NaN;
-                            }
-                        }
-                        if ((fov >= 250 && fov < 340) || (fov >= 1014 && fov <= 1104)) {
-                            if ((detIdx == 9)) {
-                                newRngVals[0][idx] = Float.NaN;
-                            }
-                        }
-                    }
-                }
-                break;
-
-            case "MODIS_HKM":
-                for (int j = 0; j < TrkLen; j++) {
-                    int detIdx = (j + ((int) start)) % numDetectors;
-                    for (int i = 0; i < XTrkLen; i++) {
-                        int idx = j * XTrkLen + i;
-                        int fov = fovStart + i;
-
-                        if ((fov >= 0 && fov < 500) || (fov < 2708 && fov >= 2208)) {
-                            if ((detIdx >= 0 && detIdx < 2) || (detIdx >= 18)) {
-                                newRngVals[0][idx] = Float.NaN;
-                            }
-                        }
-                        if ((fov >= 500 && fov < 800) || (fov >= 1908 && fov <= 2208)) {
-                            if ((detIdx == 0) || (detIdx == 19)) {
-                                newRngVals[0][idx] = Float.NaN;
-                            }
-                        }
-                    }
-                }
-                break;
-
-            case "MODIS_QKM":
-                for (int j = 0; j < TrkLen; j++) {
-                    int detIdx = (j + ((int) start)) % numDetectors;
-                    for (int i = 0; i < XTrkLen; i++) {
-                        int idx = j * XTrkLen + i;
-                        int fov = fovStart + i;
-
-                        if ((fov >= 0 && fov < 1000) || (fov < 5416 && fov >= 4416)) {
-                            if ((detIdx < 3) || (detIdx >= 37)) {
-                                newRngVals[0][idx] = Float.NaN;
-                            }
-                        }
-                        if ((fov >= 1000 && fov < 1300) || (fov >= 4116 && fov < 4416)) {
-                            if ((detIdx < 2) || (detIdx >= 38)) {
-                                newRngVals[0][idx] = Float.NaN;
-                            }
-                        }
-                        if ((fov >= 1300 && fov < 1600) || (fov >= 3816 && fov < 4116)) {
-                            if ((detIdx <= 1) || (detIdx >= 38)) {
-                                newRngVals[0][idx] = Float.NaN;
-                            }
-                        }
-                        if ((fov >= 1600 && fov < 2600) || (fov >= 2860 && fov < 3816)) {
-                            if ((detIdx == 0) || (detIdx == 39)) {
-                                newRngVals[0][idx] = Float.NaN;
-                            }
-                        }
-                    }
-                }
-                break;
-
-            case "MERSI_QKM":
-                for (int j = 0; j < TrkLen; j++) {
-                    int detIdx = (j + ((int) start)) % numDetectors;
-                    for (int i = 0; i < XTrkLen; i++) {
-                        int idx = j * XTrkLen + i;
-                        int fov = fovStart + i;
-
-                        if ((fov >= 0 && fov < 1024) || (fov < 8192 && fov >= 7168)) {
-                            if ((detIdx < 6) || (detIdx > 33)) {
-                                newRngVals[0][idx] = Float.NaN;
-                            }
-                        }
-                        if ((fov >= 1024 && fov < 1576) || (fov >= 6516 && fov <= 7168)) {
-                            if ((detIdx < 5) || (detIdx > 35)) {
-                                newRngVals[0][idx] = Float.NaN;
-                            }
-                        }
-                        if ((fov >= 1576 && fov < 2176) || (fov >= 6016 && fov <= 6516)) {
-                            if ((detIdx < 2) || (detIdx > 37)) {
-                                newRngVals[0][idx] = Float.NaN;
-                            }
-                        }
-                        if ((fov >= 2176 && fov < 3176) || (fov >= 5016 && fov <= 6016)) {
-                            if ((detIdx < 1) || (detIdx > 38)) {
-                                newRngVals[0][idx] = Float.NaN;
-                            }
-                        }
-                        if ((fov >= 3176 && fov < 3600) || (fov >= 4416 && fov <= 5016)) {
-                            if ((detIdx < 1) || (detIdx >= 40)) {
-                                newRngVals[0][idx] = Float.NaN;
-                            }
-                        }
-                    }
-                }
-                break;
-        }
+        // mask in place, no need to copy the range
+        float[][] newRngVals = image.getFloats(false);
+        mask.apply(newRngVals[0], lens[1], lens[0], trackStart, trackStride, fovStart, fovStride);
 
         image.setSamples(newRngVals, false);
     }
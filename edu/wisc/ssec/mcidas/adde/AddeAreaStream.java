@@ -0,0 +1,441 @@
+/*
+ * This file is part of McIDAS-V
+ *
+ * Copyright 2007-2025
+ * Space Science and Engineering Center (SSEC)
+ * University of Wisconsin - Madison
+ * 1225 W. Dayton Street, Madison, WI 53706, USA
+ * https://www.ssec.wisc.edu/mcidas/
+ * 
+ * All Rights Reserved
+ * 
+ * McIDAS-V is built on Unidata's IDV and SSEC's VisAD libraries, and
+ * some McIDAS-V source code is based on IDV and VisAD source code.  
+ * 
+ * McIDAS-V is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * McIDAS-V is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/.
+ */
+
+package edu.wisc.ssec.mcidas.adde;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Decodes an ADDE image (AGET) reply as it arrives.
+ * <p>
+ * The reply is an AREA file: a 64 word directory, the navigation and
+ * calibration blocks, the image lines, then the auxiliary block and the
+ * comment cards. Rather than reading all of it into memory first, this
+ * class reads the blocks in front of the data, then decodes each line
+ * into the range array as soon as its bytes are in. Only one line is
+ * buffered, and the decoding overlaps the transfer. The GZIP and
+ * COMPRESS transfer modes are undone by {@link AddeURLConnection}'s
+ * stream, so they stream too.
+ * <p>
+ * {@link LineListener}s are told as lines are decoded, for example to
+ * draw an image while it loads.
+ * <p>
+ * Replies written on a machine of the other byte order are swapped, as
+ * AreaFile does: the directory except its text words, the navigation
+ * block except its type word, the auxiliary block and 2 and 4 byte data.
+ * <p>
+ * Usage:
+ * <pre>
+ *   AddeAreaStream stream = new AddeAreaStream(url);
+ *   try {
+ *     int[] dir = stream.getDirectory();
+ *     float[][] values = stream.readFloats(scale);
+ *     int[] nav = stream.getNavigation();
+ *     int[] aux = stream.getAuxiliary();
+ *   } finally {
+ *     stream.close();
+ *   }
+ * </pre>
+ */
+public class AddeAreaStream
+{
+
+  private static final Logger LOGGER =
+    Logger.getLogger(AddeAreaStream.class.getName());
+
+  /** Receives progress as lines are decoded. */
+  public interface LineListener
+  {
+    /**
+     * Lines have been decoded into the range array.
+     *
+     * @param stream     the stream that decoded them
+     * @param values     the range array being filled
+     * @param firstLine  first line decoded since the last call
+     * @param count      number of lines decoded since the last call
+     */
+    void linesDecoded(AddeAreaStream stream, float[][] values,
+                      int firstLine, int count);
+  }
+
+  // directory words, zero based
+  private static final int DIR_SIZE = 64;
+  private static final int AD_VERSION = 1;
+  private static final int AD_NUMLINES = 8;
+  private static final int AD_NUMELEMS = 9;
+  private static final int AD_DATAWIDTH = 10;
+  private static final int AD_NUMBANDS = 13;
+  private static final int AD_PFXSIZE = 14;
+  private static final int AD_DATAOFFSET = 33;
+  private static final int AD_NAVOFFSET = 34;
+  private static final int AD_CALOFFSET = 62;
+  private static final int AD_AUXOFFSET = 59;
+  private static final int AD_NUMCOMMENTS = 63;
+
+  /** directory version word of an AREA file in our byte order */
+  private static final int VERSION_NUMBER = 4;
+
+  /** bytes in a comment card */
+  private static final int COMMENT_SIZE = 80;
+
+  private final DataInputStream in;
+  private final List<LineListener> listeners = new ArrayList<LineListener>();
+
+  private final int[] dir = new int[DIR_SIZE];
+  private byte[] header;
+  private boolean swap;
+  private int[] nav;
+  private int[] aux;
+  private int linesRead;
+  private int notifyEvery;
+
+  /**
+   * Connect to the server and read the directory and the blocks before
+   * the image data.
+   *
+   * @param source  ADDE image URL
+   *
+   * @throws IOException  on a bad request or reply
+   */
+  public AddeAreaStream(String source)
+    throws IOException
+  {
+    this(open(source));
+  }
+
+  /**
+   * Decode an AREA reply from a stream positioned at its directory.
+   *
+   * @param in  the reply, after the leading byte count
+   *
+   * @throws IOException  on a bad reply
+   */
+  AddeAreaStream(DataInputStream in)
+    throws IOException
+  {
+    this.in = in;
+    readHeader();
+  }
+
+  private static DataInputStream open(String source)
+    throws IOException
+  {
+    URLConnection connection = new URL(source).openConnection();
+    if (!(connection instanceof AddeURLConnection)) {
+      throw new AddeURLException("Not an ADDE URL: " + source);
+    }
+    return ((AddeURLConnection) connection).getDataInputStream();
+  }
+
+  /**
+   * Read the directory and everything up to the data offset.
+   */
+  private void readHeader()
+    throws IOException
+  {
+    byte[] dirBytes = new byte[DIR_SIZE * 4];
+    in.readFully(dirBytes);
+    for (int i = 0; i < DIR_SIZE; i++) {
+      dir[i] = getInt(dirBytes, i * 4, false);
+    }
+    if (dir[AD_VERSION] != VERSION_NUMBER) {
+      swap = true;
+      for (int i = 0; i < DIR_SIZE; i++) {
+        if (!isTextWord(i)) {
+          dir[i] = Integer.reverseBytes(dir[i]);
+        }
+      }
+      if (dir[AD_VERSION] != VERSION_NUMBER) {
+        throw new AddeURLException("Reply is not an AREA file");
+      }
+    }
+    int dataOffset = dir[AD_DATAOFFSET];
+    if (dataOffset < dirBytes.length) {
+      throw new AddeURLException("Invalid data offset " + dataOffset);
+    }
+    header = new byte[dataOffset];
+    System.arraycopy(dirBytes, 0, header, 0, dirBytes.length);
+    in.readFully(header, dirBytes.length, dataOffset - dirBytes.length);
+    notifyEvery = Math.max(1, getLines() / 20);
+    if (LOGGER.isLoggable(Level.FINEST)) {
+      LOGGER.finest("AREA reply: " + getLines() + " lines, " + getElements()
+        + " elements, " + getBands() + " bands of " + dir[AD_DATAWIDTH]
+        + " bytes, swapped=" + swap);
+    }
+  }
+
+  /**
+   * The text words of the directory, which are never swapped.
+   */
+  private static boolean isTextWord(int word)
+  {
+    return ((word >= 24) && (word <= 31)) || (word == 51) || (word == 52)
+      || (word == 56) || (word == 57);
+  }
+
+  private int getInt(byte[] bytes, int offset, boolean swapped)
+  {
+    int v = ((bytes[offset] & 0xff) << 24)
+      | ((bytes[offset + 1] & 0xff) << 16)
+      | ((bytes[offset + 2] & 0xff) << 8)
+      | (bytes[offset + 3] & 0xff);
+    return swapped ? Integer.reverseBytes(v) : v;
+  }
+
+  /**
+   * Add a listener for decoded lines.
+   *
+   * @param listener  the listener
+   * @param every     notify after this many lines, or 0 for the default
+   *                  of about 20 calls per image
+   */
+  public void addLineListener(LineListener listener, int every)
+  {
+    listeners.add(listener);
+    if (every > 0) {
+      notifyEvery = every;
+    }
+  }
+
+  /**
+   * Get the 64 word AREA directory, in our byte order.
+   *
+   * @return the directory
+   */
+  public int[] getDirectory()
+  {
+    return dir;
+  }
+
+  /**
+   * Number of image lines.
+   *
+   * @return lines
+   */
+  public int getLines()
+  {
+    return dir[AD_NUMLINES];
+  }
+
+  /**
+   * Number of elements per line.
+   *
+   * @return elements
+   */
+  public int getElements()
+  {
+    return dir[AD_NUMELEMS];
+  }
+
+  /**
+   * Number of bands.
+   *
+   * @return bands
+   */
+  public int getBands()
+  {
+    return Math.max(1, dir[AD_NUMBANDS]);
+  }
+
+  /**
+   * Number of lines decoded so far.
+   *
+   * @return lines read
+   */
+  public int getLinesRead()
+  {
+    return linesRead;
+  }
+
+  /**
+   * Get the navigation block. Only valid once it has been read, which is
+   * at construction when it comes before the data, as it normally does.
+   *
+   * @return the navigation block or null if there is none
+   */
+  public int[] getNavigation()
+  {
+    if (nav == null) {
+      nav = getBlock(dir[AD_NAVOFFSET], header, 0, header.length, true);
+    }
+    return nav;
+  }
+
+  /**
+   * Get the auxiliary block. When it follows the data it is only
+   * available after {@link #readFloats(float)}.
+   *
+   * @return the auxiliary block or null if there is none
+   */
+  public int[] getAuxiliary()
+  {
+    if ((aux == null) && (dir[AD_AUXOFFSET] > 0)
+        && (dir[AD_AUXOFFSET] < header.length)) {
+      aux = getBlock(dir[AD_AUXOFFSET], header, 0, header.length, false);
+    }
+    return aux;
+  }
+
+  /**
+   * Cut a block out of the bytes we have, up to the next block that
+   * starts after it.
+   *
+   * @param offset    file offset of the block
+   * @param bytes     bytes holding the block
+   * @param start     file offset of bytes[0]
+   * @param end       file offset just past the usable bytes
+   * @param typeWord  true if word 0 is text
+   */
+  private int[] getBlock(int offset, byte[] bytes, int start, int end,
+                         boolean typeWord)
+  {
+    if ((offset <= 0) || (offset < start) || (offset >= end)) {
+      return null;
+    }
+    int next = end;
+    int[] offsets = { dir[AD_NAVOFFSET], dir[AD_CALOFFSET],
+                      dir[AD_AUXOFFSET], dir[AD_DATAOFFSET] };
+    for (int o : offsets) {
+      if ((o > offset) && (o < next)) {
+        next = o;
+      }
+    }
+    int words = (next - offset) / 4;
+    int[] block = new int[words];
+    for (int i = 0; i < words; i++) {
+      block[i] = getInt(bytes, offset - start + (i * 4),
+                        swap && !(typeWord && (i == 0)));
+    }
+    return block;
+  }
+
+  /**
+   * Decode the image data into a new range array, one line at a time,
+   * then read the auxiliary block and comments that follow it.
+   *
+   * @param scale  multiplied into every value, for example one over the
+   *               calibration scale factor
+   *
+   * @return values as [band][element + line * elements], line 0 first
+   *
+   * @throws IOException  if the reply ends early or can't be read
+   */
+  public float[][] readFloats(float scale)
+    throws IOException
+  {
+    int lines = getLines();
+    int elements = getElements();
+    int bands = getBands();
+    int width = dir[AD_DATAWIDTH];
+    if ((width != 1) && (width != 2) && (width != 4)) {
+      throw new AddeURLException("Unsupported data width " + width);
+    }
+    int prefix = dir[AD_PFXSIZE];
+    float[][] values = new float[bands][lines * elements];
+    byte[] line = new byte[prefix + (elements * bands * width)];
+    int notified = 0;
+    for (int lineIdx = 0; lineIdx < lines; lineIdx++) {
+      in.readFully(line);
+      int offset = lineIdx * elements;
+      int pos = prefix;
+      for (int e = 0; e < elements; e++) {
+        for (int b = 0; b < bands; b++) {
+          int v;
+          if (width == 1) {
+            v = line[pos] & 0xff;
+          } else if (width == 2) {
+            v = swap
+              ? (short) ((line[pos] & 0xff) | (line[pos + 1] << 8))
+              : (short) ((line[pos] << 8) | (line[pos + 1] & 0xff));
+          } else {
+            v = getInt(line, pos, swap);
+          }
+          values[b][offset + e] = scale * v;
+          pos += width;
+        }
+      }
+      linesRead = lineIdx + 1;
+      if ((linesRead - notified) >= notifyEvery || linesRead == lines) {
+        for (LineListener listener : listeners) {
+          listener.linesDecoded(this, values, notified, linesRead - notified);
+        }
+        notified = linesRead;
+      }
+    }
+    readTrailer(dir[AD_DATAOFFSET] + (lines * line.length));
+    return values;
+  }
+
+  /**
+   * Read what follows the data and pick the auxiliary block out of it.
+   *
+   * @param start  file offset just past the data
+   */
+  private void readTrailer(int start)
+    throws IOException
+  {
+    int auxOffset = dir[AD_AUXOFFSET];
+    if ((auxOffset <= 0) || (auxOffset < start)) {
+      return;
+    }
+    byte[] buf = new byte[8192];
+    ByteArrayOutputStream tail = new ByteArrayOutputStream();
+    int n;
+    try {
+      while ((n = in.read(buf)) > 0) {
+        tail.write(buf, 0, n);
+      }
+    } catch (EOFException e) {
+      // done
+    }
+    byte[] bytes = tail.toByteArray();
+    int end = start + bytes.length - (dir[AD_NUMCOMMENTS] * COMMENT_SIZE);
+    aux = getBlock(auxOffset, bytes, start, Math.max(start, end), false);
+  }
+
+  /**
+   * Close the connection.
+   */
+  public void close()
+  {
+    try {
+      in.close();
+    } catch (IOException e) {
+      // nothing to do
+    }
+  }
+}
@@ -0,0 +1,463 @@
+/*
+ * This file is part of McIDAS-V
+ *
+ * Copyright 2007-2025
+ * Space Science and Engineering Center (SSEC)
+ * University of Wisconsin - Madison
+ * 1225 W. Dayton Street, Madison, WI 53706, USA
+ * https://www.ssec.wisc.edu/mcidas/
+ * 
+ * All Rights Reserved
+ * 
+ * McIDAS-V is built on Unidata's IDV and SSEC's VisAD libraries, and
+ * some McIDAS-V source code is based on IDV and VisAD source code.  
+ * 
+ * McIDAS-V is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * McIDAS-V is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/.
+ */
+
+package edu.wisc.ssec.mcidas.adde;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pool of connected sockets to ADDE servers, kept per host, port and
+ * compression type.
+ * <p>
+ * An ADDE server answers one request per connection and closes it when
+ * the reply has been sent, so a socket can not be used for a second
+ * request. What the pool saves is the TCP handshake: when a server has
+ * been used recently, replacement sockets are opened in the background
+ * after each request, and the next request to that server starts on a
+ * socket that is already connected. A 60 time loop then waits for one
+ * handshake rather than 60.
+ * <p>
+ * Idle sockets are checked before they are handed out and closed after
+ * <code>adde.pool.idle</code> milliseconds (default 15000), since the
+ * server side will eventually give up on them. Each key keeps at most
+ * <code>adde.pool.size</code> idle sockets (default 2), and keys that have
+ * not been used for <code>adde.pool.warm</code> milliseconds (default
+ * 60000) are not refilled. Setting <code>adde.pool.enabled</code> to
+ * false opens a fresh socket for every request, as before.
+ * <p>
+ * {@link AddeURLConnection} takes its sockets from the {@link #getDefault()
+ * default pool}, so every ADDE reader that goes through
+ * <code>adde://</code> URLs, such as <code>AreaAdapter</code>,
+ * <code>AreaDirectoryList</code> and the point readers, shares it. Other
+ * pools can be made for testing against a local stand-in server.
+ */
+public class AddeConnectionPool
+{
+
+  private static final Logger LOGGER =
+    Logger.getLogger(AddeConnectionPool.class.getName());
+
+  /** property to turn the default pool off */
+  public static final String PROP_ENABLED = "adde.pool.enabled";
+
+  /** property for the idle sockets kept per key */
+  public static final String PROP_SIZE = "adde.pool.size";
+
+  /** property for how long idle sockets are kept, in milliseconds */
+  public static final String PROP_IDLE = "adde.pool.idle";
+
+  /** property for how long after its last use a key is refilled */
+  public static final String PROP_WARM = "adde.pool.warm";
+
+  private static AddeConnectionPool defaultPool;
+
+  private final boolean enabled;
+  private final int maxIdle;
+  private final long idleMillis;
+  private final long warmMillis;
+
+  /** idle sockets by key, oldest first */
+  private final Map<String, Deque<IdleSocket>> idle =
+    new HashMap<String, Deque<IdleSocket>>();
+
+  /** last time each key was used */
+  private final Map<String, Long> lastUsed = new HashMap<String, Long>();
+
+  /** keys with a refill under way */
+  private final Set<String> refilling = new HashSet<String>();
+
+  private ScheduledExecutorService executor;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong stale = new AtomicLong();
+  private final AtomicLong evicted = new AtomicLong();
+
+  /**
+   * Create a pool.
+   *
+   * @param enabled     false to always open a new socket
+   * @param maxIdle     idle sockets kept per key
+   * @param idleMillis  how long an idle socket is kept
+   * @param warmMillis  how long after its last use a key is refilled
+   */
+  public AddeConnectionPool(boolean enabled, int maxIdle, long idleMillis,
+                            long warmMillis)
+  {
+    this.enabled = enabled && (maxIdle > 0);
+    this.maxIdle = maxIdle;
+    this.idleMillis = idleMillis;
+    this.warmMillis = warmMillis;
+  }
+
+  /**
+   * Get the pool used by {@link AddeURLConnection}, configured from the
+   * system properties.
+   *
+   * @return the default pool
+   */
+  public static synchronized AddeConnectionPool getDefault()
+  {
+    if (defaultPool == null) {
+      defaultPool = new AddeConnectionPool(
+        !"false".equalsIgnoreCase(System.getProperty(PROP_ENABLED)),
+        Integer.getInteger(PROP_SIZE, 2).intValue(),
+        Long.getLong(PROP_IDLE, 15000L).longValue(),
+        Long.getLong(PROP_WARM, 60000L).longValue());
+    }
+    return defaultPool;
+  }
+
+  /**
+   * Get a connected socket to a server. The caller owns the socket and
+   * closes it, directly or by closing its streams, when the request is
+   * done.
+   *
+   * @param host         server host
+   * @param port         server port
+   * @param compression  compression type of the request
+   *
+   * @return a connected socket
+   *
+   * @throws IOException  if a new socket can not be connected
+   */
+  public Socket acquire(String host, int port, int compression)
+    throws IOException
+  {
+    if (!enabled) {
+      return open(host, port);
+    }
+    String key = key(host, port, compression);
+    Socket socket = null;
+    while (socket == null) {
+      IdleSocket entry = poll(key);
+      if (entry == null) {
+        break;
+      }
+      if (isHealthy(entry.socket)) {
+        socket = entry.socket;
+        hits.incrementAndGet();
+      } else {
+        stale.incrementAndGet();
+        closeQuietly(entry.socket);
+      }
+    }
+    if (socket == null) {
+      misses.incrementAndGet();
+      socket = open(host, port);
+    }
+    synchronized (this) {
+      lastUsed.put(key, Long.valueOf(System.currentTimeMillis()));
+    }
+    refill(key, host, port);
+    return socket;
+  }
+
+  /**
+   * Close all idle sockets and stop the background thread.
+   */
+  public void shutdown()
+  {
+    ScheduledExecutorService toStop;
+    synchronized (this) {
+      for (Deque<IdleSocket> sockets : idle.values()) {
+        for (IdleSocket entry : sockets) {
+          closeQuietly(entry.socket);
+        }
+      }
+      idle.clear();
+      lastUsed.clear();
+      toStop = executor;
+      executor = null;
+    }
+    if (toStop != null) {
+      toStop.shutdownNow();
+    }
+  }
+
+  /**
+   * Get the number of idle sockets held for a key.
+   *
+   * @param host         server host
+   * @param port         server port
+   * @param compression  compression type
+   *
+   * @return idle sockets
+   */
+  public synchronized int getIdleCount(String host, int port,
+                                       int compression)
+  {
+    Deque<IdleSocket> sockets = idle.get(key(host, port, compression));
+    return (sockets == null) ? 0 : sockets.size();
+  }
+
+  /**
+   * Requests that got a pooled socket.
+   *
+   * @return hit count
+   */
+  public long getHitCount()
+  {
+    return hits.get();
+  }
+
+  /**
+   * Requests that had to open a socket.
+   *
+   * @return miss count
+   */
+  public long getMissCount()
+  {
+    return misses.get();
+  }
+
+  /**
+   * A description of the pool's state.
+   *
+   * @return statistics
+   */
+  public synchronized String getStats()
+  {
+    int count = 0;
+    for (Deque<IdleSocket> sockets : idle.values()) {
+      count += sockets.size();
+    }
+    return "ADDE connection pool: " + count + " idle sockets for "
+      + idle.size() + " servers, hits=" + hits.get() + " misses="
+      + misses.get() + " stale=" + stale.get() + " evicted="
+      + evicted.get();
+  }
+
+  private static String key(String host, int port, int compression)
+  {
+    return host.toLowerCase() + ':' + port + ':' + compression;
+  }
+
+  private synchronized IdleSocket poll(String key)
+  {
+    Deque<IdleSocket> sockets = idle.get(key);
+    // newest first, it has the most time left before the server drops it
+    return (sockets == null) ? null : sockets.pollLast();
+  }
+
+  /**
+   * Open replacement sockets for a key in the background.
+   */
+  private void refill(final String key, final String host, final int port)
+  {
+    ScheduledExecutorService runner;
+    synchronized (this) {
+      if (!refilling.add(key)) {
+        return;
+      }
+      startExecutor();
+      runner = executor;
+    }
+    runner.execute(new Runnable() {
+      public void run() {
+        try {
+          while (needsSocket(key)) {
+            Socket socket = open(host, port);
+            if (!offer(key, socket)) {
+              closeQuietly(socket);
+              break;
+            }
+          }
+        } catch (IOException e) {
+          if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("could not pre-connect to " + key + ": " + e);
+          }
+        } finally {
+          synchronized (AddeConnectionPool.this) {
+            refilling.remove(key);
+          }
+        }
+      }
+    });
+  }
+
+  private synchronized boolean needsSocket(String key)
+  {
+    if (executor == null) {
+      return false;
+    }
+    Long used = lastUsed.get(key);
+    if ((used == null)
+        || (System.currentTimeMillis() - used.longValue()) > warmMillis) {
+      return false;
+    }
+    Deque<IdleSocket> sockets = idle.get(key);
+    return (sockets == null) || (sockets.size() < maxIdle);
+  }
+
+  private synchronized boolean offer(String key, Socket socket)
+  {
+    if (executor == null) {
+      return false;
+    }
+    Deque<IdleSocket> sockets = idle.get(key);
+    if (sockets == null) {
+      sockets = new ArrayDeque<IdleSocket>();
+      idle.put(key, sockets);
+    }
+    if (sockets.size() >= maxIdle) {
+      return false;
+    }
+    sockets.addLast(new IdleSocket(socket));
+    return true;
+  }
+
+  /**
+   * Close sockets idle for too long and forget keys gone cold.
+   */
+  private void evict()
+  {
+    long now = System.currentTimeMillis();
+    synchronized (this) {
+      for (Iterator<Map.Entry<String, Deque<IdleSocket>>> it =
+             idle.entrySet().iterator(); it.hasNext(); ) {
+        Deque<IdleSocket> sockets = it.next().getValue();
+        while (!sockets.isEmpty()
+               && (now - sockets.peekFirst().since) > idleMillis) {
+          closeQuietly(sockets.pollFirst().socket);
+          evicted.incrementAndGet();
+        }
+        if (sockets.isEmpty()) {
+          it.remove();
+        }
+      }
+      for (Iterator<Long> it = lastUsed.values().iterator(); it.hasNext(); ) {
+        if ((now - it.next().longValue()) > warmMillis) {
+          it.remove();
+        }
+      }
+    }
+  }
+
+  private void startExecutor()
+  {
+    if (executor != null) {
+      return;
+    }
+    executor = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "ADDE connection pool");
+          t.setDaemon(true);
+          return t;
+        }
+      });
+    long period = Math.max(1000L, idleMillis / 2);
+    executor.scheduleWithFixedDelay(new Runnable() {
+      public void run() {
+        evict();
+      }
+    }, period, period, TimeUnit.MILLISECONDS);
+  }
+
+  private static Socket open(String host, int port)
+    throws IOException
+  {
+    Socket socket = new Socket();
+    try {
+      socket.setKeepAlive(true);
+      socket.setTcpNoDelay(true);
+      socket.connect(new InetSocketAddress(host, port));
+    } catch (IOException e) {
+      closeQuietly(socket);
+      throw e;
+    }
+    return socket;
+  }
+
+  /**
+   * Check that an idle socket is still open. The server sends nothing
+   * until it has a request, so a read that does not time out means the
+   * socket was closed, or is in a state we can't use.
+   */
+  private static boolean isHealthy(Socket socket)
+  {
+    if (socket.isClosed() || !socket.isConnected()
+        || socket.isInputShutdown() || socket.isOutputShutdown()) {
+      return false;
+    }
+    try {
+      int timeout = socket.getSoTimeout();
+      socket.setSoTimeout(1);
+      try {
+        socket.getInputStream().read();
+        return false;
+      } catch (SocketTimeoutException e) {
+        return true;
+      } finally {
+        socket.setSoTimeout(timeout);
+      }
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  private static void closeQuietly(Socket socket)
+  {
+    try {
+      socket.close();
+    } catch (IOException e) {
+      // nothing to do
+    }
+  }
+
+  /** an idle socket and when it went idle */
+  private static class IdleSocket
+  {
+    final Socket socket;
+    final long since;
+
+    IdleSocket(Socket socket)
+    {
+      this.socket = socket;
+      this.since = System.currentTimeMillis();
+    }
+  }
+}
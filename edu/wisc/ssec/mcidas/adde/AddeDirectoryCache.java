@@ -0,0 +1,373 @@
+/*
+ * This file is part of McIDAS-V
+ *
+ * Copyright 2007-2025
+ * Space Science and Engineering Center (SSEC)
+ * University of Wisconsin - Madison
+ * 1225 W. Dayton Street, Madison, WI 53706, USA
+ * https://www.ssec.wisc.edu/mcidas/
+ * 
+ * All Rights Reserved
+ * 
+ * McIDAS-V is built on Unidata's IDV and SSEC's VisAD libraries, and
+ * some McIDAS-V source code is based on IDV and VisAD source code.  
+ * 
+ * McIDAS-V is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * McIDAS-V is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/.
+ */
+
+package edu.wisc.ssec.mcidas.adde;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import edu.wisc.ssec.mcidas.AreaDirectory;
+import edu.wisc.ssec.mcidas.AreaDirectoryList;
+import edu.wisc.ssec.mcidas.AreaFileException;
+
+/**
+ * Shared cache of ADDE image directory (ADIR) listings.
+ * <p>
+ * Choosers and data sources ask for the same dataset listings over and
+ * over: each refresh of a chooser, each relative time bundle that loads,
+ * each data source working out its current directories. This cache keeps
+ * each listing for <code>adde.dircache.ttl</code> seconds (default 60).
+ * <p>
+ * Listings are keyed by the request with the parameters that don't change
+ * the listing (user, project, version, compression, port, debug and
+ * trace) dropped, and the rest in a fixed order. That covers server,
+ * group, descriptor and position, and also band, day, time and the like.
+ * <p>
+ * When a listing of several positions expires, it is refreshed
+ * incrementally. A single-position request for the newest image is made
+ * first. If that image is still the newest in the listing, the listing is
+ * kept for another TTL. Only when a new image has arrived is the whole
+ * listing requested again. Listings of archive days are not probed, since
+ * the probe would not find their newest image.
+ * <p>
+ * Failed requests are not cached. Setting the TTL to 0 turns the cache off.
+ */
+public class AddeDirectoryCache
+{
+
+  private static final Logger LOGGER =
+    Logger.getLogger(AddeDirectoryCache.class.getName());
+
+  /** property for the time to live, in seconds */
+  public static final String PROP_TTL = "adde.dircache.ttl";
+
+  /** most listings kept */
+  private static final int MAX_ENTRIES = 200;
+
+  /** parameters that don't change what is listed */
+  private static final String[] IGNORED = {
+    "USER", "PROJ", "VERSION", "COMPRESS", "PORT", "DEBUG", "TRACE"
+  };
+
+  private static long ttlMillis =
+    Long.getLong(PROP_TTL, 60L).longValue() * 1000L;
+
+  private static final Map<String, Entry> cache =
+    new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        return size() > MAX_ENTRIES;
+      }
+    };
+
+  private static long hits = 0;
+  private static long probes = 0;
+  private static long misses = 0;
+
+  private AddeDirectoryCache()
+  {
+  }
+
+  /**
+   * Get the directory listing for an ADDE image directory request, from
+   * the cache if it is still fresh.
+   *
+   * @param url  ADDE imagedir request
+   *
+   * @return the listing
+   *
+   * @throws AreaFileException  if the listing can't be read
+   */
+  public static AreaDirectoryList getDirectoryList(String url)
+    throws AreaFileException
+  {
+    return getDirectoryList(url, false);
+  }
+
+  /**
+   * Get the directory listing for an ADDE image directory request. With
+   * <code>refresh</code> the cached listing is treated as expired, so it
+   * is checked against the server (incrementally, where it can be) even
+   * if its TTL has not run out. For explicit refreshes and reloads.
+   *
+   * @param url  ADDE imagedir request
+   * @param refresh  check the server even if the listing is fresh
+   *
+   * @return the listing
+   *
+   * @throws AreaFileException  if the listing can't be read
+   */
+  public static AreaDirectoryList getDirectoryList(String url,
+    boolean refresh)
+    throws AreaFileException
+  {
+    if (ttlMillis <= 0) {
+      return new AreaDirectoryList(url);
+    }
+    String key = makeKey(url);
+    Entry entry;
+    synchronized (cache) {
+      entry = cache.get(key);
+      if (entry == null) {
+        entry = new Entry();
+        cache.put(key, entry);
+      }
+    }
+    // one request per listing at a time, other callers wait for it
+    synchronized (entry) {
+      long now = System.currentTimeMillis();
+      if (entry.list != null && !refresh && now < entry.expires) {
+        countHit();
+        return entry.list;
+      }
+      if (entry.list != null && isUnchanged(url, entry.list)) {
+        entry.expires = System.currentTimeMillis() + ttlMillis;
+        return entry.list;
+      }
+      AreaDirectoryList list;
+      try {
+        list = new AreaDirectoryList(url);
+      } catch (AreaFileException e) {
+        synchronized (cache) {
+          if (cache.get(key) == entry) {
+            cache.remove(key);
+          }
+        }
+        throw e;
+      }
+      countMiss();
+      entry.list = list;
+      entry.expires = System.currentTimeMillis() + ttlMillis;
+      return list;
+    }
+  }
+
+  /**
+   * Check whether the newest image in a listing is still the newest one
+   * on the server.
+   */
+  private static boolean isUnchanged(String url, AreaDirectoryList list)
+  {
+    Map<String, String> params = parseParams(url);
+    String pos = params.get("POS");
+    if ((pos == null) || params.containsKey("DAY")
+        || (pos.trim().indexOf(' ') < 0
+            && !"ALL".equalsIgnoreCase(pos.trim()))) {
+      return false;
+    }
+    Date newest = getNewest(list);
+    if (newest == null) {
+      return false;
+    }
+    try {
+      AreaDirectoryList latest =
+        new AreaDirectoryList(replaceParam(url, "POS", "0"));
+      synchronized (cache) {
+        probes++;
+      }
+      Date probed = getNewest(latest);
+      boolean same = newest.equals(probed);
+      if (LOGGER.isLoggable(Level.FINE)) {
+        LOGGER.fine("directory listing " + (same ? "unchanged" : "changed")
+          + ": " + url);
+      }
+      return same;
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  private static Date getNewest(AreaDirectoryList list)
+  {
+    Date newest = null;
+    try {
+      for (Iterator it = list.getDirs().iterator(); it.hasNext(); ) {
+        Date d = ((AreaDirectory) it.next()).getNominalTime();
+        if ((d != null) && ((newest == null) || d.after(newest))) {
+          newest = d;
+        }
+      }
+    } catch (Exception e) {
+      return null;
+    }
+    return newest;
+  }
+
+  /**
+   * Forget the listing for a request, so the next call reads it again.
+   *
+   * @param url  ADDE imagedir request
+   */
+  public static void invalidate(String url)
+  {
+    synchronized (cache) {
+      cache.remove(makeKey(url));
+    }
+  }
+
+  /**
+   * Forget all listings.
+   */
+  public static void clear()
+  {
+    synchronized (cache) {
+      cache.clear();
+    }
+  }
+
+  /**
+   * Set how long listings are kept.
+   *
+   * @param seconds  time to live, 0 to turn the cache off
+   */
+  public static void setTimeToLive(long seconds)
+  {
+    ttlMillis = seconds * 1000L;
+    if (ttlMillis <= 0) {
+      clear();
+    }
+  }
+
+  /**
+   * Get how long listings are kept.
+   *
+   * @return time to live in seconds
+   */
+  public static long getTimeToLive()
+  {
+    return ttlMillis / 1000L;
+  }
+
+  /**
+   * A description of the cache's state.
+   *
+   * @return statistics
+   */
+  public static String getStats()
+  {
+    synchronized (cache) {
+      return "ADDE directory cache: " + cache.size() + " listings, hits="
+        + hits + " revalidated=" + probes + " misses=" + misses
+        + " ttl=" + getTimeToLive() + "s";
+    }
+  }
+
+  private static void countHit()
+  {
+    synchronized (cache) {
+      hits++;
+    }
+  }
+
+  private static void countMiss()
+  {
+    synchronized (cache) {
+      misses++;
+    }
+  }
+
+  /**
+   * Make the cache key: the request path and its parameters, upper cased
+   * and sorted, without the ones that don't change the listing.
+   */
+  static String makeKey(String url)
+  {
+    int q = url.indexOf('?');
+    String base = ((q < 0) ? url : url.substring(0, q)).toLowerCase();
+    List<String> parts = new ArrayList<String>();
+    for (Map.Entry<String, String> p : parseParams(url).entrySet()) {
+      parts.add(p.getKey() + '=' + p.getValue().trim().toUpperCase());
+    }
+    Collections.sort(parts);
+    StringBuilder key = new StringBuilder(base);
+    for (String part : parts) {
+      key.append('&').append(part);
+    }
+    return key.toString();
+  }
+
+  private static Map<String, String> parseParams(String url)
+  {
+    Map<String, String> params = new HashMap<String, String>();
+    int q = url.indexOf('?');
+    if (q < 0) {
+      return params;
+    }
+    for (String pair : url.substring(q + 1).split("&")) {
+      int eq = pair.indexOf('=');
+      if (eq <= 0) {
+        continue;
+      }
+      String name = pair.substring(0, eq).trim().toUpperCase();
+      boolean ignore = false;
+      for (String ignored : IGNORED) {
+        if (ignored.equals(name)) {
+          ignore = true;
+          break;
+        }
+      }
+      if (!ignore) {
+        params.put(name, pair.substring(eq + 1));
+      }
+    }
+    return params;
+  }
+
+  private static String replaceParam(String url, String name, String value)
+  {
+    int q = url.indexOf('?');
+    StringBuilder out = new StringBuilder(url.substring(0, q + 1));
+    boolean first = true;
+    for (String pair : url.substring(q + 1).split("&")) {
+      int eq = pair.indexOf('=');
+      if ((eq > 0) && pair.substring(0, eq).trim().equalsIgnoreCase(name)) {
+        pair = pair.substring(0, eq + 1) + value;
+      }
+      if (!first) {
+        out.append('&');
+      }
+      out.append(pair);
+      first = false;
+    }
+    return out.toString();
+  }
+
+  /** a cached listing */
+  private static class Entry
+  {
+    AreaDirectoryList list;
+    long expires;
+  }
+}
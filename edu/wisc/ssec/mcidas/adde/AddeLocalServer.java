@@ -0,0 +1,908 @@
+/*
+ * This file is part of McIDAS-V
+ *
+ * Copyright 2007-2025
+ * Space Science and Engineering Center (SSEC)
+ * University of Wisconsin - Madison
+ * 1225 W. Dayton Street, Madison, WI 53706, USA
+ * https://www.ssec.wisc.edu/mcidas/
+ * 
+ * All Rights Reserved
+ * 
+ * McIDAS-V is built on Unidata's IDV and SSEC's VisAD libraries, and
+ * some McIDAS-V source code is based on IDV and VisAD source code.  
+ * 
+ * McIDAS-V is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * McIDAS-V is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/.
+ */
+
+package edu.wisc.ssec.mcidas.adde;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-process ADDE serving of local McIDAS AREA datasets.
+ * <p>
+ * Local datasets are normally served by a separate mcservl process
+ * over a loopback socket. For datasets registered here,
+ * {@link AddeURLConnection} instead asks this class for the reply, which
+ * is read straight from memory-mapped AREA files. The reply has the same
+ * bytes a server would send, so all the usual parsing applies.
+ * <p>
+ * Image directory (ADIR) and image data (AGET) requests are handled for
+ * the common cases: relative or absolute positions, one band or all
+ * bands, area or image line/element placement, blow-down magnification,
+ * and the native calibration unit. A request this class can't answer
+ * exactly, such as one needing calibration, earth placement or a
+ * DAY/TIME search, returns null and goes to the mcservl process as
+ * before. Set <code>adde.local.inprocess</code> to false to send
+ * everything to mcservl.
+ */
+public final class AddeLocalServer
+{
+
+  private static final Logger LOGGER =
+    Logger.getLogger(AddeLocalServer.class.getName());
+
+  /** property to turn in-process serving off */
+  public static final String PROP_ENABLED = "adde.local.inprocess";
+
+  /** error text servers use when no image matches */
+  private static final String NO_IMAGES =
+    "No images satisfy the selection criteria";
+
+  /** return code servers use when no image matches */
+  private static final int NO_IMAGES_CODE = -5000;
+
+  /** ADIR position for ALL, the characters "ALL " as an int */
+  private static final String POS_ALL = "1095519264";
+
+  // directory words, zero based
+  private static final int DIR_SIZE = 64;
+  private static final int AD_VERSION = 1;
+  private static final int AD_IMGDATE = 3;
+  private static final int AD_IMGTIME = 4;
+  private static final int AD_STLINE = 5;
+  private static final int AD_STELEM = 6;
+  private static final int AD_NUMLINES = 8;
+  private static final int AD_NUMELEMS = 9;
+  private static final int AD_DATAWIDTH = 10;
+  private static final int AD_LINERES = 11;
+  private static final int AD_ELEMRES = 12;
+  private static final int AD_NUMBANDS = 13;
+  private static final int AD_PFXSIZE = 14;
+  private static final int AD_BANDMAP = 18;
+  private static final int AD_BANDMAP2 = 19;
+  private static final int AD_DATAOFFSET = 33;
+  private static final int AD_NAVOFFSET = 34;
+  private static final int AD_VALCODE = 35;
+  private static final int AD_DOCLENGTH = 48;
+  private static final int AD_CALLENGTH = 49;
+  private static final int AD_LEVLENGTH = 50;
+  private static final int AD_CALTYPE = 51;
+  private static final int AD_AUXOFFSET = 59;
+  private static final int AD_AUXLENGTH = 60;
+  private static final int AD_CALOFFSET = 62;
+  private static final int AD_NUMCOMMENTS = 63;
+
+  /** directory version word of an AREA file in our byte order */
+  private static final int VERSION_NUMBER = 4;
+
+  /** bytes in a comment card */
+  private static final int COMMENT_SIZE = 80;
+
+  /** area number in a file name such as AREA0123 */
+  private static final Pattern AREA_NAME =
+    Pattern.compile("(?i)^area(\\d+)$");
+
+  /** masks of the registered datasets, by GROUP/DESCRIPTOR */
+  private static final Map<String, String> datasets =
+    new ConcurrentHashMap<String, String>();
+
+  /** port the local mcservl listens on, -1 if not known */
+  private static volatile int localPort = -1;
+
+  private AddeLocalServer()
+  {
+  }
+
+  /**
+   * Serve a local AREA dataset in process.
+   *
+   * @param group       ADDE group
+   * @param descriptor  ADDE descriptor
+   * @param mask        directory holding the files, or a directory and a
+   *                    file name pattern using * and ?
+   */
+  public static void register(String group, String descriptor, String mask)
+  {
+    datasets.put(key(group, descriptor), mask);
+  }
+
+  /**
+   * Set the port the local mcservl listens on. Only requests to a
+   * loopback address on this port are answered in process.
+   *
+   * @param port  the port, or -1 to answer nothing in process
+   */
+  public static void setLocalPort(int port)
+  {
+    localPort = port;
+  }
+
+  /**
+   * Stop serving all datasets in process.
+   */
+  public static void unregisterAll()
+  {
+    datasets.clear();
+  }
+
+  /**
+   * Is a dataset served in process.
+   *
+   * @param group       ADDE group
+   * @param descriptor  ADDE descriptor
+   *
+   * @return true if it is registered and in-process serving is on
+   */
+  public static boolean isRegistered(String group, String descriptor)
+  {
+    return isEnabled() && datasets.containsKey(key(group, descriptor));
+  }
+
+  private static boolean isEnabled()
+  {
+    return !"false".equalsIgnoreCase(System.getProperty(PROP_ENABLED));
+  }
+
+  private static String key(String group, String descriptor)
+  {
+    return (group + "/" + descriptor).toUpperCase();
+  }
+
+  /**
+   * Is a request going to the local mcservl: a loopback address on the
+   * port it listens on. Other servers tunnelled to a loopback port are
+   * left alone.
+   *
+   * @param ipa   IPv4 address
+   * @param port  port the request is for
+   *
+   * @return true for 127.x.x.x on the local server's port
+   */
+  static boolean isLocalServer(byte[] ipa, int port)
+  {
+    return (ipa.length == 4) && (ipa[0] == 127) && (localPort > 0)
+      && (port == localPort);
+  }
+
+  /**
+   * Answer a request in process.
+   *
+   * @param service  ADDE service, such as adir or aget
+   * @param request  request text, as sent to a server
+   *
+   * @return the reply, starting with its byte count, or null if the
+   *         request should go to the server
+   *
+   * @throws IOException  if the files can't be read
+   */
+  static InputStream serve(String service, String request)
+    throws IOException
+  {
+    if (!isEnabled() || datasets.isEmpty()) {
+      return null;
+    }
+    List<String> positional = new ArrayList<String>();
+    Map<String, String> keywords = new HashMap<String, String>();
+    parse(request, positional, keywords);
+    if (positional.size() < 2) {
+      return null;
+    }
+    String mask = datasets.get(key(positional.get(0), positional.get(1)));
+    if (mask == null) {
+      return null;
+    }
+    InputStream reply = null;
+    if ("adir".equalsIgnoreCase(service)) {
+      reply = serveDirectories(mask, positional, keywords);
+    } else if ("aget".equalsIgnoreCase(service)) {
+      reply = serveImage(mask, positional, keywords);
+    }
+    if (LOGGER.isLoggable(Level.FINE)) {
+      LOGGER.fine((reply == null ? "passing on " : "serving ") + service
+        + " " + request);
+    }
+    return reply;
+  }
+
+  /**
+   * Split a request into its leading positional words and its
+   * KEYWORD=value pairs. Words after a pair belong to its value.
+   */
+  private static void parse(String request, List<String> positional,
+                            Map<String, String> keywords)
+  {
+    StringTokenizer tok = new StringTokenizer(request);
+    String last = null;
+    while (tok.hasMoreTokens()) {
+      String word = tok.nextToken();
+      int eq = word.indexOf('=');
+      if (eq > 0) {
+        last = word.substring(0, eq).toUpperCase();
+        keywords.put(last, word.substring(eq + 1).toUpperCase());
+      } else if (last != null) {
+        keywords.put(last, keywords.get(last) + " " + word.toUpperCase());
+      } else {
+        positional.add(word);
+      }
+    }
+  }
+
+  /**
+   * Is a keyword absent or set to one of the given values.
+   */
+  private static boolean isDefault(Map<String, String> keywords, String key,
+                                   String... values)
+  {
+    String value = keywords.get(key);
+    if (value == null) {
+      return true;
+    }
+    for (String v : values) {
+      if (v.equals(value.trim())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // ADIR
+
+  private static InputStream serveDirectories(String mask,
+                                              List<String> positional,
+                                              Map<String, String> keywords)
+    throws IOException
+  {
+    if ((positional.size() < 4) || keywords.containsKey("TIME")
+        || keywords.containsKey("DAY") || keywords.containsKey("ID")) {
+      return null;
+    }
+    String band = firstWord(keywords.get("BAND"));
+    int bandNumber = 0;
+    if ((band != null) && !"ALL".equals(band)) {
+      try {
+        bandNumber = Integer.parseInt(band);
+      } catch (NumberFormatException e) {
+        return null;
+      }
+    }
+
+    List<Area> areas = listAreas(mask);
+    if (bandNumber > 0) {
+      List<Area> withBand = new ArrayList<Area>();
+      for (Area area : areas) {
+        if (area.getBandIndex(bandNumber) >= 0) {
+          withBand.add(area);
+        }
+      }
+      areas = withBand;
+    }
+    List<Area> selected = select(areas, positional.get(2), positional.get(3));
+    if (selected == null) {
+      return null;
+    }
+    if (selected.isEmpty()) {
+      return errorReply(NO_IMAGES_CODE, NO_IMAGES);
+    }
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    for (Area area : selected) {
+      int cards = area.dir[AD_NUMCOMMENTS];
+      out.writeInt(4 + (DIR_SIZE * 4) + (cards * COMMENT_SIZE));
+      out.writeInt(area.number);
+      for (int i = 0; i < DIR_SIZE; i++) {
+        out.writeInt(isTextWord(i) ? area.raw[i] : area.dir[i]);
+      }
+      byte[] comments = new byte[cards * COMMENT_SIZE];
+      area.getBytes(area.getCommentOffset(), comments, 0, comments.length);
+      out.write(comments);
+    }
+    out.writeInt(0);
+    out.flush();
+    return new ByteArrayInputStream(bytes.toByteArray());
+  }
+
+  /**
+   * Pick the areas in an ADIR position range.
+   *
+   * @return the areas, or null for a range we don't handle
+   */
+  private static List<Area> select(List<Area> areas, String first,
+                                   String last)
+  {
+    if (POS_ALL.equals(first) || "X".equalsIgnoreCase(first)) {
+      return areas;
+    }
+    int from;
+    int to;
+    try {
+      from = Integer.parseInt(first);
+      to = Integer.parseInt(last);
+    } catch (NumberFormatException e) {
+      return null;
+    }
+    List<Area> selected = new ArrayList<Area>();
+    if ((from <= 0) && (to <= 0)) {
+      int newest = areas.size() - 1;
+      for (int i = Math.max(0, newest + Math.min(from, to));
+           i <= newest + Math.max(from, to); i++) {
+        selected.add(areas.get(i));
+      }
+    } else if ((from > 0) && (to > 0)) {
+      for (Area area : areas) {
+        if ((area.number >= Math.min(from, to))
+            && (area.number <= Math.max(from, to))) {
+          selected.add(area);
+        }
+      }
+    } else {
+      return null;
+    }
+    return selected;
+  }
+
+  // AGET
+
+  private static InputStream serveImage(String mask, List<String> positional,
+                                        Map<String, String> keywords)
+    throws IOException
+  {
+    // group descr pos loc lin ele mag lines elems
+    if (positional.size() < 9) {
+      return null;
+    }
+    if (!isDefault(keywords, "NAV", "X") || !isDefault(keywords, "DOC", "NO")
+        || !isDefault(keywords, "CAL", "X")
+        || !isDefault(keywords, "TIME", "X X I")
+        || keywords.containsKey("DAY") || keywords.containsKey("ID")) {
+      return null;
+    }
+
+    List<Area> areas = listAreas(mask);
+    Area area = null;
+    try {
+      int pos = Integer.parseInt(positional.get(2));
+      if (pos <= 0) {
+        int index = areas.size() - 1 + pos;
+        if (index >= 0) {
+          area = areas.get(index);
+        }
+      } else {
+        for (Area a : areas) {
+          if (a.number == pos) {
+            area = a;
+          }
+        }
+      }
+    } catch (NumberFormatException e) {
+      return null;
+    }
+    if (area == null) {
+      return errorReply(NO_IMAGES_CODE, NO_IMAGES);
+    }
+
+    int[] dir = area.dir;
+    int width = dir[AD_DATAWIDTH];
+    String spac = keywords.get("SPAC");
+    if ((spac != null) && !"X".equals(spac)
+        && !Integer.toString(width).equals(spac)) {
+      return null;
+    }
+    String unit = keywords.get("UNIT");
+    if ((unit != null) && !unit.equals(area.getCalibrationType())) {
+      return null;
+    }
+
+    // bands
+    int bands = Math.max(1, dir[AD_NUMBANDS]);
+    int bandIndex = -1;
+    int bandNumber = 0;
+    String band = keywords.get("BAND");
+    if ((band != null) && !"ALL".equals(band.trim())) {
+      try {
+        bandNumber = Integer.parseInt(band.trim());
+      } catch (NumberFormatException e) {
+        return null;
+      }
+      bandIndex = area.getBandIndex(bandNumber);
+      if (bandIndex < 0) {
+        return errorReply(NO_IMAGES_CODE, "Band " + bandNumber
+          + " is not in the image");
+      }
+    }
+
+    // magnification, blow-down only
+    int lineMag = 1;
+    int elemMag = 1;
+    try {
+      String mag = positional.get(6);
+      if (!"X".equalsIgnoreCase(mag)) {
+        lineMag = Integer.parseInt(mag);
+        elemMag = lineMag;
+      }
+      if (keywords.containsKey("LMAG")) {
+        lineMag = Integer.parseInt(keywords.get("LMAG").trim());
+      }
+      if (keywords.containsKey("EMAG")) {
+        elemMag = Integer.parseInt(keywords.get("EMAG").trim());
+      }
+    } catch (NumberFormatException e) {
+      return null;
+    }
+    if ((lineMag > 1) || (elemMag > 1) || (lineMag == 0) || (elemMag == 0)) {
+      return null;
+    }
+    int lineStep = Math.abs(lineMag);
+    int elemStep = Math.abs(elemMag);
+
+    // placement, in area coordinates
+    int srcLines = dir[AD_NUMLINES];
+    int srcElems = dir[AD_NUMELEMS];
+    int outLines;
+    int outElems;
+    try {
+      outLines = Integer.parseInt(positional.get(7));
+      outElems = Integer.parseInt(positional.get(8));
+    } catch (NumberFormatException e) {
+      return null;
+    }
+    String loc = positional.get(3).toUpperCase();
+    double line;
+    double elem;
+    boolean upperLeft = false;
+    if ("X".equals(loc)) {
+      line = srcLines / 2.0;
+      elem = srcElems / 2.0;
+    } else {
+      try {
+        line = Double.parseDouble(positional.get(4));
+        elem = Double.parseDouble(positional.get(5));
+      } catch (NumberFormatException e) {
+        return null;
+      }
+      if (loc.startsWith("I")) {
+        line = (line - dir[AD_STLINE]) / dir[AD_LINERES];
+        elem = (elem - dir[AD_STELEM]) / dir[AD_ELEMRES];
+      } else if (!loc.startsWith("A")) {
+        return null;
+      }
+      upperLeft = loc.endsWith("U");
+    }
+    int firstLine;
+    int firstElem;
+    if (outLines >= 99999) {
+      firstLine = 0;
+      outLines = srcLines;
+    } else {
+      outLines *= lineStep;
+      firstLine = (int) Math.round(upperLeft ? line : line - (outLines / 2));
+    }
+    if (outElems >= 99999) {
+      firstElem = 0;
+      outElems = srcElems;
+    } else {
+      outElems *= elemStep;
+      firstElem = (int) Math.round(upperLeft ? elem : elem - (outElems / 2));
+    }
+    int lastLine = Math.min(srcLines, firstLine + outLines);
+    int lastElem = Math.min(srcElems, firstElem + outElems);
+    firstLine = Math.max(0, firstLine);
+    firstElem = Math.max(0, firstElem);
+    if ((firstLine >= lastLine) || (firstElem >= lastElem)) {
+      return errorReply(NO_IMAGES_CODE, "Requested area is off the image");
+    }
+    outLines = (lastLine - firstLine + lineStep - 1) / lineStep;
+    outElems = (lastElem - firstElem + elemStep - 1) / elemStep;
+
+    boolean withAux = isDefault(keywords, "AUX", "YES");
+    if ((firstLine == 0) && (firstElem == 0) && (outLines == srcLines)
+        && (outElems == srcElems) && ((bandIndex < 0) || (bands == 1))
+        && (dir[AD_PFXSIZE] == 0) && (withAux || (dir[AD_AUXLENGTH] == 0))) {
+      // the whole file, as it is
+      return withCount(area.getStream(0, area.length), area.length);
+    }
+    return withCount(area.subset(firstLine, firstElem, lineStep, elemStep,
+                                 outLines, outElems, bandIndex, bandNumber,
+                                 withAux));
+  }
+
+  /**
+   * Make an error reply: a zero byte count then the trailer.
+   */
+  private static InputStream errorReply(int code, String message)
+    throws IOException
+  {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(0);
+    byte[] trailer = new byte[AddeURLConnection.TRAILER_SIZE];
+    ByteBuffer.wrap(trailer).putInt(code);
+    byte[] text = new byte[AddeURLConnection.ERRMSG_SIZE];
+    Arrays.fill(text, (byte) ' ');
+    byte[] msg = message.getBytes("US-ASCII");
+    System.arraycopy(msg, 0, text, 0, Math.min(msg.length, text.length));
+    System.arraycopy(text, 0, trailer, AddeURLConnection.ERRMSG_OFFS,
+                     text.length);
+    out.write(trailer);
+    out.flush();
+    return new ByteArrayInputStream(bytes.toByteArray());
+  }
+
+  private static InputStream withCount(byte[] body)
+    throws IOException
+  {
+    return withCount(new ByteArrayInputStream(body), body.length);
+  }
+
+  private static InputStream withCount(InputStream body, int length)
+  {
+    byte[] count = ByteBuffer.allocate(4).putInt(length).array();
+    return new SequenceInputStream(new ByteArrayInputStream(count), body);
+  }
+
+  private static String firstWord(String value)
+  {
+    if (value == null) {
+      return null;
+    }
+    StringTokenizer tok = new StringTokenizer(value);
+    return tok.hasMoreTokens() ? tok.nextToken() : null;
+  }
+
+  /**
+   * The text words of the directory, which are never swapped.
+   */
+  private static boolean isTextWord(int word)
+  {
+    return ((word >= 24) && (word <= 31)) || (word == 51) || (word == 52)
+      || (word == 56) || (word == 57);
+  }
+
+  // files
+
+  /**
+   * List the AREA files of a dataset, oldest first. Files that aren't
+   * AREA files are skipped.
+   */
+  private static List<Area> listAreas(String mask)
+    throws IOException
+  {
+    File dir = new File(mask);
+    Pattern pattern = null;
+    if (!dir.isDirectory()) {
+      pattern = globToPattern(dir.getName());
+      dir = dir.getParentFile();
+    }
+    File[] files = (dir == null) ? null : dir.listFiles();
+    if (files == null) {
+      return Collections.emptyList();
+    }
+    Arrays.sort(files);
+    List<Area> areas = new ArrayList<Area>();
+    int index = 0;
+    for (File file : files) {
+      if (!file.isFile()
+          || ((pattern != null) && !pattern.matcher(file.getName()).matches())) {
+        continue;
+      }
+      index++;
+      Area area = Area.open(file, index);
+      if (area != null) {
+        areas.add(area);
+      }
+    }
+    Collections.sort(areas, new Comparator<Area>() {
+      public int compare(Area a, Area b) {
+        return (a.time < b.time) ? -1 : ((a.time == b.time) ? 0 : 1);
+      }
+    });
+    return areas;
+  }
+
+  private static Pattern globToPattern(String glob)
+  {
+    StringBuilder regex = new StringBuilder("(?i)");
+    for (char c : glob.toCharArray()) {
+      if (c == '*') {
+        regex.append(".*");
+      } else if (c == '?') {
+        regex.append('.');
+      } else {
+        regex.append(Pattern.quote(String.valueOf(c)));
+      }
+    }
+    return Pattern.compile(regex.toString());
+  }
+
+  /** a memory-mapped AREA file */
+  private static class Area
+  {
+    final MappedByteBuffer buffer;
+    final int length;
+    final int number;
+    final boolean swap;
+    final int[] raw = new int[DIR_SIZE];
+    final int[] dir = new int[DIR_SIZE];
+    final long time;
+
+    private Area(MappedByteBuffer buffer, int number)
+    {
+      this.buffer = buffer;
+      this.length = buffer.capacity();
+      this.number = number;
+      for (int i = 0; i < DIR_SIZE; i++) {
+        raw[i] = buffer.getInt(i * 4);
+      }
+      swap = (raw[AD_VERSION] != VERSION_NUMBER);
+      for (int i = 0; i < DIR_SIZE; i++) {
+        dir[i] = (swap && !isTextWord(i))
+          ? Integer.reverseBytes(raw[i]) : raw[i];
+      }
+      int date = dir[AD_IMGDATE];
+      if (date < 1000000) {
+        date += 1900000;
+      }
+      time = (date * 1000000L) + dir[AD_IMGTIME];
+    }
+
+    /**
+     * Map a file, or return null if it isn't an AREA file.
+     */
+    static Area open(File file, int index)
+      throws IOException
+    {
+      if (file.length() < DIR_SIZE * 4 || file.length() > Integer.MAX_VALUE) {
+        return null;
+      }
+      FileInputStream in = new FileInputStream(file);
+      try {
+        FileChannel channel = in.getChannel();
+        MappedByteBuffer buffer =
+          channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        int version = buffer.getInt(AD_VERSION * 4);
+        if ((version != VERSION_NUMBER)
+            && (Integer.reverseBytes(version) != VERSION_NUMBER)) {
+          return null;
+        }
+        Matcher m = AREA_NAME.matcher(file.getName());
+        int number = m.matches() ? Integer.parseInt(m.group(1)) : index;
+        Area area = new Area(buffer, number);
+        int end = area.dir[AD_DATAOFFSET] + area.getLineLength()
+          * area.dir[AD_NUMLINES];
+        if ((area.dir[AD_DATAOFFSET] < DIR_SIZE * 4) || (end > area.length)) {
+          LOGGER.warning("skipping truncated AREA file " + file);
+          return null;
+        }
+        return area;
+      } finally {
+        // the mapping stays valid after the channel is closed
+        in.close();
+      }
+    }
+
+    String getCalibrationType()
+    {
+      byte[] text = ByteBuffer.allocate(4).putInt(raw[AD_CALTYPE]).array();
+      String type = new String(text).trim().toUpperCase();
+      return (type.length() == 0) ? "RAW" : type;
+    }
+
+    /**
+     * Where a band is in the interleave.
+     *
+     * @return zero based index, or -1 if the image doesn't have it
+     */
+    int getBandIndex(int band)
+    {
+      if ((band < 1) || (band > 64)) {
+        return -1;
+      }
+      long map = (dir[AD_BANDMAP] & 0xffffffffL)
+        | ((long) dir[AD_BANDMAP2] << 32);
+      if ((map & (1L << (band - 1))) == 0) {
+        return -1;
+      }
+      return Long.bitCount(map & ((1L << (band - 1)) - 1));
+    }
+
+    int getLineLength()
+    {
+      return dir[AD_PFXSIZE] + (dir[AD_NUMELEMS]
+        * Math.max(1, dir[AD_NUMBANDS]) * dir[AD_DATAWIDTH]);
+    }
+
+    int getCommentOffset()
+    {
+      return length - (dir[AD_NUMCOMMENTS] * COMMENT_SIZE);
+    }
+
+    /**
+     * Length of the navigation or calibration block at an offset, up to
+     * the next block.
+     */
+    int getBlockLength(int offset)
+    {
+      if (offset <= 0) {
+        return 0;
+      }
+      int next = dir[AD_DATAOFFSET];
+      int[] offsets = { dir[AD_NAVOFFSET], dir[AD_CALOFFSET],
+                        dir[AD_AUXOFFSET] };
+      for (int o : offsets) {
+        if ((o > offset) && (o < next)) {
+          next = o;
+        }
+      }
+      return Math.max(0, next - offset);
+    }
+
+    void getBytes(int offset, byte[] dest, int destOffset, int count)
+    {
+      ByteBuffer view = buffer.duplicate();
+      view.position(offset);
+      view.get(dest, destOffset, count);
+    }
+
+    InputStream getStream(int offset, int count)
+    {
+      final ByteBuffer view = buffer.duplicate();
+      view.position(offset);
+      view.limit(offset + count);
+      return new InputStream() {
+        public int read() {
+          return view.hasRemaining() ? (view.get() & 0xff) : -1;
+        }
+        public int read(byte[] b, int off, int len) {
+          if (!view.hasRemaining()) {
+            return -1;
+          }
+          int n = Math.min(len, view.remaining());
+          view.get(b, off, n);
+          return n;
+        }
+        public int available() {
+          return view.remaining();
+        }
+      };
+    }
+
+    /**
+     * Build a new AREA file from part of this one, in this file's byte
+     * order, without line prefixes.
+     */
+    byte[] subset(int firstLine, int firstElem, int lineStep, int elemStep,
+                  int outLines, int outElems, int bandIndex, int bandNumber,
+                  boolean withAux)
+    {
+      int bands = Math.max(1, dir[AD_NUMBANDS]);
+      int width = dir[AD_DATAWIDTH];
+      int outBands = (bandIndex < 0) ? bands : 1;
+      int navLength = getBlockLength(dir[AD_NAVOFFSET]);
+      int calLength = getBlockLength(dir[AD_CALOFFSET]);
+      int auxLength = withAux && (dir[AD_AUXOFFSET] > 0)
+        ? dir[AD_AUXLENGTH] : 0;
+      int cardLength = dir[AD_NUMCOMMENTS] * COMMENT_SIZE;
+      int lineLength = outElems * outBands * width;
+
+      int[] out = dir.clone();
+      out[AD_STLINE] = dir[AD_STLINE] + (firstLine * dir[AD_LINERES]);
+      out[AD_STELEM] = dir[AD_STELEM] + (firstElem * dir[AD_ELEMRES]);
+      out[AD_NUMLINES] = outLines;
+      out[AD_NUMELEMS] = outElems;
+      out[AD_LINERES] = dir[AD_LINERES] * lineStep;
+      out[AD_ELEMRES] = dir[AD_ELEMRES] * elemStep;
+      out[AD_NUMBANDS] = outBands;
+      if (bandIndex >= 0) {
+        out[AD_BANDMAP] = (bandNumber <= 32) ? (1 << (bandNumber - 1)) : 0;
+        out[AD_BANDMAP2] = (bandNumber > 32) ? (1 << (bandNumber - 33)) : 0;
+      }
+      out[AD_PFXSIZE] = 0;
+      out[AD_VALCODE] = 0;
+      out[AD_DOCLENGTH] = 0;
+      out[AD_CALLENGTH] = 0;
+      out[AD_LEVLENGTH] = 0;
+      int offset = DIR_SIZE * 4;
+      out[AD_NAVOFFSET] = (navLength > 0) ? offset : 0;
+      offset += navLength;
+      out[AD_CALOFFSET] = (calLength > 0) ? offset : 0;
+      offset += calLength;
+      out[AD_DATAOFFSET] = offset;
+      offset += outLines * lineLength;
+      out[AD_AUXOFFSET] = (auxLength > 0) ? offset : 0;
+      out[AD_AUXLENGTH] = auxLength;
+      offset += auxLength;
+
+      ByteBuffer result = ByteBuffer.allocate(offset + cardLength);
+      for (int i = 0; i < DIR_SIZE; i++) {
+        if (isTextWord(i)) {
+          result.putInt(raw[i]);
+        } else {
+          result.putInt(swap ? Integer.reverseBytes(out[i]) : out[i]);
+        }
+      }
+      byte[] bytes = result.array();
+      if (navLength > 0) {
+        getBytes(dir[AD_NAVOFFSET], bytes, out[AD_NAVOFFSET], navLength);
+      }
+      if (calLength > 0) {
+        getBytes(dir[AD_CALOFFSET], bytes, out[AD_CALOFFSET], calLength);
+      }
+
+      int srcLineLength = getLineLength();
+      int pixel = bands * width;
+      int copy = outBands * width;
+      int bandOffset = (bandIndex < 0) ? 0 : bandIndex * width;
+      ByteBuffer src = buffer.duplicate();
+      int dest = out[AD_DATAOFFSET];
+      for (int l = 0; l < outLines; l++) {
+        int lineStart = dir[AD_DATAOFFSET]
+          + ((firstLine + (l * lineStep)) * srcLineLength) + dir[AD_PFXSIZE];
+        if ((elemStep == 1) && (bandIndex < 0)) {
+          src.position(lineStart + (firstElem * pixel));
+          src.get(bytes, dest, lineLength);
+          dest += lineLength;
+          continue;
+        }
+        for (int e = 0; e < outElems; e++) {
+          src.position(lineStart + ((firstElem + (e * elemStep)) * pixel)
+            + bandOffset);
+          src.get(bytes, dest, copy);
+          dest += copy;
+        }
+      }
+      if (auxLength > 0) {
+        getBytes(dir[AD_AUXOFFSET], bytes, out[AD_AUXOFFSET], auxLength);
+      }
+      if (cardLength > 0) {
+        getBytes(getCommentOffset(), bytes, offset, cardLength);
+      }
+      return bytes;
+    }
+  }
+}
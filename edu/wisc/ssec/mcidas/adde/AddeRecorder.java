@@ -0,0 +1,418 @@
+/*
+ * This file is part of McIDAS-V
+ *
+ * Copyright 2007-2025
+ * Space Science and Engineering Center (SSEC)
+ * University of Wisconsin - Madison
+ * 1225 W. Dayton Street, Madison, WI 53706, USA
+ * https://www.ssec.wisc.edu/mcidas/
+ * 
+ * All Rights Reserved
+ * 
+ * McIDAS-V is built on Unidata's IDV and SSEC's VisAD libraries, and
+ * some McIDAS-V source code is based on IDV and VisAD source code.  
+ * 
+ * McIDAS-V is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * McIDAS-V is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/.
+ */
+
+package edu.wisc.ssec.mcidas.adde;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Record and replay of ADDE replies, so ADDE heavy code can be measured
+ * without a network and with the same bytes every run.
+ * <p>
+ * Setting <code>adde.record.dir</code> makes {@link AddeURLConnection}
+ * copy each reply, exactly as it comes off the socket, into that
+ * directory. Setting <code>adde.replay.dir</code> makes it read replies
+ * from there rather than connecting to a server. Replayed replies go
+ * through the same decompression and parsing as live ones. A request that
+ * was never recorded fails the way a server error would.
+ * <p>
+ * Replay can be shaped to look like a real link:
+ * <code>adde.replay.latency</code> delays the first byte of each reply by
+ * that many milliseconds, and <code>adde.replay.bandwidth</code> limits
+ * each reply to that many bytes per second. Both default to 0, meaning
+ * no delay and no limit.
+ * <p>
+ * Replies are stored as <code>&lt;key&gt;.adde</code>, where the key is a
+ * SHA-256 hash of the server, port, compression type, service, request text and any binary
+ * request data. Next to each one, <code>&lt;key&gt;.txt</code> holds the
+ * request in readable form.
+ */
+public final class AddeRecorder
+{
+
+  private static final Logger LOGGER =
+    Logger.getLogger(AddeRecorder.class.getName());
+
+  /** property naming the directory replies are recorded to */
+  public static final String PROP_RECORD = "adde.record.dir";
+
+  /** property naming the directory replies are replayed from */
+  public static final String PROP_REPLAY = "adde.replay.dir";
+
+  /** property for the delay before each replayed reply, in milliseconds */
+  public static final String PROP_LATENCY = "adde.replay.latency";
+
+  /** property for the replay rate, in bytes per second */
+  public static final String PROP_BANDWIDTH = "adde.replay.bandwidth";
+
+  private AddeRecorder()
+  {
+  }
+
+  /**
+   * Is replay mode on.
+   *
+   * @return true if replies are read from the replay directory
+   */
+  public static boolean isReplaying()
+  {
+    return System.getProperty(PROP_REPLAY) != null;
+  }
+
+  /**
+   * Is record mode on.
+   *
+   * @return true if replies are copied to the record directory
+   */
+  public static boolean isRecording()
+  {
+    return System.getProperty(PROP_RECORD) != null;
+  }
+
+  /**
+   * Make the key a request is stored under.
+   *
+   * @param host     server host
+   * @param port     server port
+   * @param compression  compression type the reply is sent with
+   * @param service  ADDE service, such as aget
+   * @param request  request text
+   * @param binary   binary request data, may be null
+   *
+   * @return the key
+   */
+  public static String makeKey(String host, int port, int compression,
+                               byte[] service, byte[] request,
+                               byte[] binary)
+  {
+    try {
+      MessageDigest md = MessageDigest.getInstance("SHA-256");
+      md.update(host.toLowerCase().getBytes("UTF-8"));
+      md.update((byte) 0);
+      md.update(Integer.toString(port).getBytes("UTF-8"));
+      md.update((byte) 0);
+      md.update(Integer.toString(compression).getBytes("UTF-8"));
+      md.update((byte) 0);
+      md.update(service);
+      md.update((byte) 0);
+      md.update(request);
+      if (binary != null) {
+        md.update((byte) 0);
+        md.update(binary);
+      }
+      StringBuilder key = new StringBuilder();
+      for (byte b : md.digest()) {
+        key.append(String.format("%02x", b & 0xff));
+      }
+      return key.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Copy a reply to the record directory as it is read.
+   *
+   * @param in           reply from the server
+   * @param key          key of the request
+   * @param description  readable form of the request
+   *
+   * @return stream to read the reply from
+   *
+   * @throws IOException  if the record files can't be made
+   */
+  public static InputStream record(InputStream in, String key,
+                                   String description)
+    throws IOException
+  {
+    File dir = new File(System.getProperty(PROP_RECORD));
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Can't make ADDE record directory " + dir);
+    }
+    Writer w = new OutputStreamWriter(
+      new FileOutputStream(new File(dir, key + ".txt")), "UTF-8");
+    try {
+      w.write(description);
+      w.write('\n');
+    } finally {
+      w.close();
+    }
+    File part = new File(dir, key + ".part");
+    if (LOGGER.isLoggable(Level.FINE)) {
+      LOGGER.fine("recording " + description + " to " + key);
+    }
+    return new RecordingStream(in, new FileOutputStream(part), part,
+                               new File(dir, key + ".adde"));
+  }
+
+  /**
+   * Open a recorded reply.
+   *
+   * @param key          key of the request
+   * @param description  readable form of the request, for errors
+   *
+   * @return the reply, shaped by the latency and bandwidth settings
+   *
+   * @throws IOException  if the request was never recorded
+   */
+  public static InputStream replay(String key, String description)
+    throws IOException
+  {
+    File file = new File(System.getProperty(PROP_REPLAY), key + ".adde");
+    if (!file.isFile()) {
+      throw new AddeURLException("No recorded reply for " + description);
+    }
+    if (LOGGER.isLoggable(Level.FINE)) {
+      LOGGER.fine("replaying " + description + " from " + key);
+    }
+    return new ShapedStream(new FileInputStream(file),
+                            Long.getLong(PROP_LATENCY, 0L).longValue(),
+                            Long.getLong(PROP_BANDWIDTH, 0L).longValue());
+  }
+
+  /**
+   * An output stream that throws away what is written, for the request
+   * bytes in replay mode.
+   *
+   * @return the stream
+   */
+  static OutputStream discard()
+  {
+    return new OutputStream() {
+      public void write(int b) {
+      }
+      public void write(byte[] b, int off, int len) {
+      }
+    };
+  }
+
+  /** copies what is read to a file, moved into place on close if the reply
+      could be read to the end and thrown away otherwise */
+  private static class RecordingStream extends FilterInputStream
+  {
+    private final OutputStream copy;
+    private final File part;
+    private final File done;
+    private boolean closed = false;
+
+    /** the stream got to its end, so the copy is the whole reply */
+    private boolean complete = false;
+
+    RecordingStream(InputStream in, OutputStream copy, File part, File done)
+    {
+      super(in);
+      this.copy = copy;
+      this.part = part;
+      this.done = done;
+    }
+
+    public int read()
+      throws IOException
+    {
+      int b = super.read();
+      if (b >= 0) {
+        copy.write(b);
+      } else {
+        complete = true;
+      }
+      return b;
+    }
+
+    public int read(byte[] b, int off, int len)
+      throws IOException
+    {
+      int n = super.read(b, off, len);
+      if (n > 0) {
+        copy.write(b, off, n);
+      } else if (n < 0) {
+        complete = true;
+      }
+      return n;
+    }
+
+    public long skip(long n)
+      throws IOException
+    {
+      // read rather than skip so the copy is complete
+      byte[] buf = new byte[(int) Math.min(n, 8192)];
+      long skipped = 0;
+      while (skipped < n) {
+        int r = read(buf, 0, (int) Math.min(buf.length, n - skipped));
+        if (r < 0) {
+          break;
+        }
+        skipped += r;
+      }
+      return skipped;
+    }
+
+    public boolean markSupported()
+    {
+      return false;
+    }
+
+    public void close()
+      throws IOException
+    {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      try {
+        // readers such as GZIPInputStream stop at the end of their own data
+        // rather than at the end of the stream, so copy what is left; the
+        // server closes the connection after each reply
+        drain();
+        super.close();
+      } finally {
+        copy.close();
+        if (!complete) {
+          // a reply cut short would replay as if it were the whole thing
+          part.delete();
+          if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("not saving partly read ADDE recording " + done);
+          }
+        } else {
+          if (done.exists()) {
+            done.delete();
+          }
+          if (!part.renameTo(done)) {
+            LOGGER.warning("could not save ADDE recording " + done);
+          }
+        }
+      }
+    }
+
+    /** read to the end of the stream, marking the copy complete */
+    private void drain()
+    {
+      byte[] buf = new byte[8192];
+      try {
+        while (!complete) {
+          read(buf, 0, buf.length);
+        }
+      } catch (IOException e) {
+        if (LOGGER.isLoggable(Level.FINE)) {
+          LOGGER.fine("could not read the rest of ADDE reply for " + done + ": " + e);
+        }
+      }
+    }
+  }
+
+  /** delays and paces reads to look like a network link */
+  private static class ShapedStream extends FilterInputStream
+  {
+    private final long latency;
+    private final long bandwidth;
+    private long start = -1;
+    private long bytes = 0;
+
+    ShapedStream(InputStream in, long latency, long bandwidth)
+    {
+      super(in);
+      this.latency = latency;
+      this.bandwidth = bandwidth;
+    }
+
+    private void before()
+      throws IOException
+    {
+      if (start < 0) {
+        pause(latency);
+        start = System.currentTimeMillis();
+      }
+    }
+
+    private void after(int n)
+      throws IOException
+    {
+      if ((n <= 0) || (bandwidth <= 0)) {
+        return;
+      }
+      bytes += n;
+      long due = start + (bytes * 1000L / bandwidth);
+      pause(due - System.currentTimeMillis());
+    }
+
+    private static void pause(long millis)
+      throws IOException
+    {
+      if (millis <= 0) {
+        return;
+      }
+      try {
+        Thread.sleep(millis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      }
+    }
+
+    public int read()
+      throws IOException
+    {
+      before();
+      int b = super.read();
+      after((b >= 0) ? 1 : 0);
+      return b;
+    }
+
+    public int read(byte[] b, int off, int len)
+      throws IOException
+    {
+      before();
+      if (bandwidth > 0) {
+        // keep the pacing smooth for large reads
+        len = (int) Math.min(len, Math.max(1, bandwidth / 10));
+      }
+      int n = super.read(b, off, len);
+      after(n);
+      return n;
+    }
+
+    public boolean markSupported()
+    {
+      return false;
+    }
+  }
+}
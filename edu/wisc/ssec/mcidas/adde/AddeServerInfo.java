@@ -478,7 +478,7 @@ public class AddeServerInfo extends Object {
     
     try {
       AreaDirectoryList adir = 
-        new AreaDirectoryList(addeCmdBuff.toString());
+        AddeDirectoryCache.getDirectoryList(addeCmdBuff.toString());
       dirs = adir.getSortedDirs();
       int numTimes = dirs.length;
       times = new String[numTimes];
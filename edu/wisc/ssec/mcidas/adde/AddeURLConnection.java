@@ -258,16 +258,16 @@ public class AddeURLConnection extends URLConnection
 
   /** The default user id*/
   /** Size of an ADDE trailer */
-  private final static int TRAILER_SIZE = 92;
+  final static int TRAILER_SIZE = 92;
 
   /** Size of an ADDE request */
   private final static int REQUEST_SIZE = 120;
 
   /** Size of an ADDE error message */
-  private final static int ERRMSG_SIZE = 72;
+  final static int ERRMSG_SIZE = 72;
 
   /** Size of an ADDE error message offset */
-  private final static int ERRMSG_OFFS = 8;
+  final static int ERRMSG_OFFS = 8;
 
   /** Flag for "compress" compression.  Used to be synonymous 
       with the port used for compress transfer */
@@ -609,9 +609,17 @@ public class AddeURLConnection extends URLConnection
     // The priority is URL port, port=keyword, compression port (default)
     
     // get the IP address of the server
+    // a replayed request needs no server, so it may not resolve
+    boolean replaying = AddeRecorder.isReplaying();
     byte [] ipa = new byte[4];
-    InetAddress ia = InetAddress.getByName(url.getHost());
-    ipa = ia.getAddress();
+    try {
+      InetAddress ia = InetAddress.getByName(url.getHost());
+      ipa = ia.getAddress();
+    } catch (UnknownHostException e) {
+      if (!replaying) {
+        throw e;
+      }
+    }
 
     // if local ADDE host, force the compressionType to "off" 
     if (ipa[0]==127 && ipa[1]==0 && ipa[2]==0 && ipa[3]==1) {
@@ -627,14 +635,42 @@ public class AddeURLConnection extends URLConnection
                                  : "no") + " compression.");
     }
 
-    Socket t;
-    try {
-      t = new Socket(url.getHost(), portToUse);   // DRM 03-Mar-2001
-    } catch (UnknownHostException e) {
-      throw new AddeURLException("Could not connect to host", e);
+    // record and replay key requests on everything that shapes the reply
+    String replyKey = null;
+    String replyName = null;
+    if (replaying || AddeRecorder.isRecording()) {
+      replyKey = AddeRecorder.makeKey(url.getHost(), portToUse,
+        compressionType, svc, ob, binaryData);
+      replyName = url.getHost() + ":" + portToUse + "/" + new String(svc) +
+        " " + cmd;
     }
 
-    dos = new DataOutputStream ( t.getOutputStream() );
+    // local AREA datasets may be answered in process, without mcservl
+    InputStream replyStream = null;
+    if (replaying) {
+      replyStream = AddeRecorder.replay(replyKey, replyName);
+      dos = new DataOutputStream(AddeRecorder.discard());
+    } else {
+      if (AddeLocalServer.isLocalServer(ipa, portToUse)) {
+        replyStream = AddeLocalServer.serve(new String(svc), cmd);
+      }
+      if (replyStream != null) {
+        dos = new DataOutputStream(AddeRecorder.discard());
+      } else {
+        Socket t;
+        try {
+          t = AddeConnectionPool.getDefault().acquire(
+            url.getHost(), portToUse, compressionType);
+        } catch (UnknownHostException e) {
+          throw new AddeURLException("Could not connect to host", e);
+        }
+        replyStream = t.getInputStream();
+        dos = new DataOutputStream ( t.getOutputStream() );
+      }
+      if (replyKey != null) {
+        replyStream = AddeRecorder.record(replyStream, replyKey, replyName);
+      }
+    }
 
     /*
      Now start pumping data to the server.  The sequence is:
@@ -731,10 +767,10 @@ public class AddeURLConnection extends URLConnection
     }
 
     is = (compressionType == GZIP) 
-        ? new GZIPInputStream(t.getInputStream())
+        ? new GZIPInputStream(replyStream)
         : (compressionType == COMPRESS)
-            ? new UncompressInputStream(t.getInputStream())
-            : t.getInputStream();
+            ? new UncompressInputStream(replyStream)
+            : replyStream;
     dis = new DataInputStream(is);
 
     if (LOGGER.isLoggable(Level.FINEST) && (compressionType != portToUse) ) {
@@ -1937,7 +1937,8 @@ public class McIDASV extends IntegratedDataViewer {
      *
      * <p>Currently, this entails suppressing any error dialogs, explicitly
      * killing the {@link #addeEntries}, removing {@link #SESSION_FILE},
-     * and disabling the directory monitors found in the file choosers.
+     * stopping the {@link #monitorManager}, and disabling the directory
+     * monitors found in the file choosers.
      * 
      * @param exitCode System exit code to use.
      * 
@@ -1957,6 +1958,8 @@ public class McIDASV extends IntegratedDataViewer {
         
         removeSessionFile(SESSION_FILE);
         
+        monitorManager.shutdown();
+        
         // shut down javafx runtime
         Platform.exit();
         
@@ -112,6 +112,7 @@ import visad.Gridded1DSet;
 import edu.wisc.ssec.mcidas.AreaDirectory;
 import edu.wisc.ssec.mcidas.AreaDirectoryList;
 import edu.wisc.ssec.mcidas.McIDASException;
+import edu.wisc.ssec.mcidas.adde.AddeDirectoryCache;
 import edu.wisc.ssec.mcidas.adde.AddeSatBands;
 import edu.wisc.ssec.mcidas.adde.AddeURL;
 import edu.wisc.ssec.mcidas.adde.AddeURLException;
@@ -604,7 +605,9 @@ public class AddeImageChooser extends AddeChooser implements
             // If not connected then update the server list
             updateServerList();
         } else {
-            // If we are already connected then update the rest of the chooser
+            // If we are already connected then update the rest of the chooser,
+            // with the times read from the server rather than the cache
+            refreshTimes = true;
             descriptorChanged();
         }
         updateStatus();
@@ -1364,6 +1367,9 @@ public class AddeImageChooser extends AddeChooser implements
     /** locking mutex */
     private Object MUTEX = new Object();
 
+    /** Set by the update button so the next time list skips the directory cache */
+    private volatile boolean refreshTimes = false;
+
     /**
      * Set the list of dates/times based on the image selection
      * 
@@ -1394,7 +1400,9 @@ public class AddeImageChooser extends AddeChooser implements
         updateStatus();
         Object task = readTimesTask;
         try {
-            AreaDirectoryList adir = new AreaDirectoryList(url);
+            boolean refresh = refreshTimes;
+            refreshTimes = false;
+            AreaDirectoryList adir = AddeDirectoryCache.getDirectoryList(url, refresh);
             // Make sure no other loads are occurred
             boolean ok = stopTaskAndIsOk(task);
             if (!Misc.equals(readTimesTask, task) || !ok) {
@@ -56,6 +56,7 @@ import edu.wisc.ssec.mcidas.AreaDirectory;
 import edu.wisc.ssec.mcidas.AreaDirectoryList;
 import edu.wisc.ssec.mcidas.AreaFileException;
 import edu.wisc.ssec.mcidas.McIDASUtil;
+import edu.wisc.ssec.mcidas.adde.AddeDirectoryCache;
 
 import ucar.unidata.data.imagery.AddeImageInfo;
 import ucar.unidata.data.imagery.ImageDataSource;
@@ -304,7 +305,7 @@ public class AddeRadarChooser extends AddeImageChooser {
             }
             Hashtable         seen    = new Hashtable();
             AreaDirectoryList dirList =
-                    new AreaDirectoryList(buff.toString());
+                    AddeDirectoryCache.getDirectoryList(buff.toString());
             for (Iterator it = dirList.getDirs().iterator(); it.hasNext(); ) {
                 AreaDirectory ad = (AreaDirectory) it.next();
                 String stationId =
@@ -37,10 +37,12 @@ import java.awt.FlowLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseEvent;
+import java.awt.geom.Rectangle2D;
 import java.rmi.RemoteException;
 import java.util.ArrayList;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.Locale;
 
 import javax.swing.JButton;
 import javax.swing.JComponent;
@@ -63,6 +65,7 @@ import org.w3c.dom.Node;
 
 import ucar.unidata.data.DataChoice;
 import ucar.unidata.data.DataSelection;
+import ucar.unidata.data.DataSource;
 import ucar.unidata.data.DataSourceImpl;
 import ucar.unidata.data.DerivedDataChoice;
 import ucar.unidata.data.imagery.AddeImageDescriptor;
@@ -77,12 +80,17 @@ import ucar.unidata.util.GuiUtils;
 import ucar.unidata.util.Range;
 import ucar.unidata.xml.XmlResourceCollection;
 import ucar.unidata.xml.XmlUtil;
+import ucar.visad.display.NavigatedDisplay;
 
+import visad.CoordinateSystem;
 import visad.Data;
 import visad.DateTime;
 import visad.FieldImpl;
 import visad.FlatField;
+import visad.Linear2DSet;
+import visad.Set;
 import visad.VisADException;
+import visad.georef.EarthLocation;
 import visad.meteorology.ImageSequenceImpl;
 
 import edu.wisc.ssec.mcidasv.PersistenceManager;
@@ -109,6 +117,18 @@ public class ImagePlanViewControl extends ucar.unidata.idv.control.ImagePlanView
     private static final String ATTR_TIME = "TIME";
     private static final String ATTR_UNIT = "UNIT";
 
+    /** Preference for re-requesting the visible part of ADDE images as the view changes. */
+    public static final String PREF_VIEW_TILES = "mcidasv.adde.viewtiles.enabled";
+
+    /** Lines and elements in a view request tile. */
+    private static final int VIEW_TILE_SIZE = 256;
+
+    /** Largest view request, in pixels. */
+    private static final long VIEW_MAX_PIXELS = 4096L * 4096L;
+
+    /** Intervals across each screen dimension when measuring the view. */
+    private static final int VIEW_SAMPLES = 8;
+
     /** Command for connecting */
     protected static final String CMD_NEWFOLDER = "cmd.newfolder";
     protected static final String CMD_NEWPARASET = "cmd.newparaset";
@@ -165,6 +185,9 @@ public class ImagePlanViewControl extends ucar.unidata.idv.control.ImagePlanView
 
     private MyTabbedPane histogramPane;
 
+    /** Last region requested for the view; see {@link AddeImageParameterDataSource#PROP_VIEW_REGION}. */
+    private String viewRegion;
+
     public ImagePlanViewControl() {
         super();
         logger.trace("created new imageplanviewcontrol={}", Integer.toHexString(hashCode()));
@@ -245,6 +268,176 @@ public class ImagePlanViewControl extends ucar.unidata.idv.control.ImagePlanView
     @Override public void doRemove() throws RemoteException, VisADException {
         super.doRemove();
     }
+
+    /**
+     * After the view settles, re-request ADDE imagery for just the visible
+     * region if {@link #PREF_VIEW_TILES} is on.
+     */
+    @Override public void viewpointChanged() {
+        super.viewpointChanged();
+        if (getIdv().getStateManager().getPreferenceOrProperty(PREF_VIEW_TILES, false)) {
+            requestViewRegion();
+        }
+    }
+
+    /**
+     * Ask the ADDE data source for the region on screen, at a
+     * magnification that gives about one image pixel per screen pixel.
+     *
+     * <p>The visible extent is measured by mapping a grid of screen points
+     * into the displayed image. The request is rounded out to whole tiles
+     * and its center snapped to the tile grid, so small pans and zooms
+     * repeat an earlier request and are answered from the data source's
+     * cache.</p>
+     */
+    private void requestViewRegion() {
+        List<DataSource> sources = getDataSources();
+        if ((sources == null) || (sources.size() != 1)
+            || !(sources.get(0) instanceof AddeImageParameterDataSource))
+        {
+            return;
+        }
+        AddeImageParameterDataSource source = (AddeImageParameterDataSource)sources.get(0);
+        NavigatedDisplay navDisplay = getNavigatedDisplay();
+        if (navDisplay == null) {
+            return;
+        }
+        try {
+            Data data = getDisplayedData();
+            if ((data instanceof FieldImpl) && !(data instanceof FlatField)) {
+                data = ((FieldImpl)data).getSample(0);
+            }
+            if (!(data instanceof FlatField)) {
+                return;
+            }
+            FlatField field = (FlatField)data;
+            CoordinateSystem cs = field.getDomainCoordinateSystem();
+            if (cs == null) {
+                return;
+            }
+            double elemStep = 1.0;
+            double lineStep = 1.0;
+            Set domain = field.getDomainSet();
+            if (domain instanceof Linear2DSet) {
+                elemStep = Math.abs(((Linear2DSet)domain).getX().getStep());
+                lineStep = Math.abs(((Linear2DSet)domain).getY().getStep());
+            }
+
+            Rectangle2D screen = navDisplay.getScreenBounds();
+            int width = (int)screen.getWidth();
+            int height = (int)screen.getHeight();
+            if ((width <= 0) || (height <= 0)) {
+                return;
+            }
+            int count = (VIEW_SAMPLES + 1) * (VIEW_SAMPLES + 1);
+            float[][] latLon = new float[2][count];
+            int n = 0;
+            for (int i = 0; i <= VIEW_SAMPLES; i++) {
+                for (int j = 0; j <= VIEW_SAMPLES; j++) {
+                    EarthLocation el = navDisplay.screenToEarthLocation(
+                        width * i / VIEW_SAMPLES, height * j / VIEW_SAMPLES);
+                    latLon[0][n] = (float)el.getLatitude().getValue();
+                    latLon[1][n] = (float)el.getLongitude().getValue();
+                    n++;
+                }
+            }
+            float[][] pixels = cs.fromReference(new float[][] { latLon[0].clone(), latLon[1].clone() });
+            double minElem = Double.MAX_VALUE, maxElem = -Double.MAX_VALUE;
+            double minLine = Double.MAX_VALUE, maxLine = -Double.MAX_VALUE;
+            double minLat = Double.MAX_VALUE, maxLat = -Double.MAX_VALUE;
+            double minLon = Double.MAX_VALUE, maxLon = -Double.MAX_VALUE;
+            int valid = 0;
+            for (int i = 0; i < count; i++) {
+                float e = pixels[0][i];
+                float l = pixels[1][i];
+                if (Float.isNaN(e) || Float.isNaN(l) || Float.isInfinite(e) || Float.isInfinite(l)
+                    || Float.isNaN(latLon[0][i]) || Float.isNaN(latLon[1][i]))
+                {
+                    continue;
+                }
+                valid++;
+                minElem = Math.min(minElem, e);
+                maxElem = Math.max(maxElem, e);
+                minLine = Math.min(minLine, l);
+                maxLine = Math.max(maxLine, l);
+                minLat = Math.min(minLat, latLon[0][i]);
+                maxLat = Math.max(maxLat, latLon[0][i]);
+                minLon = Math.min(minLon, latLon[1][i]);
+                maxLon = Math.max(maxLon, latLon[1][i]);
+            }
+            if (valid < 4) {
+                return;
+            }
+
+            // visible extent in full resolution pixels
+            int[] mag = getLoadedMagnification(source);
+            double lines = (maxLine - minLine) / lineStep * magFactor(mag[0]);
+            double elems = (maxElem - minElem) / elemStep * magFactor(mag[1]);
+            if ((lines < 1) || (elems < 1)) {
+                return;
+            }
+            int blowDown = (int)Math.max(1, Math.floor(Math.min(elems / width, lines / height)));
+            while ((lines / blowDown) * (elems / blowDown) > VIEW_MAX_PIXELS) {
+                blowDown++;
+            }
+            // one extra tile each way covers the snapping of the center
+            int outLines = (int)(Math.ceil(lines / blowDown / VIEW_TILE_SIZE) + 1) * VIEW_TILE_SIZE;
+            int outElems = (int)(Math.ceil(elems / blowDown / VIEW_TILE_SIZE) + 1) * VIEW_TILE_SIZE;
+
+            EarthLocation center = navDisplay.screenToEarthLocation(width / 2, height / 2);
+            double lat = center.getLatitude().getValue();
+            double lon = center.getLongitude().getValue();
+            if (Double.isNaN(lat) || Double.isNaN(lon)) {
+                return;
+            }
+            lat = snap(lat, VIEW_TILE_SIZE * blowDown * (maxLat - minLat) / lines);
+            lon = snap(lon, VIEW_TILE_SIZE * blowDown * (maxLon - minLon) / elems);
+
+            String region = String.format(Locale.US, "%.4f %.4f %d %d %d", lat, lon, outLines, outElems,
+                (blowDown == 1) ? 1 : -blowDown);
+            if (region.equals(viewRegion)) {
+                return;
+            }
+            logger.trace("requesting view region '{}'", region);
+            viewRegion = region;
+            getDataSelection().putProperty(AddeImageParameterDataSource.PROP_VIEW_REGION, region);
+            dataChanged();
+        } catch (Exception e) {
+            logger.warn("could not request the visible region", e);
+        }
+    }
+
+    /**
+     * Magnification of the image on display: the last view request's, or
+     * the data source's.
+     *
+     * @return Line and element magnification.
+     */
+    private int[] getLoadedMagnification(AddeImageParameterDataSource source) {
+        if (viewRegion != null) {
+            String[] parts = viewRegion.split(" ");
+            int mag = Integer.parseInt(parts[4]);
+            return new int[] { mag, mag };
+        }
+        return new int[] { source.getSaveLineMag(), source.getSaveEleMag() };
+    }
+
+    /**
+     * Full resolution pixels per pixel at an ADDE magnification.
+     */
+    private static double magFactor(int mag) {
+        if (mag < 0) {
+            return -mag;
+        }
+        return (mag > 1) ? 1.0 / mag : 1.0;
+    }
+
+    private static double snap(double value, double step) {
+        if ((step <= 0) || Double.isNaN(step) || Double.isInfinite(step)) {
+            return value;
+        }
+        return Math.round(value / step) * step;
+    }
     
     /**
      * Take out the histogram-related stuff that was in doMakeContents and put it
@@ -45,6 +45,8 @@ public class QualityFlag {
 	private String name = null;
 	private String packedName = null;
 	private HashMap<String, String> hm = null;
+	// maps every possible packed byte value to the value of this flag
+	private float[] lookupTable = null;
 	
 	/**
 	 * @param bitOffset
@@ -71,6 +73,7 @@ public class QualityFlag {
 	 */
 	public void setBitOffset(int bitOffset) {
 		this.bitOffset = bitOffset;
+		this.lookupTable = null;
 	}
 
 	/**
@@ -85,6 +88,7 @@ public class QualityFlag {
 	 */
 	public void setNumBits(int numBits) {
 		this.numBits = numBits;
+		this.lookupTable = null;
 	}
 
 	/**
@@ -141,6 +145,28 @@ public class QualityFlag {
 		return null;
 	}
 
+	/**
+	 * Table of 256 entries giving the value of this flag for each possible
+	 * unsigned packed byte, so extraction is a single array index per value.
+	 * Built on first use. Offsets or widths outside 0-7 decode to zero, as
+	 * the original shift and mask code did.
+	 * 
+	 * @return the lookup table, indexed by unsigned byte value
+	 */
+	public float[] getLookupTable() {
+		float[] lut = lookupTable;
+		if (lut == null) {
+			int shift = ((bitOffset >= 1) && (bitOffset <= 7)) ? bitOffset : 0;
+			int mask = ((numBits >= 1) && (numBits <= 7)) ? ((1 << numBits) - 1) : 0;
+			lut = new float[256];
+			for (int i = 0; i < 256; i++) {
+				lut[i] = (float) ((i >> shift) & mask);
+			}
+			lookupTable = lut;
+		}
+		return lut;
+	}
+
 	/* (non-Javadoc)
 	 * @see java.lang.Object#toString()
 	 */
@@ -0,0 +1,437 @@
+/*
+ * This file is part of McIDAS-V
+ *
+ * Copyright 2007-2025
+ * Space Science and Engineering Center (SSEC)
+ * University of Wisconsin - Madison
+ * 1225 W. Dayton Street, Madison, WI 53706, USA
+ * https://www.ssec.wisc.edu/mcidas/
+ *
+ * All Rights Reserved
+ *
+ * McIDAS-V is built on Unidata's IDV and SSEC's VisAD libraries, and
+ * some McIDAS-V source code is based on IDV and VisAD source code.
+ *
+ * McIDAS-V is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * McIDAS-V is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/.
+ */
+
+package edu.wisc.ssec.mcidasv.data.adde;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.wisc.ssec.mcidas.AreaFile;
+
+/**
+ * Size-capped, on-disk cache of raw AREA responses to ADDE image requests
+ * that persists across sessions.
+ *
+ * <p>Entries are addressed by a SHA-256 digest of the normalized request:
+ * the host, the request type and the request parameters sorted by name,
+ * with parameter names and values upper-cased and parameters that do not
+ * change the returned image (user, project, version, compression, port,
+ * debug and trace) left out. The same image requested from a bundle and
+ * from a script therefore maps to the same file.</p>
+ *
+ * <p>Only requests for absolute times should be cached; relative positions
+ * name a different image every time new data arrives. Files are written to
+ * a temporary name and renamed into place, so a crash mid-download never
+ * leaves a truncated entry. When the cache grows past its cap the least
+ * recently used files are deleted.</p>
+ */
+public class AddeImageDiskCache {
+
+    private static final Logger logger =
+        LoggerFactory.getLogger(AddeImageDiskCache.class);
+
+    /** Property for the maximum size of the cache in megabytes. */
+    public static final String PROP_MAX_SIZE = "mcidasv.adde.imagecache.maxmb";
+
+    /** Property to turn the cache off. */
+    public static final String PROP_ENABLED = "mcidasv.adde.imagecache.enabled";
+
+    /** Default maximum size of the cache in megabytes. */
+    public static final int DEFAULT_MAX_SIZE = 2048;
+
+    /** Name of the cache directory within the user directory. */
+    public static final String CACHE_DIRECTORY = "addeimagecache";
+
+    /** Suffix of cached AREA files. */
+    private static final String SUFFIX = ".area";
+
+    /** Request parameters that do not affect the returned image. */
+    private static final Set<String> IGNORED_KEYS = Set.of(
+        "USER", "PROJ", "VERSION", "COMPRESS", "PORT", "DEBUG", "TRACE"
+    );
+
+    /** Smallest possible AREA file: the directory block alone. */
+    private static final int MIN_AREA_BYTES = AreaFile.AD_DIRSIZE * 4;
+
+    private static AddeImageDiskCache instance;
+
+    /** Cache directory. */
+    private final Path directory;
+
+    /** Maximum size of the cache in bytes. */
+    private volatile long maxBytes;
+
+    /** Cached files and their sizes, least recently used first. */
+    private final LinkedHashMap<String, Long> entries =
+        new LinkedHashMap<>(64, 0.75f, true);
+
+    /** Total size of the cached files. */
+    private long totalBytes;
+
+    /** One lock per request being downloaded. */
+    private final Map<String, Object> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Create a cache rooted at {@code directory}, picking up any files left
+     * by previous sessions.
+     *
+     * @param directory Cache directory. Created if needed.
+     * @param maxBytes Maximum size of the cache in bytes.
+     *
+     * @throws IOException if the directory could not be created or listed.
+     */
+    public AddeImageDiskCache(File directory, long maxBytes) throws IOException {
+        this.directory = directory.toPath();
+        this.maxBytes = maxBytes;
+        Files.createDirectories(this.directory);
+        loadIndex();
+    }
+
+    /**
+     * Get the cache shared by all ADDE image data sources, creating it in
+     * {@code userDirectory} the first time.
+     *
+     * @param userDirectory McIDAS-V user directory.
+     * @param maxBytes Maximum size of the cache in bytes.
+     *
+     * @return The shared cache, or {@code null} if it could not be created.
+     */
+    public static synchronized AddeImageDiskCache getInstance(
+        String userDirectory, long maxBytes)
+    {
+        if (instance == null) {
+            try {
+                instance = new AddeImageDiskCache(
+                    new File(userDirectory, CACHE_DIRECTORY), maxBytes);
+            } catch (IOException e) {
+                logger.warn("could not create ADDE image cache", e);
+                return null;
+            }
+        } else {
+            instance.setMaxSize(maxBytes);
+        }
+        return instance;
+    }
+
+    /**
+     * Normalize an ADDE request so equivalent requests compare equal.
+     *
+     * @param request ADDE URL.
+     *
+     * @return Normalized request.
+     */
+    public static String normalize(String request) {
+        String base = request;
+        String query = "";
+        int queryStart = request.indexOf('?');
+        if (queryStart >= 0) {
+            base = request.substring(0, queryStart);
+            query = request.substring(queryStart + 1);
+        }
+        Map<String, String> params = new TreeMap<>();
+        for (String param : query.split("&")) {
+            if (param.isEmpty()) {
+                continue;
+            }
+            int eq = param.indexOf('=');
+            String key = (eq >= 0) ? param.substring(0, eq) : param;
+            String value = (eq >= 0) ? param.substring(eq + 1) : "";
+            key = key.trim().toUpperCase(Locale.ROOT);
+            if (IGNORED_KEYS.contains(key)) {
+                continue;
+            }
+            value = value.trim().replaceAll("\\s+", " ");
+            params.put(key, value.toUpperCase(Locale.ROOT));
+        }
+        StringBuilder sb = new StringBuilder(request.length());
+        sb.append(base.trim().toLowerCase(Locale.ROOT)).append('?');
+        for (Map.Entry<String, String> e : params.entrySet()) {
+            sb.append(e.getKey()).append('=').append(e.getValue()).append('&');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Compute the cache key for a request.
+     *
+     * @param request ADDE URL.
+     *
+     * @return Hex SHA-256 digest of the normalized request.
+     */
+    public static String getKey(String request) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] hash = md.digest(
+                normalize(request).getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+                sb.append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Get the cached AREA file for a request, downloading it first if it is
+     * not yet cached.
+     *
+     * @param request ADDE URL for an absolute time.
+     *
+     * @return Local AREA file.
+     *
+     * @throws IOException if the image could not be fetched or stored.
+     */
+    public File fetch(String request) throws IOException {
+        String key = getKey(request);
+        File cached = lookup(key);
+        if (cached != null) {
+            logger.trace("disk cache hit key={} request={}", key, request);
+            return cached;
+        }
+        Object lock = inFlight.computeIfAbsent(key, k -> new Object());
+        try {
+            synchronized (lock) {
+                // another thread may have fetched it while we waited
+                cached = lookup(key);
+                if (cached != null) {
+                    return cached;
+                }
+                return download(key, request);
+            }
+        } finally {
+            inFlight.remove(key, lock);
+        }
+    }
+
+    /**
+     * Set the maximum size of the cache, deleting files if it is now over.
+     *
+     * @param maxBytes Maximum size in bytes.
+     */
+    public void setMaxSize(long maxBytes) {
+        this.maxBytes = maxBytes;
+        trim();
+    }
+
+    /**
+     * @return Total size of the cached files in bytes.
+     */
+    public synchronized long getSize() {
+        return totalBytes;
+    }
+
+    /**
+     * @return Number of cached images.
+     */
+    public synchronized int getCount() {
+        return entries.size();
+    }
+
+    /**
+     * Delete every cached image.
+     */
+    public void clear() {
+        List<String> keys;
+        synchronized (this) {
+            keys = new ArrayList<>(entries.keySet());
+            entries.clear();
+            totalBytes = 0L;
+        }
+        for (String key : keys) {
+            delete(key);
+        }
+    }
+
+    /**
+     * Look up a cached file, marking it as recently used.
+     *
+     * @param key Cache key.
+     *
+     * @return The file, or {@code null} if not cached.
+     */
+    private File lookup(String key) {
+        synchronized (this) {
+            if (entries.get(key) == null) {
+                return null;
+            }
+        }
+        Path path = pathFor(key);
+        if (!Files.isRegularFile(path)) {
+            // deleted behind our back
+            synchronized (this) {
+                Long size = entries.remove(key);
+                if (size != null) {
+                    totalBytes -= size;
+                }
+            }
+            return null;
+        }
+        // the mtime orders entries when the index is rebuilt next session
+        path.toFile().setLastModified(System.currentTimeMillis());
+        return path.toFile();
+    }
+
+    /**
+     * Download the AREA bytes for a request into the cache.
+     *
+     * @param key Cache key.
+     * @param request ADDE URL.
+     *
+     * @return Cached file.
+     *
+     * @throws IOException if the download failed or did not look like AREA
+     * data.
+     */
+    private File download(String key, String request) throws IOException {
+        Path target = pathFor(key);
+        Files.createDirectories(target.getParent());
+        Path tmp = Files.createTempFile(target.getParent(), key, ".tmp");
+        try {
+            long start = System.nanoTime();
+            long size;
+            try (InputStream in = new URL(request).openStream()) {
+                size = Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            if (size < MIN_AREA_BYTES) {
+                throw new IOException("ADDE response too short to be an AREA file: " + size + " bytes");
+            }
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+            logger.trace("cached {} bytes in {} ms key={} request={}",
+                size, (System.nanoTime() - start) / 1000000L, key, request);
+            synchronized (this) {
+                Long old = entries.put(key, size);
+                totalBytes += size - ((old != null) ? old : 0L);
+            }
+            trim();
+            return target.toFile();
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Delete least recently used files until the cache is under its cap.
+     */
+    private void trim() {
+        List<String> victims = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+            // always keep the newest entry, even if it alone is over the cap
+            while ((totalBytes > maxBytes) && (entries.size() > 1) && it.hasNext()) {
+                Map.Entry<String, Long> e = it.next();
+                it.remove();
+                totalBytes -= e.getValue();
+                victims.add(e.getKey());
+            }
+        }
+        for (String key : victims) {
+            delete(key);
+        }
+        if (!victims.isEmpty()) {
+            logger.trace("evicted {} images from the ADDE image cache", victims.size());
+        }
+    }
+
+    /**
+     * Rebuild the index from the files on disk, oldest first, and remove
+     * temporary files left by interrupted downloads.
+     *
+     * @throws IOException if the directory could not be walked.
+     */
+    private void loadIndex() throws IOException {
+        List<File> files = new ArrayList<>();
+        try (Stream<Path> paths = Files.walk(directory, 2)) {
+            paths.filter(Files::isRegularFile).forEach(p -> {
+                String name = p.getFileName().toString();
+                if (name.endsWith(SUFFIX)) {
+                    files.add(p.toFile());
+                } else if (name.endsWith(".tmp")) {
+                    p.toFile().delete();
+                }
+            });
+        }
+        files.sort((a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        synchronized (this) {
+            for (File f : files) {
+                String name = f.getName();
+                long size = f.length();
+                entries.put(name.substring(0, name.length() - SUFFIX.length()), size);
+                totalBytes += size;
+            }
+        }
+        logger.trace("ADDE image cache at {} holds {} images, {} bytes",
+            directory, entries.size(), totalBytes);
+        trim();
+    }
+
+    /**
+     * @param key Cache key.
+     *
+     * @return Path of the file for {@code key}. Files are spread over
+     * subdirectories named for the first two characters of the key.
+     */
+    private Path pathFor(String key) {
+        return directory.resolve(key.substring(0, 2)).resolve(key + SUFFIX);
+    }
+
+    /**
+     * @param key Cache key whose file should be deleted.
+     */
+    private void delete(String key) {
+        try {
+            Files.deleteIfExists(pathFor(key));
+        } catch (IOException e) {
+            logger.warn("could not delete cached image {}", pathFor(key), e);
+        }
+    }
+}
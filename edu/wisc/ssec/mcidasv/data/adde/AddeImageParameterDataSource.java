@@ -34,6 +34,7 @@ import java.awt.Dimension;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
+import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.rmi.RemoteException;
 import java.text.SimpleDateFormat;
@@ -51,6 +52,8 @@ import java.util.Map;
 import java.util.StringTokenizer;
 import java.util.TimeZone;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
 
 import javax.swing.BoxLayout;
 import javax.swing.JCheckBox;
@@ -69,6 +72,7 @@ import edu.wisc.ssec.mcidas.AreaDirectory;
 import edu.wisc.ssec.mcidas.AreaDirectoryList;
 import edu.wisc.ssec.mcidas.AreaFile;
 import edu.wisc.ssec.mcidas.AreaFileException;
+import edu.wisc.ssec.mcidas.adde.AddeDirectoryCache;
 import edu.wisc.ssec.mcidas.adde.AddeImageURL;
 import edu.wisc.ssec.mcidas.adde.AddeTextReader;
 import edu.wisc.ssec.mcidas.adde.AddeURL;
@@ -90,6 +94,7 @@ import visad.georef.MapProjection;
 import visad.meteorology.ImageSequence;
 import visad.meteorology.ImageSequenceImpl;
 import visad.meteorology.SingleBandedImage;
+import visad.util.ThreadManager;
 import ucar.nc2.iosp.mcidas.McIDASAreaProjection;
 import ucar.unidata.data.BadDataException;
 import ucar.unidata.data.CompositeDataChoice;
@@ -130,6 +135,22 @@ public class AddeImageParameterDataSource extends AddeImageDataSource {
 
     private static final Logger logger = LoggerFactory.getLogger(AddeImageParameterDataSource.class);
 
+    /** Property for how many images may be read from one ADDE server at once. */
+    public static final String PROP_MAX_PER_SERVER = "mcidasv.adde.maxrequestsperserver";
+
+    /** Default for {@link #PROP_MAX_PER_SERVER}. */
+    public static final int DEFAULT_MAX_PER_SERVER = 4;
+
+    /**
+     * Data selection property a display sets to request only the region it
+     * shows: center latitude and longitude, lines, elements and
+     * magnification, separated by spaces.
+     */
+    public static final String PROP_VIEW_REGION = "VIEWREGION";
+
+    /** Limits on concurrent image reads, by server, shared by all data sources. */
+    private static final Map<String, Semaphore> serverPermits = new HashMap<>();
+
     /**
      * Public keys for server, group, dataset, user, project.
      */
@@ -204,6 +225,15 @@ public class AddeImageParameterDataSource extends AddeImageDataSource {
 
     protected List<DataChoice> stashedChoices = null;
     private List iml = new ArrayList();
+
+    /** Guards the state {@link #makeImage} shares between threads. */
+    private final Object imageMutex = new Object();
+
+    /** Fetches new and upcoming images in the background. */
+    private AddeImagePrefetcher prefetcher;
+
+    /** Swaps full resolution images in for coarse ones. */
+    private AddeImageRefiner refiner;
     private List saveImageList = new ArrayList();
 
     private int previewLineRes = 1;
@@ -344,6 +374,82 @@ public class AddeImageParameterDataSource extends AddeImageDataSource {
         return result;
     }
 
+    @Override public void doRemove() {
+        synchronized (imageMutex) {
+            if (prefetcher != null) {
+                prefetcher.dispose();
+                prefetcher = null;
+            }
+            if (refiner != null) {
+                refiner.dispose();
+                refiner = null;
+            }
+        }
+        super.doRemove();
+    }
+
+    /**
+     * Coarse images still being refined, and sequences holding them, are
+     * not cached, so a display reloading after refinement gets the full
+     * resolution images.
+     */
+    @Override protected boolean shouldCache(Data data) {
+        AddeImageRefiner imageRefiner;
+        synchronized (imageMutex) {
+            imageRefiner = refiner;
+        }
+        return (imageRefiner == null) || !imageRefiner.isCoarse(data);
+    }
+
+    /**
+     * Get the prefetcher for this data source, creating it if needed.
+     *
+     * @return The prefetcher, or {@code null} if prefetching is turned off.
+     */
+    private AddeImagePrefetcher getPrefetcher() {
+        synchronized (imageMutex) {
+            if (prefetcher == null) {
+                ucar.unidata.idv.StateManager stateManager =
+                    getDataContext().getIdv().getStateManager();
+                if (!stateManager.getPreferenceOrProperty(AddeImagePrefetcher.PROP_ENABLED, true)) {
+                    return null;
+                }
+                AddeImagePrefetcher.setMaxMegabytes(
+                    (int)stateManager.getPreferenceOrProperty(AddeImagePrefetcher.PROP_MAX_SIZE,
+                        (double)AddeImagePrefetcher.DEFAULT_MAX_SIZE));
+                prefetcher = new AddeImagePrefetcher(this,
+                    (int)stateManager.getPreferenceOrProperty(AddeImagePrefetcher.PROP_INTERVAL,
+                        (double)AddeImagePrefetcher.DEFAULT_INTERVAL));
+            }
+            return prefetcher;
+        }
+    }
+
+    /**
+     * Get the coarse-to-fine refiner for this data source, creating it if
+     * needed.
+     *
+     * @return The refiner, or {@code null} if coarse-to-fine loading is
+     * turned off.
+     */
+    private AddeImageRefiner getRefiner() {
+        synchronized (imageMutex) {
+            if (refiner == null) {
+                ucar.unidata.idv.StateManager stateManager =
+                    getDataContext().getIdv().getStateManager();
+                if (!stateManager.getPreferenceOrProperty(AddeImageRefiner.PROP_ENABLED, false)) {
+                    return null;
+                }
+                refiner = new AddeImageRefiner(this,
+                    (int)stateManager.getPreferenceOrProperty(AddeImageRefiner.PROP_FACTOR,
+                        (double)AddeImageRefiner.DEFAULT_FACTOR),
+                    (int)stateManager.getPreferenceOrProperty(AddeImageRefiner.PROP_MIN_PIXELS,
+                        (double)AddeImageRefiner.DEFAULT_MIN_PIXELS));
+            }
+            return refiner;
+        }
+    }
+
     @Override public void setPollingInfo(PollingInfo value) {
         logger.trace("value={}", value);
         super.setPollingInfo(value);
@@ -779,14 +885,14 @@ public class AddeImageParameterDataSource extends AddeImageDataSource {
         addeCmdBuff = addeCmdBuff.replace("imagedata", "imagedir");
         AreaDirectoryList dirList = null;
         try {
-            dirList = new AreaDirectoryList(addeCmdBuff);
+            dirList = AddeDirectoryCache.getDirectoryList(addeCmdBuff);
         } catch (Exception e) {
             try {
                 List<BandInfo> bandInfos = (List<BandInfo>)getProperty(PROP_BANDINFO, (Object)null);
                 BandInfo bi = bandInfos.get(0);
 //                String bandStr = Integer.valueOf(bi.getBandNumber()).toString();
                 addeCmdBuff = replaceKey(addeCmdBuff, "BAND", bi.getBandNumber());
-                dirList = new AreaDirectoryList(addeCmdBuff);
+                dirList = AddeDirectoryCache.getDirectoryList(addeCmdBuff);
             } catch (Exception eOpen) {
                 setInError(true);
                 logger.error("problem opening AREA file", eOpen);
@@ -1951,13 +2057,14 @@ public class AddeImageParameterDataSource extends AddeImageDataSource {
 
             if (getCacheDataToDisk() && anyRelative && (biggestPosition != null)) {
                 biggestPosition.setRequestType(AddeImageInfo.REQ_IMAGEDIR);
-                AreaDirectoryList adl = new AreaDirectoryList(biggestPosition.getURLString());
+                AreaDirectoryList adl = getRelativeDirectoryList(biggestPosition.getURLString());
                 biggestPosition.setRequestType(AddeImageInfo.REQ_IMAGEDATA);
                 currentDirs = adl.getSortedDirs();
             } else {
                 currentDirs = null;
             }
 
+            ThreadManager threadManager = new ThreadManager("image data reading");
             int cnt = 1;
             DataChoice parent = dataChoice.getParent();
             final List<SingleBandedImage> images = new ArrayList<SingleBandedImage>();
@@ -2019,23 +2126,52 @@ public class AddeImageParameterDataSource extends AddeImageDataSource {
                     }
                 }
 
-                try {
-                    SingleBandedImage image = makeImage(aid, rangeType, true, readLabel, subset);
-                    if (image != null) {
-                        if(rangeType==null) {
+                // images from files need the range type of the first one,
+                // ADDE images are read in parallel from the start
+                if ((rangeType == null) && isFromFile(aid)) {
+                    try {
+                        SingleBandedImage image = makeImage(aid, rangeType, true, readLabel, subset);
+                        if (image != null) {
                             rangeType = ((FunctionType) image.getType()).getRange();
+                            synchronized (images) {
+                                images.add(image);
+                            }
                         }
-                        synchronized (images) {
-                            images.add(image);
-                        }
+                    } catch (VisADException e) {
+                        logger.error("avoiding visad exception: ",e);
+                    } catch (RemoteException e) {
+                        logger.error("avoiding remote exception: ", e);
                     }
-                } catch (VisADException e) {
-                    logger.error("avoiding visad exception: ",e);
-                } catch (RemoteException e) {
-                    logger.error("avoiding remote exception: ", e);
+                } else {
+                    final MathType imageRangeType = rangeType;
+                    threadManager.addRunnable(new ThreadManager.MyRunnable() {
+                        public void run() throws Exception {
+                            try {
+                                SingleBandedImage image = makeImage(aid, imageRangeType, true, readLabel, subset);
+                                if (image != null) {
+                                    synchronized (images) {
+                                        images.add(image);
+                                    }
+                                }
+                            } catch (VisADException e) {
+                                logger.error("avoiding visad exception: ",e);
+                            } catch (RemoteException e) {
+                                logger.error("avoiding remote exception: ", e);
+                            }
+                        }
+                    });
                 }
             }
 
+            try {
+                threadManager.runInParallel(getDataContext().getIdv().getMaxDataThreadCount());
+            } catch (VisADException ve) {
+                LogUtil.printMessage(ve.toString());
+            }
+            if (images.isEmpty()) {
+                return null;
+            }
+
             TreeMap imageMap = new TreeMap();
             for (SingleBandedImage image : images) {
                 imageMap.put(image.getStartTime(), image);
@@ -2045,6 +2181,9 @@ public class AddeImageParameterDataSource extends AddeImageDataSource {
                 DataRange[] sampleRanges = null;
                 Set domainSet = null;
                 for (SingleBandedImage sbi : sortedImages) {
+                    if (!(sbi instanceof AreaImageFlatField)) {
+                        continue;
+                    }
                     AreaImageFlatField aiff = (AreaImageFlatField) sbi;
                     sampleRanges = aiff.getRanges(true);
                     if (domainSet == null) {
@@ -2066,6 +2205,9 @@ public class AddeImageParameterDataSource extends AddeImageDataSource {
 
                 if (sampleRanges != null) {
                     for (SingleBandedImage sbi : sortedImages) {
+                        if (!(sbi instanceof AreaImageFlatField)) {
+                            continue;
+                        }
                         AreaImageFlatField aiff = (AreaImageFlatField) sbi;
                         aiff.setSampleRanges(sampleRanges);
                         aiff.setDomainIfNeeded(domainSet);
@@ -2191,6 +2333,16 @@ public class AddeImageParameterDataSource extends AddeImageDataSource {
                 areaDir = aid.getDirectory();
             }
 
+            // nominal time of this frame, for the prefetch store
+            DateTime frameTime = null;
+            if (aid.getIsRelative()) {
+                if ((currentDirs != null) && (areaDir != null) && (areaDir.getNominalTime() != null)) {
+                    frameTime = new DateTime(areaDir.getNominalTime());
+                }
+            } else {
+                frameTime = aid.getImageTime();
+            }
+
             if (!getCacheDataToDisk()) {
                 areaDir = null;
             }
@@ -2210,6 +2362,7 @@ public class AddeImageParameterDataSource extends AddeImageDataSource {
                 }
 
             } else {
+              synchronized (imageMutex) {
                 src = aid.getSource();
                 try {
                     savePlace = this.laLoSel.getPlace();
@@ -2245,18 +2398,64 @@ public class AddeImageParameterDataSource extends AddeImageDataSource {
                 }
                 src = replaceKey(src, SIZE_KEY, saveNumLine + ' ' + saveNumEle);
                 src = replaceKey(src, MAG_KEY, saveLineMag + ' ' + saveEleMag);
-            }
 
-            AreaAdapter aa = new AreaAdapter(src, false);
-            logger.trace("Getting a new aa={} for src=: {}", aa, src);
-            areaDir = previewDir;
-            result = aa.getImage();
+                Object viewRegion = props.get(PROP_VIEW_REGION);
+                if (viewRegion != null) {
+                    src = applyViewRegion(src, viewRegion.toString());
+                }
+              }
+            }
+
+            final AddeImagePrefetcher imagePrefetcher = isFromFile(aid) ? null : getPrefetcher();
+            AddeImageRefiner imageRefiner = isFromFile(aid) ? null : getRefiner();
+            String coarseSrc = (imageRefiner != null) ? imageRefiner.getCoarseSource(src) : null;
+            Callable<SingleBandedImage> refineTask = null;
+            boolean inFlight = false;
+            result = (imagePrefetcher != null) ? imagePrefetcher.take(src, frameTime) : null;
+            if (result != null) {
+                logger.trace("prefetched image for src={} time={}", src, frameTime);
+            } else if ((coarseSrc != null) && imageRefiner.isRefining(src)) {
+                // the full image is still being read; keep showing the coarse one
+                inFlight = true;
+                result = (SingleBandedImage)getCache(coarseSrc);
+                if (result == null) {
+                    result = readImage(aid, coarseSrc);
+                }
+                logger.trace("refine in flight, coarse image for src={}", src);
+            } else if ((coarseSrc != null)
+                       && ((result = (SingleBandedImage)getCache(src)) != null)) {
+                // refined since the cache was checked above
+                logger.trace("refined image for src={}", src);
+            } else if (coarseSrc != null) {
+                // show a coarse image now, swap in the full one when it's read
+                result = readImage(aid, coarseSrc);
+                logger.trace("coarse image for src={}", src);
+                final String fullSrc = src;
+                refineTask = () -> {
+                    SingleBandedImage full = readImage(aid, fullSrc);
+                    putCache(fullSrc, full);
+                    return full;
+                };
+            } else {
+                result = readImage(aid, src);
+            }
+            if ((imagePrefetcher != null) && aid.getIsRelative() && isPolling()) {
+                imagePrefetcher.watch(src, frameTime);
+            }
 
-            putCache(src, result);
-            aid.setSource(src);
-            iml.add(aid);
-            setImageList(iml);
-            setDisplaySource(src, props);
+            synchronized (imageMutex) {
+                areaDir = previewDir;
+                // the coarse image must never be found under the full request
+                putCache(((refineTask != null) || inFlight) ? coarseSrc : src, result);
+                aid.setSource(src);
+                iml.add(aid);
+                setImageList(iml);
+                setDisplaySource(src, props);
+            }
+            // start after the coarse image is cached so the full one wins
+            if (refineTask != null) {
+                imageRefiner.refine(src, result, refineTask);
+            }
             return result;
 
         } catch (java.io.IOException ioe) {
@@ -2264,6 +2463,161 @@ public class AddeImageParameterDataSource extends AddeImageDataSource {
         }
     }
     
+    /**
+     * Replace the region of a request with the one a display asked for
+     * through {@link #PROP_VIEW_REGION}.
+     *
+     * @param src ADDE image request.
+     * @param viewRegion Center latitude and longitude, lines, elements and
+     * magnification.
+     *
+     * @return {@code src} centered on the view, or unchanged if
+     * {@code viewRegion} can't be read.
+     */
+    static String applyViewRegion(String src, String viewRegion) {
+        String[] parts = viewRegion.trim().split("\\s+");
+        if (parts.length != 5) {
+            logger.warn("ignoring bad view region '{}'", viewRegion);
+            return src;
+        }
+        try {
+            Double.parseDouble(parts[0]);
+            Double.parseDouble(parts[1]);
+            Integer.parseInt(parts[2]);
+            Integer.parseInt(parts[3]);
+            Integer.parseInt(parts[4]);
+        } catch (NumberFormatException e) {
+            logger.warn("ignoring bad view region '{}'", viewRegion);
+            return src;
+        }
+        // the four argument replaceKey leaves SPAC alone
+        String viewSrc = removeKey(src, LINELE_KEY);
+        viewSrc = replaceKey(viewSrc, LATLON_KEY, LATLON_KEY, parts[0] + ' ' + parts[1]);
+        viewSrc = replaceKey(viewSrc, PLACE_KEY, PLACE_KEY, "CENTER");
+        viewSrc = replaceKey(viewSrc, SIZE_KEY, SIZE_KEY, parts[2] + ' ' + parts[3]);
+        return replaceKey(viewSrc, MAG_KEY, MAG_KEY, parts[4] + ' ' + parts[4]);
+    }
+
+    /**
+     * Read an image, holding one of its server's permits while reading.
+     *
+     * @param aid Descriptor of the image.
+     * @param src Request to read.
+     *
+     * @return The image.
+     *
+     * @throws IOException if the image can't be read.
+     * @throws VisADException VisAD problem.
+     */
+    private SingleBandedImage readImage(AddeImageDescriptor aid, String src)
+        throws java.io.IOException, VisADException
+    {
+        Semaphore permits = isFromFile(aid) ? null : getServerPermits(src);
+        if (permits != null) {
+            permits.acquireUninterruptibly();
+        }
+        try {
+            logger.trace("Reading src=: {}", src);
+            return readAreaImage(getAreaSource(aid, src), getName());
+        } finally {
+            if (permits != null) {
+                permits.release();
+            }
+        }
+    }
+
+    /**
+     * Read an image as an {@link AreaImageFlatField} when raw counts or
+     * streaming are turned on, and with {@link AreaAdapter} otherwise.
+     *
+     * @param source File or ADDE URL to read.
+     * @param readLabel Shown while the image is read.
+     *
+     * @return The image.
+     *
+     * @throws IOException if the image can't be read.
+     * @throws VisADException VisAD problem.
+     */
+    static SingleBandedImage readAreaImage(String source, String readLabel)
+        throws IOException, VisADException
+    {
+        SingleBandedImage image = AreaImageFlatField.createAndRead(source, readLabel);
+        if (image == null) {
+            image = new AreaAdapter(source, false).getImage();
+        }
+        return image;
+    }
+
+    /**
+     * Get the limit on concurrent image reads from the server named in
+     * {@code src}. The limit is {@link #PROP_MAX_PER_SERVER}, capped at
+     * {@code getMaxDataThreadCount}, and is shared by every data source
+     * reading from that server.
+     *
+     * @param src ADDE URL for the image.
+     *
+     * @return Permits for the server, or {@code null} if the server cannot
+     * be found in {@code src}.
+     */
+    private Semaphore getServerPermits(String src) {
+        int start = src.indexOf("://");
+        if (start < 0) {
+            return null;
+        }
+        start += 3;
+        int end = src.indexOf('/', start);
+        String server = ((end < 0) ? src.substring(start) : src.substring(start, end)).toLowerCase();
+        synchronized (serverPermits) {
+            Semaphore permits = serverPermits.get(server);
+            if (permits == null) {
+                ucar.unidata.idv.IntegratedDataViewer idv = getDataContext().getIdv();
+                int max = (int)idv.getStateManager().getPreferenceOrProperty(
+                    PROP_MAX_PER_SERVER, (double)DEFAULT_MAX_PER_SERVER);
+                max = Math.max(1, Math.min(max, idv.getMaxDataThreadCount()));
+                permits = new Semaphore(max, true);
+                serverPermits.put(server, permits);
+            }
+            return permits;
+        }
+    }
+
+    /**
+     * Find where to read an image from. Requests for absolute times are
+     * served from the persistent {@link AddeImageDiskCache}, downloading
+     * the AREA bytes into it on a miss. Relative requests, local files and
+     * anything the cache cannot handle go straight to {@code src}.
+     *
+     * @param aid Descriptor for the image.
+     * @param src ADDE URL or file path for the image.
+     *
+     * @return Path of the cached AREA file or {@code src}.
+     */
+    private String getAreaSource(AddeImageDescriptor aid, String src) {
+        if (aid.getIsRelative() || isFromFile(aid) || !src.startsWith("adde")) {
+            return src;
+        }
+        ucar.unidata.idv.StateManager stateManager =
+            getDataContext().getIdv().getStateManager();
+        if (!stateManager.getPreferenceOrProperty(AddeImageDiskCache.PROP_ENABLED, true)) {
+            return src;
+        }
+        long maxBytes = (long)stateManager.getPreferenceOrProperty(
+            AddeImageDiskCache.PROP_MAX_SIZE,
+            (double)AddeImageDiskCache.DEFAULT_MAX_SIZE) * 1024L * 1024L;
+        AddeImageDiskCache cache = AddeImageDiskCache.getInstance(
+            getDataContext().getObjectStore().getUserDirectory().toString(),
+            maxBytes);
+        if (cache == null) {
+            return src;
+        }
+        try {
+            return cache.fetch(src).getPath();
+        } catch (IOException e) {
+            logger.warn("could not cache image, reading it directly src={}", src, e);
+            return src;
+        }
+    }
+
     /**
      * Make a parameter name for the BandInfo
      *
@@ -2370,7 +2724,7 @@ public class AddeImageParameterDataSource extends AddeImageDataSource {
                         aii.setRequestType(AddeURL.REQ_IMAGEDIR);
                         AreaDirectoryList ad;
                         try {  // we may be asking for a date that doesn't exist
-                            ad = new AreaDirectoryList(aii.getURLString());
+                            ad = AddeDirectoryCache.getDirectoryList(aii.getURLString());
                         } catch (AreaFileException afe) {
                             // If there's an error, we just ignore it.  In the
                             // end, the descriptor list will be empty if there is no
@@ -2844,7 +3198,7 @@ public class AddeImageParameterDataSource extends AddeImageDataSource {
                     if ((loIdx > hiIdx) && (! isRelative)) break;
 
                     logger.trace("attempting to create AreaDirectoryList using previewUrl={}", previewUrl);
-                    AreaDirectoryList directoryList = new AreaDirectoryList(previewUrl);
+                    AreaDirectoryList directoryList = AddeDirectoryCache.getDirectoryList(previewUrl);
                     logger.trace("created directoryList! size={}\n{}", directoryList.getDirs().size(), directoryList);
                     List<AreaDirectory> areaDirectories = (List<AreaDirectory>) directoryList.getDirs();
 
@@ -2911,7 +3265,7 @@ public class AddeImageParameterDataSource extends AddeImageDataSource {
                 for (String previewUrl : previewUrls) {
 
                     logger.trace("attempting to create AreaDirectoryList using previewUrl={}", previewUrl);
-                    AreaDirectoryList directoryList = new AreaDirectoryList(previewUrl);
+                    AreaDirectoryList directoryList = AddeDirectoryCache.getDirectoryList(previewUrl);
                     logger.trace("created directoryList! size={}\n{}", directoryList.getDirs().size(), directoryList);
                     List<AreaDirectory> areaDirectories = (List<AreaDirectory>) directoryList.getDirs();
 
@@ -0,0 +1,400 @@
+/*
+ * This file is part of McIDAS-V
+ *
+ * Copyright 2007-2025
+ * Space Science and Engineering Center (SSEC)
+ * University of Wisconsin - Madison
+ * 1225 W. Dayton Street, Madison, WI 53706, USA
+ * https://www.ssec.wisc.edu/mcidas/
+ *
+ * All Rights Reserved
+ *
+ * McIDAS-V is built on Unidata's IDV and SSEC's VisAD libraries, and
+ * some McIDAS-V source code is based on IDV and VisAD source code.
+ *
+ * McIDAS-V is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * McIDAS-V is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/.
+ */
+
+
+package edu.wisc.ssec.mcidasv.data.adde;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.wisc.ssec.mcidas.AreaDirectory;
+import edu.wisc.ssec.mcidas.AreaDirectoryList;
+import edu.wisc.ssec.mcidas.adde.AddeDirectoryCache;
+
+import visad.DateTime;
+import visad.meteorology.SingleBandedImage;
+
+import ucar.unidata.data.DataSourceCache;
+
+/**
+ * Fetches new times of a real-time loop for an
+ * {@link AddeImageParameterDataSource} before the display asks for them.
+ *
+ * <p>While the data source is polling, the newest position of each
+ * relative request is checked every {@value #DEFAULT_INTERVAL} seconds, or
+ * as set by {@link #PROP_INTERVAL}. When a new image shows up it is
+ * fetched in the background, then the data source is reloaded. The reload
+ * takes the new image from the prefetch store, so the newest frame shows
+ * up without waiting on the server.</p>
+ *
+ * <p>Images are stored by request without the position, day and time,
+ * plus the nominal time of the image. An image leaves the store when a
+ * reload takes it. The store is shared by every data source and holds at
+ * most {@value #DEFAULT_MAX_SIZE} megabytes, or as set by
+ * {@link #PROP_MAX_SIZE}, oldest use first out; memory relief can
+ * {@link #clearStore() clear} it.</p>
+ */
+public class AddeImagePrefetcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(AddeImagePrefetcher.class);
+
+    /** Property to turn prefetching off. */
+    public static final String PROP_ENABLED = "mcidasv.adde.prefetch.enabled";
+
+    /** Property for the size of the prefetch store in megabytes. */
+    public static final String PROP_MAX_SIZE = "mcidasv.adde.prefetch.maxmb";
+
+    /** Property for seconds between checks for new times. */
+    public static final String PROP_INTERVAL = "mcidasv.adde.prefetch.interval";
+
+    /** Default for {@link #PROP_MAX_SIZE}. */
+    public static final int DEFAULT_MAX_SIZE = 256;
+
+    /** Default for {@link #PROP_INTERVAL}. */
+    public static final int DEFAULT_INTERVAL = 60;
+
+    /** Shared by all prefetchers; the work is mostly waiting on servers. */
+    private static final ScheduledExecutorService executor =
+        Executors.newScheduledThreadPool(2, r -> {
+            Thread t = new Thread(r, "ADDE image prefetch");
+            t.setDaemon(true);
+            return t;
+        });
+
+    /** Guards the shared store. */
+    private static final Object STORE_MUTEX = new Object();
+
+    /** Prefetched images of all data sources, least recently used first. */
+    private static final LinkedHashMap<String, Held> store = new LinkedHashMap<>(16, 0.75f, true);
+
+    private static long storeBytes = 0;
+
+    private static long maxBytes = DEFAULT_MAX_SIZE * 1024L * 1024L;
+
+    private final AddeImageParameterDataSource dataSource;
+
+    private final long intervalSeconds;
+
+    /** Relative requests to watch for new times, by signature. */
+    private final Map<String, Watch> watches = new HashMap<>();
+
+    private ScheduledFuture<?> watchTask;
+
+    private volatile boolean disposed = false;
+
+    /**
+     * Create a prefetcher for a data source.
+     *
+     * @param dataSource Data source the images are for.
+     * @param intervalSeconds Seconds between checks for new times.
+     */
+    public AddeImagePrefetcher(AddeImageParameterDataSource dataSource,
+                               int intervalSeconds)
+    {
+        this.dataSource = dataSource;
+        this.intervalSeconds = Math.max(5, intervalSeconds);
+    }
+
+    /**
+     * Set the size of the prefetch store shared by all data sources.
+     * Images over the new size are dropped, oldest use first.
+     *
+     * @param maxMegabytes Size in megabytes, zero to store nothing.
+     */
+    public static void setMaxMegabytes(int maxMegabytes) {
+        synchronized (STORE_MUTEX) {
+            maxBytes = Math.max(0, maxMegabytes) * 1024L * 1024L;
+            trim();
+        }
+    }
+
+    /**
+     * Drop every prefetched image, of all data sources.
+     *
+     * @return Estimated bytes the store held.
+     */
+    public static long clearStore() {
+        synchronized (STORE_MUTEX) {
+            long bytes = storeBytes;
+            store.clear();
+            storeBytes = 0;
+            return bytes;
+        }
+    }
+
+    /**
+     * Get the estimated size of the prefetch store.
+     *
+     * @return Bytes held by all data sources.
+     */
+    public static long getStoreSize() {
+        synchronized (STORE_MUTEX) {
+            return storeBytes;
+        }
+    }
+
+    // callers hold STORE_MUTEX
+    private static void trim() {
+        for (Iterator<Held> it = store.values().iterator(); it.hasNext() && (storeBytes > maxBytes); ) {
+            storeBytes -= it.next().bytes;
+            it.remove();
+        }
+    }
+
+    /**
+     * Get the part of a request that identifies a loop rather than one of
+     * its frames.
+     *
+     * @param src ADDE image request.
+     *
+     * @return {@code src} without position, day and time.
+     */
+    static String getSignature(String src) {
+        String signature = AddeImageParameterDataSource.removeKey(src, "POS");
+        signature = AddeImageParameterDataSource.removeKey(signature, "DAY");
+        return AddeImageParameterDataSource.removeKey(signature, "TIME");
+    }
+
+    private static String makeKey(String src, DateTime time) {
+        return getSignature(src) + '|' + time;
+    }
+
+    /**
+     * Take an image prefetched for the same request and time out of the
+     * store. From then on the data source's own cache holds it.
+     *
+     * @param src ADDE image request.
+     * @param time Nominal time of the image wanted.
+     *
+     * @return The image or {@code null}.
+     */
+    public SingleBandedImage take(String src, DateTime time) {
+        if (time == null) {
+            return null;
+        }
+        synchronized (STORE_MUTEX) {
+            Held held = store.remove(makeKey(src, time));
+            if (held == null) {
+                return null;
+            }
+            storeBytes -= held.bytes;
+            return held.image;
+        }
+    }
+
+    /**
+     * Is there a prefetched image for the request and time.
+     */
+    private static boolean isStored(String src, DateTime time) {
+        synchronized (STORE_MUTEX) {
+            return store.containsKey(makeKey(src, time));
+        }
+    }
+
+    /**
+     * Keep an image the watcher fetched until a reload takes it.
+     *
+     * @param src ADDE image request.
+     * @param time Nominal time of the image.
+     * @param image The image.
+     */
+    private void put(String src, DateTime time, SingleBandedImage image) {
+        if ((time == null) || (image == null)) {
+            return;
+        }
+        long bytes = DataSourceCache.estimateHeldSize(image);
+        synchronized (STORE_MUTEX) {
+            if (bytes > maxBytes) {
+                return;
+            }
+            Held old = store.put(makeKey(src, time), new Held(this, image, bytes));
+            if (old != null) {
+                storeBytes -= old.bytes;
+            }
+            storeBytes += bytes;
+            trim();
+        }
+    }
+
+    /**
+     * Watch a relative request for new times. The check runs while the
+     * data source is polling.
+     *
+     * @param src ADDE request for one position of a real-time loop.
+     * @param time Nominal time of that position.
+     */
+    public void watch(String src, DateTime time) {
+        if (disposed || (time == null)) {
+            return;
+        }
+        String signature = getSignature(src);
+        synchronized (this) {
+            Watch w = watches.get(signature);
+            if (w == null) {
+                w = new Watch(AddeImageParameterDataSource.replaceKey(src, "POS", "POS", "0"));
+                watches.put(signature, w);
+            }
+            if ((w.newest == null) || (time.compareTo(w.newest) > 0)) {
+                w.newest = time;
+            }
+            if (watchTask == null) {
+                watchTask = executor.scheduleWithFixedDelay(this::checkForNewTimes,
+                    intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    /**
+     * Look for new times of the watched requests and fetch them.
+     */
+    private void checkForNewTimes() {
+        if (disposed || !dataSource.isPolling()) {
+            return;
+        }
+        List<Watch> toCheck;
+        synchronized (this) {
+            toCheck = new ArrayList<>(watches.values());
+        }
+        boolean fetched = false;
+        for (Watch w : toCheck) {
+            try {
+                String dirUrl = w.src.replace("imagedata", "imagedir");
+                AddeDirectoryCache.invalidate(dirUrl);
+                AreaDirectoryList list = AddeDirectoryCache.getDirectoryList(dirUrl);
+                DateTime latest = null;
+                for (Object o : list.getDirs()) {
+                    DateTime t = new DateTime(((AreaDirectory)o).getNominalTime());
+                    if ((latest == null) || (t.compareTo(latest) > 0)) {
+                        latest = t;
+                    }
+                }
+                if ((latest == null) || ((w.newest != null) && (latest.compareTo(w.newest) <= 0))) {
+                    continue;
+                }
+                logger.debug("new time {} for {}", latest, w.src);
+                if (!isStored(w.src, latest)) {
+                    SingleBandedImage image = AddeImageParameterDataSource.readAreaImage(w.src, dataSource.getName());
+                    put(w.src, latest, image);
+                }
+                synchronized (this) {
+                    w.newest = latest;
+                }
+                fetched = true;
+            } catch (Exception e) {
+                logger.debug("could not check for new times of {}", w.src, e);
+            }
+        }
+        if (fetched && !disposed) {
+            logger.debug("prefetched new times, reloading {}", dataSource);
+            dataSource.reloadData();
+        }
+    }
+
+    /**
+     * Stop watching and drop the prefetched images.
+     */
+    public void dispose() {
+        disposed = true;
+        synchronized (this) {
+            if (watchTask != null) {
+                watchTask.cancel(false);
+                watchTask = null;
+            }
+            watches.clear();
+        }
+        synchronized (STORE_MUTEX) {
+            for (Iterator<Held> it = store.values().iterator(); it.hasNext(); ) {
+                Held held = it.next();
+                if (held.owner == this) {
+                    storeBytes -= held.bytes;
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Get a description of the prefetcher's state.
+     *
+     * @return Statistics.
+     */
+    public String getStats() {
+        int mine = 0;
+        int all;
+        long bytes;
+        synchronized (STORE_MUTEX) {
+            for (Held held : store.values()) {
+                if (held.owner == this) {
+                    mine++;
+                }
+            }
+            all = store.size();
+            bytes = storeBytes;
+        }
+        synchronized (this) {
+            return "prefetch: " + mine + " of " + all + " images, " + (bytes / 1048576) + " MB shared, watching " + watches.size();
+        }
+    }
+
+    /** An image in the store, who fetched it and its estimated size. */
+    private static class Held {
+        final AddeImagePrefetcher owner;
+        final SingleBandedImage image;
+        final long bytes;
+
+        Held(AddeImagePrefetcher owner, SingleBandedImage image, long bytes) {
+            this.owner = owner;
+            this.image = image;
+            this.bytes = bytes;
+        }
+    }
+
+    /** A relative request watched for new times. */
+    private static class Watch {
+        /** Request for the newest position. */
+        final String src;
+
+        /** Newest time seen. */
+        DateTime newest;
+
+        Watch(String src) {
+            this.src = src;
+        }
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ * This file is part of McIDAS-V
+ *
+ * Copyright 2007-2025
+ * Space Science and Engineering Center (SSEC)
+ * University of Wisconsin - Madison
+ * 1225 W. Dayton Street, Madison, WI 53706, USA
+ * https://www.ssec.wisc.edu/mcidas/
+ *
+ * All Rights Reserved
+ *
+ * McIDAS-V is built on Unidata's IDV and SSEC's VisAD libraries, and
+ * some McIDAS-V source code is based on IDV and VisAD source code.
+ *
+ * McIDAS-V is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * McIDAS-V is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/.
+ */
+package edu.wisc.ssec.mcidasv.data.adde;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import visad.Data;
+import visad.meteorology.ImageSequence;
+
+/**
+ * Coarse-to-fine loading of large ADDE images for an
+ * {@link AddeImageParameterDataSource}.
+ *
+ * <p>When a request covers at least {@value #DEFAULT_MIN_PIXELS} pixels,
+ * or as set by {@link #PROP_MIN_PIXELS}, the data source first reads it
+ * blown down by {@value #DEFAULT_FACTOR} more, or as set by
+ * {@link #PROP_FACTOR}, with the size reduced to match. That image covers the same area and is
+ * displayed right away. The full resolution image is read in the
+ * background. When it arrives it replaces the coarse one in the data
+ * source's cache, and the data source tells its displays the data changed,
+ * so they pick it up in place. While a full image is being read, asking
+ * for it again gets the coarse image rather than another read.</p>
+ *
+ * <p>Every image that was ever coarse is remembered, weakly, so it and any
+ * sequence holding it are never kept in the data source's data cache, even
+ * after its refine has finished or failed. Change notices from frames
+ * refined close together are combined into one.</p>
+ */
+public class AddeImageRefiner {
+
+    private static final Logger logger = LoggerFactory.getLogger(AddeImageRefiner.class);
+
+    /** Property to turn coarse-to-fine loading on. */
+    public static final String PROP_ENABLED = "mcidasv.adde.progressive.enabled";
+
+    /** Property for the extra blow-down of the coarse image. */
+    public static final String PROP_FACTOR = "mcidasv.adde.progressive.factor";
+
+    /** Property for the smallest request, in pixels, that is loaded coarse first. */
+    public static final String PROP_MIN_PIXELS = "mcidasv.adde.progressive.minpixels";
+
+    /** Default for {@link #PROP_FACTOR}. */
+    public static final int DEFAULT_FACTOR = 4;
+
+    /** Default for {@link #PROP_MIN_PIXELS}. */
+    public static final int DEFAULT_MIN_PIXELS = 4000000;
+
+    /** Milliseconds to wait for more refined frames before notifying. */
+    private static final long NOTIFY_DELAY = 500;
+
+    /** Shared by all refiners; the work is mostly waiting on servers. */
+    private static final ScheduledExecutorService executor =
+        Executors.newScheduledThreadPool(2, r -> {
+            Thread t = new Thread(r, "ADDE image refine");
+            t.setDaemon(true);
+            return t;
+        });
+
+    private final AddeImageParameterDataSource dataSource;
+
+    private final int factor;
+
+    private final long minPixels;
+
+    /** Every coarse image handed out that is still reachable. */
+    private final WeakIdentitySet coarse = new WeakIdentitySet();
+
+    /** Full resolution requests still being read. */
+    private final Set<String> refining = ConcurrentHashMap.newKeySet();
+
+    private final AtomicBoolean notifyPending = new AtomicBoolean(false);
+
+    private volatile boolean disposed = false;
+
+    /**
+     * Create a refiner for a data source.
+     *
+     * @param dataSource Data source the images are for.
+     * @param factor Extra blow-down of the coarse image.
+     * @param minPixels Smallest request that is loaded coarse first.
+     */
+    public AddeImageRefiner(AddeImageParameterDataSource dataSource, int factor, int minPixels) {
+        this.dataSource = dataSource;
+        this.factor = Math.max(2, factor);
+        this.minPixels = Math.max(0, minPixels);
+    }
+
+    /**
+     * Make the coarse version of a request: the same area and placement,
+     * blown down by the factor more and sized to match.
+     *
+     * @param src ADDE image request with its SIZE and MAG set.
+     *
+     * @return The coarse request, or {@code null} if {@code src} is too
+     * small, is blown up, or has a size or magnification that can't be
+     * read.
+     */
+    public String getCoarseSource(String src) {
+        try {
+            String[] size = AddeImageParameterDataSource.getKey(src, "SIZE").trim().split("\\s+");
+            String[] mag = AddeImageParameterDataSource.getKey(src, "MAG").trim().split("\\s+");
+            if ((size.length < 2) || (mag.length < 1) || mag[0].isEmpty()) {
+                return null;
+            }
+            int lines = Integer.parseInt(size[0]);
+            int elems = Integer.parseInt(size[1]);
+            int lineMag = Integer.parseInt(mag[0]);
+            int elemMag = (mag.length > 1) ? Integer.parseInt(mag[1]) : lineMag;
+            if (((long)lines * elems < minPixels) || (lineMag > 1) || (elemMag > 1)) {
+                return null;
+            }
+            lineMag = -Math.abs(lineMag) * factor;
+            elemMag = -Math.abs(elemMag) * factor;
+            // the four argument replaceKey leaves SPAC alone
+            String coarseSrc = AddeImageParameterDataSource.replaceKey(src, "SIZE", "SIZE",
+                Math.max(1, lines / factor) + " " + Math.max(1, elems / factor));
+            return AddeImageParameterDataSource.replaceKey(coarseSrc, "MAG", "MAG", lineMag + " " + elemMag);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Is the full resolution image for a request still being read.
+     *
+     * @param src Full resolution ADDE image request.
+     *
+     * @return {@code true} if a refine for {@code src} has not finished.
+     */
+    public boolean isRefining(String src) {
+        return refining.contains(src);
+    }
+
+    /**
+     * Read the full resolution version of a coarse image in the background.
+     * Nothing more is read if that request is already being refined.
+     *
+     * @param src Full resolution ADDE image request.
+     * @param coarseImage Image being displayed for now.
+     * @param fetchFull Reads the full image and puts it where the data
+     * source will find it.
+     */
+    public void refine(String src, Data coarseImage, Callable<?> fetchFull) {
+        synchronized (coarse) {
+            coarse.add(coarseImage);
+        }
+        if (!refining.add(src)) {
+            return;
+        }
+        executor.execute(() -> {
+            boolean refined = false;
+            try {
+                if (!disposed) {
+                    fetchFull.call();
+                    refined = true;
+                }
+            } catch (Exception e) {
+                logger.warn("could not refine image, keeping the coarse one", e);
+            } finally {
+                // the full image is in the cache by now, or the read failed
+                refining.remove(src);
+            }
+            if (refined) {
+                scheduleNotify();
+            }
+        });
+    }
+
+    /**
+     * Tell the data source's displays once, shortly after the last of a
+     * group of frames is refined.
+     */
+    private void scheduleNotify() {
+        if (!notifyPending.compareAndSet(false, true)) {
+            return;
+        }
+        executor.schedule(() -> {
+            notifyPending.set(false);
+            if (!disposed) {
+                logger.trace("refined images ready, notifying displays");
+                dataSource.notifyDataChange();
+            }
+        }, NOTIFY_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Is some data a coarse image, or a sequence holding one.
+     *
+     * @param data Data to check.
+     *
+     * @return {@code true} if it should not be cached.
+     */
+    public boolean isCoarse(Data data) {
+        synchronized (coarse) {
+            if (coarse.isEmpty()) {
+                return false;
+            }
+            if (coarse.contains(data)) {
+                return true;
+            }
+        }
+        if (data instanceof ImageSequence) {
+            try {
+                ImageSequence sequence = (ImageSequence)data;
+                for (int i = 0; i < sequence.getImageCount(); i++) {
+                    Data image = sequence.getImage(i);
+                    synchronized (coarse) {
+                        if (coarse.contains(image)) {
+                            return true;
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                logger.trace("could not check sequence", e);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stop refining; images already being read are dropped.
+     */
+    public void dispose() {
+        disposed = true;
+        synchronized (coarse) {
+            coarse.clear();
+        }
+    }
+
+    /**
+     * Set of objects compared by identity that doesn't keep them alive.
+     * Callers synchronize on it.
+     */
+    private static final class WeakIdentitySet {
+
+        private final ReferenceQueue<Data> queue = new ReferenceQueue<>();
+
+        private final Set<IdentityRef> refs = new HashSet<>();
+
+        void add(Data data) {
+            expunge();
+            refs.add(new IdentityRef(data, queue));
+        }
+
+        boolean contains(Data data) {
+            expunge();
+            return refs.contains(new IdentityRef(data, null));
+        }
+
+        boolean isEmpty() {
+            expunge();
+            return refs.isEmpty();
+        }
+
+        void clear() {
+            refs.clear();
+            while (queue.poll() != null) {
+                // drain
+            }
+        }
+
+        private void expunge() {
+            Reference<? extends Data> ref;
+            while ((ref = queue.poll()) != null) {
+                refs.remove(ref);
+            }
+        }
+    }
+
+    /**
+     * Weak reference that hashes and compares by the identity of its
+     * referent.
+     */
+    private static final class IdentityRef extends WeakReference<Data> {
+
+        private final int hash;
+
+        IdentityRef(Data data, ReferenceQueue<Data> queue) {
+            super(data, queue);
+            hash = System.identityHashCode(data);
+        }
+
+        @Override public int hashCode() {
+            return hash;
+        }
+
+        @Override public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof IdentityRef)) {
+                return false;
+            }
+            Data data = get();
+            return (data != null) && (data == ((IdentityRef)obj).get());
+        }
+    }
+}
@@ -29,8 +29,11 @@
 package edu.wisc.ssec.mcidasv.data.hydra;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -43,7 +46,6 @@ import edu.wisc.ssec.mcidasv.data.QualityFlag;
 import ucar.ma2.Array;
 import ucar.ma2.DataType;
 import ucar.ma2.Index;
-import ucar.ma2.IndexIterator;
 import ucar.ma2.Range;
 import ucar.nc2.Attribute;
 import ucar.nc2.Dimension;
@@ -66,6 +68,12 @@ public class GranuleAggregation implements MultiDimensionReader {
  
 	private static final Logger logger =
 		LoggerFactory.getLogger(GranuleAggregation.class);
+
+	// how long, in ms, a packed quality flag read is reused by later flag reads
+	private static final long PACKED_READ_TTL = 30000L;
+	
+	// packed quality flag reads kept around at any one time
+	private static final int PACKED_READ_CACHE_SIZE = 4;
 	
 	// this structure holds the NcML readers that get passed in 
    List<NetcdfFile> nclist = new ArrayList<>();
@@ -92,6 +100,15 @@ public class GranuleAggregation implements MultiDimensionReader {
    // it maps the broken out variable name back to the original packed variable name
    Map<String, QualityFlag> qfMap = null;
    
+   // recent reads of packed quality flag variables, keyed by name and subset,
+   // so each broken out flag doesn't go back to the granules for the same bytes
+   private final Map<String, PackedRead> packedReadCache =
+	   new LinkedHashMap<String, PackedRead>(8, 0.75f, true) {
+		   @Override protected boolean removeEldestEntry(Map.Entry<String, PackedRead> eldest) {
+			   return size() > PACKED_READ_CACHE_SIZE;
+		   }
+	   };
+   
    // For those variables which are assembled from other variables based on LUTs
    Map<String, float[]> lutMap = null;
 
@@ -103,7 +120,6 @@ public class GranuleAggregation implements MultiDimensionReader {
    private String inTrackGeoDimensionName = null;
    private String crossTrackDimensionName = null;
    private Set<String> products;
-   private String origName = "";
    // assume we are working with VIIRS, will toggle if not
    private boolean isVIIRS = true;
 
@@ -159,7 +175,6 @@ public class GranuleAggregation implements MultiDimensionReader {
 	   // we pull data from the "mapped" variable name, a packed byte
 	   if (qfMap != null) {
 		   if (qfMap.containsKey(array_name)) {
-			   origName = array_name;
 			   QualityFlag qf = qfMap.get(array_name);
 			   String mappedName = qf.getPackedName();
 			   logger.debug("Key: " + array_name + " mapped to: " + mappedName);
@@ -175,7 +190,6 @@ public class GranuleAggregation implements MultiDimensionReader {
 
 	   if (lutMap != null) {
 		   if (lutMap.containsKey(array_name)) {
-			   origName = array_name;
 			   String mappedName = array_name.substring(0, array_name.length() - 3);
 			   logger.debug("Key: " + array_name + " mapped to: " + mappedName);
 			   return mappedName;
@@ -244,6 +258,9 @@ public class GranuleAggregation implements MultiDimensionReader {
    }
 
    public void close() throws Exception {
+	   synchronized (this) {
+		   packedReadCache.clear();
+	   }
 	   // close each NetCDF file
 	   for (NetcdfFile n : nclist) {
 		   n.close();
@@ -595,9 +612,88 @@ public class GranuleAggregation implements MultiDimensionReader {
    
    private synchronized Object readArray(String array_name, int[] start, int[] count, int[] stride) throws Exception {
 	   
+	   // broken out quality flags are decoded from a read of their packed variable
+	   if ((qfMap != null) && (qfMap.containsKey(array_name))) {
+		   return readQualityFlags(Collections.singletonList(array_name), start, count, stride).get(array_name);
+	   }
+	   
 	   String mapName = array_name;
-	   array_name = mapNameIfQualityFlag(array_name);
 	   array_name = mapNameIfLUTVar(array_name);
+	   return readGranules(mapName, array_name, start, count, stride, varToRangeProcessor.get(array_name));
+   }
+   
+   /**
+    * Decode several broken out quality flags over the same subset. Flags
+    * sharing a packed variable are all extracted from a single read of it,
+    * and that read is kept briefly so flags requested one at a time (e.g. by
+    * separate adapters) don't read the same bytes again.
+    * 
+    * @param flagNames names of the broken out flags, keys of the qfMap
+    * @param start start index for each dimension
+    * @param count count for each dimension
+    * @param stride stride for each dimension
+    * @return decoded values for each requested flag, keyed by flag name
+    * @throws Exception if a name isn't a known quality flag, or the read fails
+    */
+   
+   public synchronized Map<String, float[]> readQualityFlags(List<String> flagNames, int[] start, int[] count, int[] stride) throws Exception {
+	   
+	   // group requested flags by the packed variable they come from
+	   Map<String, List<QualityFlag>> packedToFlags = new LinkedHashMap<>();
+	   Map<String, List<String>> packedToNames = new LinkedHashMap<>();
+	   for (String flagName : flagNames) {
+		   QualityFlag qf = (qfMap != null) ? qfMap.get(flagName) : null;
+		   if (qf == null) {
+			   throw new IllegalArgumentException("Not a quality flag: " + flagName);
+		   }
+		   String packedName = qf.getPackedName();
+		   packedToFlags.computeIfAbsent(packedName, k -> new ArrayList<>()).add(qf);
+		   packedToNames.computeIfAbsent(packedName, k -> new ArrayList<>()).add(flagName);
+	   }
+	   
+	   Map<String, float[]> flagValues = new HashMap<>();
+	   for (Map.Entry<String, List<QualityFlag>> entry : packedToFlags.entrySet()) {
+		   String packedName = entry.getKey();
+		   byte[] packed = readPackedArray(packedName, start, count, stride);
+		   float[][] decoded = RangeProcessor.processRangeQualityFlags(packed, entry.getValue());
+		   List<String> names = packedToNames.get(packedName);
+		   for (int i = 0; i < decoded.length; i++) {
+			   flagValues.put(names.get(i), decoded[i]);
+		   }
+	   }
+	   return flagValues;
+   }
+   
+   /* raw bytes of a packed quality flag variable, reusing a recent identical read */
+   private byte[] readPackedArray(String packedName, int[] start, int[] count, int[] stride) throws Exception {
+	   
+	   long now = System.currentTimeMillis();
+	   Iterator<PackedRead> iter = packedReadCache.values().iterator();
+	   while (iter.hasNext()) {
+		   if ((now - iter.next().time) > PACKED_READ_TTL) {
+			   iter.remove();
+		   }
+	   }
+	   
+	   String key = packedName + Arrays.toString(start) + Arrays.toString(count) + Arrays.toString(stride);
+	   PackedRead cached = packedReadCache.get(key);
+	   if (cached != null) {
+		   logger.trace("Reusing packed read: " + key);
+		   return cached.values;
+	   }
+	   
+	   // no range processing, we want the bytes as stored
+	   float[] raw = (float[]) readGranules(packedName, packedName, start, count, stride, null);
+	   byte[] packed = new byte[raw.length];
+	   for (int i = 0; i < raw.length; i++) {
+		   packed[i] = (byte) ((int) raw[i]);
+	   }
+	   packedReadCache.put(key, new PackedRead(packed, now));
+	   return packed;
+   }
+   
+   private Object readGranules(String mapName, String array_name, int[] start, int[] count, int[] stride, RangeProcessor rngProcessor) throws Exception {
+	   
 	   // how many dimensions are we dealing with
 	   int dimensionCount = start.length;
 	   
@@ -767,41 +863,11 @@ public class GranuleAggregation implements MultiDimensionReader {
 				   }
 				   rangeListCount++;
 				   
-				   // If there were chunks of fill data to remove...
+				   // If there were chunks of fill data to remove, read the subset
+				   // straight from the good chunks
 				   List<Range> al = granCutRanges.get(Integer.valueOf(granuleIdx));
 				   if (! al.isEmpty()) {
-					   List<Variable> varChunks = new ArrayList<>();
-					   for (int rangeCount = 0; rangeCount < al.size(); rangeCount+=2) {
-						   List<Range> rl = new ArrayList<>();
-						   rl.add(al.get(rangeCount));
-						   rl.add(al.get(rangeCount + 1));
-						   varChunks.add(var.section(rl));
-					   }
-
-					   int [] newShape = var.getShape();
-					   int cutScans = granCutScans.get(granuleIdx);
-					   newShape[0] = newShape[0] - cutScans;
-					   logger.trace("New Shape: " + newShape[0] + ", " + newShape[1]);
-					   Array single = Array.factory(var.getDataType(), newShape);
-
-					   // now read variable chunk data into single contiguous array
-					   int idx = 0;
-					   for (Variable v : varChunks) {
-						   Array data = v.read();
-						   int [] tmpShape = v.getShape();
-						   for (int tIdx = 0; tIdx < tmpShape.length; tIdx++) {
-							   logger.trace("Shape[" + tIdx + "]: " + tmpShape[tIdx]);
-						   }
-						   IndexIterator ii = data.getIndexIterator();
-						   while (ii.hasNext()) {
-							   single.setFloat(idx, ii.getFloatNext());
-							   idx++;
-						   }
-					   }
-
-					   // finally, apply subset ranges
-					   logger.debug("Size of cut src array: " + single.getSize());
-					   Array subarray = single.section(rangeList);
+					   Array subarray = readCutGranule(var, al, rangeList);
 					   totalLength += subarray.getSize();
 					   arrayList.add(subarray);
 					   logger.debug("Size of cut sub array: " + subarray.getSize());
@@ -824,7 +890,6 @@ public class GranuleAggregation implements MultiDimensionReader {
 	   // last, concatenate the individual NetCDF arrays pulled out 
 
 	   DataType arrayType = getArrayType(array_name);
-	   RangeProcessor rngProcessor = varToRangeProcessor.get(array_name);
 
 	   logger.debug("Creating aggregated array, totalLength: " + totalLength);
 	   
@@ -884,6 +949,65 @@ public class GranuleAggregation implements MultiDimensionReader {
 	   return finalArray;
    }
    
+   /**
+    * Read a subset of a granule that has fill scans cut out. The subset ranges
+    * are in "cut" coordinates, i.e. rows numbered as if the good chunks were
+    * contiguous. Each chunk is intersected with the requested rows and read
+    * directly, so the granule is read once and no intermediate cut array is
+    * built.
+    * 
+    * @param var variable to read
+    * @param cutRanges row and column Range pairs for each good chunk
+    * @param rangeList requested in-track and cross-track ranges, cut coordinates
+    * @return the subset, shaped by {@code rangeList}
+    * @throws Exception if a read fails
+    */
+   
+   private Array readCutGranule(Variable var, List<Range> cutRanges, List<Range> rangeList) throws Exception {
+	   
+	   Range rowRange = rangeList.get(0);
+	   Range colRange = rangeList.get(1);
+	   int rowFirst = rowRange.first();
+	   int rowStride = rowRange.stride();
+	   int numRows = rowRange.length();
+	   int numCols = colRange.length();
+	   
+	   // rows past the end of the good chunks are left zero, as before
+	   Array subarray = Array.factory(var.getDataType(), new int[] { numRows, numCols });
+	   
+	   // cut-space row where the current chunk begins, and next output row
+	   int cutOffset = 0;
+	   int destRow = 0;
+	   for (int rangeCount = 0; rangeCount < cutRanges.size(); rangeCount+=2) {
+		   Range chunkRows = cutRanges.get(rangeCount);
+		   Range chunkCols = cutRanges.get(rangeCount + 1);
+		   int chunkEnd = cutOffset + chunkRows.length();
+		   int row = rowFirst + destRow * rowStride;
+		   if ((destRow < numRows) && (row < chunkEnd)) {
+			   // last requested row index falling inside this chunk
+			   int lastRow = Math.min(numRows - 1, (chunkEnd - 1 - rowFirst) / rowStride);
+			   int rowCount = lastRow - destRow + 1;
+			   
+			   int srcRowFirst = chunkRows.first() + (row - cutOffset) * chunkRows.stride();
+			   int srcRowStride = rowStride * chunkRows.stride();
+			   int srcColFirst = chunkCols.first() + colRange.first() * chunkCols.stride();
+			   int srcColStride = colRange.stride() * chunkCols.stride();
+			   
+			   List<Range> rl = new ArrayList<>();
+			   rl.add(new Range(srcRowFirst, srcRowFirst + (rowCount - 1) * srcRowStride, srcRowStride));
+			   rl.add(new Range(srcColFirst, srcColFirst + (numCols - 1) * srcColStride, srcColStride));
+			   logger.trace("Cut chunk read: " + rl.get(0) + ", " + rl.get(1));
+			   
+			   Array data = var.read(rl);
+			   Array.arraycopy(data, 0, subarray, destRow * numCols, (int) data.getSize());
+			   destRow += rowCount;
+		   }
+		   cutOffset = chunkEnd;
+	   }
+	   
+	   return subarray;
+   }
+   
    /**
     * @param qfMap the qfMap to set
     */
@@ -928,13 +1052,8 @@ public class GranuleAggregation implements MultiDimensionReader {
 				   outArray = rngProcessor.processRange((short[]) values, null);
 			   }
 		   } else if (arrayType == DataType.BYTE) {
-			   // if variable is a bit-field quality flag, apply mask
-			   if ((qfMap != null) && (qfMap.containsKey(origName))) {
-				   QualityFlag qf = qfMap.get(origName);
-				   outArray = rngProcessor.processRangeQualityFlag((byte[]) values, null, qf);
-			   } else {
-				   outArray = rngProcessor.processRange((byte[]) values, null);
-			   }
+			   // bit-field quality flags never get here, see readQualityFlags
+			   outArray = rngProcessor.processRange((byte[]) values, null);
 		   } else if (arrayType == DataType.FLOAT) {
 			   outArray = rngProcessor.processRange((float[]) values, null);
 		   } else if (arrayType == DataType.DOUBLE) {
@@ -959,4 +1078,14 @@ public class GranuleAggregation implements MultiDimensionReader {
 	   varToRangeProcessor.put(arrayName, rangeProcessor);
    }
    
+   private static class PackedRead {
+	   final byte[] values;
+	   final long time;
+	   
+	   PackedRead(byte[] values, long time) {
+		   this.values = values;
+		   this.time = time;
+	   }
+   }
+   
 }
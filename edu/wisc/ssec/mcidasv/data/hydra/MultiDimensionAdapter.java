@@ -143,7 +143,7 @@ public abstract class MultiDimensionAdapter {
      return makeFlatField(domainSet, subset);
    }
 
-   private FlatField makeFlatField(Set domainSet, float[][] range) throws VisADException, RemoteException {
+   FlatField makeFlatField(Set domainSet, float[][] range) throws VisADException, RemoteException {
      FlatField f_field = makeFlatField(domainSet);
      f_field.setSamples(range, false);
      return f_field;
@@ -185,6 +185,34 @@ public abstract class MultiDimensionAdapter {
      return f_field;
    }
 
+   /**
+    * Read and range process a subset as floats, without building a domain.
+    *
+    * @param subset Subset to read.
+    * @return Processed range values, or {@code null} for unsupported array types.
+    * @throws Exception if the read fails.
+    */
+   float[] readFloatRange(Map<String, double[]> subset) throws Exception {
+     Object range = readArray(subset);
+
+     if (range instanceof float[]) {
+       return processRange((float[]) range, subset);
+     }
+     else if (range instanceof double[]) {
+       double[] dbl_range = processRange((double[]) range, subset);
+       float[] float_range = new float[dbl_range.length];
+       for (int i=0; i<dbl_range.length; i++) float_range[i] = (float) dbl_range[i];
+       return float_range;
+     }
+     else if (range instanceof short[]) {
+       return processRange((short[]) range, subset);
+     }
+     else if (range instanceof byte[]) {
+       return processRange((byte[]) range, subset);
+     }
+     return null;
+   }
+
    public RangeProcessor getRangeProcessor() {
      return rangeProcessor;
    }
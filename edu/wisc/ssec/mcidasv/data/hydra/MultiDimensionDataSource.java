@@ -428,6 +428,7 @@ public class MultiDimensionDataSource extends HydraDataSource {
 
          properties.put("medianFilter", new String[] {Integer.toString(adapter.getMedianFilterWindowHeight()), Integer.toString(adapter.getMedianFilterWindowWidth())});
          properties.put("setBelowSfcMissing", new String[] {"true"});
+         properties.put(ProfileAlongTrack.LOD_MAX_TRACK_SAMPLES, new String[] {Integer.toString(ProfileAlongTrack.DEFAULT_LOD_MAX_TRACK_SAMPLES), "mean"});
          propsArray[0] = properties;
 
          ArrayAdapter[] adapter_s = new ArrayAdapter[3];
@@ -623,6 +624,7 @@ public class MultiDimensionDataSource extends HydraDataSource {
 
          properties.put("medianFilter", new String[] {Integer.toString(adapter.getMedianFilterWindowHeight()), Integer.toString(adapter.getMedianFilterWindowWidth())});
          properties.put("setBelowSfcMissing", new String[] {"true"});
+         properties.put(ProfileAlongTrack.LOD_MAX_TRACK_SAMPLES, new String[] {Integer.toString(ProfileAlongTrack.DEFAULT_LOD_MAX_TRACK_SAMPLES), "mean"});
          propsArray[0] = properties;
          hasTrackPreview = true;
        }
@@ -1077,7 +1079,23 @@ public class MultiDimensionDataSource extends HydraDataSource {
             }
             
             if (subset != null) {
-              data = adapter.getData(subset);
+              String[] lod = (dataChoiceProps != null) ? (String[]) dataChoiceProps.get(ProfileAlongTrack.LOD_MAX_TRACK_SAMPLES) : null;
+              if ((lod != null) && (adapter instanceof ProfileAlongTrack3D)) {
+                int maxTrackSamples = Integer.parseInt(lod[0]);
+                int mode = ProfileAlongTrack.parseLodMode(lod[1]);
+                data = ((ProfileAlongTrack3D) adapter).getLevelOfDetailData(subset, maxTrackSamples, mode);
+                // track preview and surface masking must follow the decimated track
+                subset = ((ProfileAlongTrack3D) adapter).adapter2D.getLevelOfDetailSubset(subset, maxTrackSamples);
+              }
+              else if ((lod != null) && (adapter instanceof ProfileAlongTrack)) {
+                int maxTrackSamples = Integer.parseInt(lod[0]);
+                int mode = ProfileAlongTrack.parseLodMode(lod[1]);
+                data = ((ProfileAlongTrack) adapter).getLevelOfDetailData(subset, maxTrackSamples, mode);
+                subset = ((ProfileAlongTrack) adapter).getLevelOfDetailSubset(subset, maxTrackSamples);
+              }
+              else {
+                data = adapter.getData(subset);
+              }
               data = applyProperties(data, dataChoiceProps, subset);
             }
         } catch (Exception e) {
@@ -48,6 +48,7 @@ import visad.QuickSort;
 import visad.FlatField;
 import visad.FieldImpl;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import visad.GriddedSet;
 
@@ -82,6 +83,26 @@ public abstract class ProfileAlongTrack extends MultiDimensionAdapter {
       public static String fill_value_name = "fill_value_name";
       public static String valid_range = "valid_range";
       public static String ancillary_file_name = "ancillary_file";
+
+      /**
+       * Data choice property enabling level-of-detail curtains. Value is
+       * {@code String[] {maxTrackSamples, mode}} where mode is one of
+       * {@code min}, {@code max} or {@code mean}.
+       */
+      public static final String LOD_MAX_TRACK_SAMPLES = "lodMaxTrackSamples";
+
+      public static final int LOD_MIN = 0;
+      public static final int LOD_MAX = 1;
+      public static final int LOD_MEAN = 2;
+
+      /** Default along-track sample budget for a level-of-detail curtain. */
+      public static final int DEFAULT_LOD_MAX_TRACK_SAMPLES = 4096;
+
+      /** Approximate number of values read per chunk while decimating. */
+      private static final int LOD_CHUNK_VALUES = 4 * 1024 * 1024;
+
+      /** Number of decimated curtains kept, so panning back and forth is cheap. */
+      private static final int LOD_CACHE_SIZE = 4;
       static String product_name = "product_name";
       
       String[] rangeName_s  = null;
@@ -109,6 +130,12 @@ public abstract class ProfileAlongTrack extends MultiDimensionAdapter {
       int medianFilterTrackWidth = 10;
       int medianFilterVertWidth = 10;
 
+      private final Map<String, float[]> lodCache = new LinkedHashMap<String, float[]>(LOD_CACHE_SIZE, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<String, float[]> eldest) {
+          return size() > LOD_CACHE_SIZE;
+        }
+      };
+
       public static Map<String, double[]> getEmptySubset() {
         Map<String, double[]> subset = new HashMap<>();
         subset.put(trackDim_name, new double[3]);
@@ -447,6 +474,171 @@ public abstract class ProfileAlongTrack extends MultiDimensionAdapter {
         return getSubsetFromLonLatRect(getDefaultSubset(), minLat, maxLat, minLon, maxLon, xStride, yStride, zStride);
       }
 
+      /**
+       * Parse a level-of-detail mode name.
+       *
+       * @param mode {@code min}, {@code max} or {@code mean}.
+       * @return One of {@link #LOD_MIN}, {@link #LOD_MAX} or {@link #LOD_MEAN}.
+       * Unknown names map to {@link #LOD_MEAN}.
+       */
+      public static int parseLodMode(String mode) {
+        if ("min".equalsIgnoreCase(mode)) return LOD_MIN;
+        if ("max".equalsIgnoreCase(mode)) return LOD_MAX;
+        return LOD_MEAN;
+      }
+
+      /**
+       * Subset whose along-track stride is raised so the curtain has at most
+       * {@code maxTrackSamples} profiles. Each resulting sample stands for a
+       * bin of profiles which {@link #getDecimatedRange} reduces, and is
+       * placed at the profile in the middle of its bin. A trailing partial
+       * bin gets its own sample if its middle profile falls inside the
+       * window, otherwise its profiles go into the bin before it.
+       *
+       * @param subset Requested subset; its track stride is kept as the
+       * sampling density inside each bin.
+       * @param maxTrackSamples Along-track sample budget.
+       * @return {@code subset} itself if it already fits the budget (full
+       * resolution), otherwise a new decimated subset.
+       */
+      public Map<String, double[]> getLevelOfDetailSubset(Map<String, double[]> subset, int maxTrackSamples) {
+        double[] track_coords = subset.get(trackDim_name);
+        int first = (int) track_coords[0];
+        int last = (int) track_coords[1];
+        int stride = Math.max(1, (int) track_coords[2]);
+        int numSamples = ((last - first) / stride) + 1;
+        if (maxTrackSamples <= 0 || numSamples <= maxTrackSamples) {
+          return subset;
+        }
+
+        int binLen = stride * ((numSamples + maxTrackSamples - 1) / maxTrackSamples);
+        int span = last - first + 1;
+        int numBins = span / binLen;
+        int center = (binLen - 1) / 2;
+        if ((numBins == 0) || (span - numBins * binLen > center)) {
+          numBins++;
+        }
+        int firstCenter = first + Math.min(center, span - 1);
+
+        Map<String, double[]> lodSubset = new HashMap<>(subset);
+        lodSubset.put(trackDim_name, new double[] {firstCenter, firstCenter + (double) (numBins - 1) * binLen, binLen});
+        return lodSubset;
+      }
+
+      /**
+       * Read the range of a decimated subset. Profiles are read at the
+       * requested track stride in chunks of whole bins, so memory stays
+       * proportional to the curtain size rather than the orbit length.
+       * Bin {@code n} holds the profiles from {@code first + n * binLen},
+       * and the last bin runs to the end of the requested window.
+       *
+       * @param subset Requested subset, as passed to
+       * {@link #getLevelOfDetailSubset}.
+       * @param lodSubset Subset from {@link #getLevelOfDetailSubset}.
+       * @param mode {@link #LOD_MIN}, {@link #LOD_MAX} or {@link #LOD_MEAN}.
+       * @return Range values laid out like {@link #getData} for {@code lodSubset}.
+       * @throws Exception if a read fails.
+       */
+      public float[] getDecimatedRange(Map<String, double[]> subset, Map<String, double[]> lodSubset, int mode) throws Exception {
+        double[] req_coords = subset.get(trackDim_name);
+        double[] track_coords = lodSubset.get(trackDim_name);
+        double[] vert_coords = lodSubset.get(vertDim_name);
+        int first = (int) req_coords[0];
+        int last = (int) req_coords[1];
+        int sampleStride = Math.max(1, (int) req_coords[2]);
+        int binLen = (int) track_coords[2];
+        int numBins = (int) ((track_coords[1] - track_coords[0]) / track_coords[2]) + 1;
+        int vertLen = (int) ((vert_coords[1] - vert_coords[0]) / vert_coords[2]) + 1;
+        int samplesPerBin = binLen / sampleStride;
+        // samples of the last bin, which may be short or hold a remainder
+        int lastBinSamples = ((last - (first + (numBins - 1) * binLen)) / sampleStride) + 1;
+
+        String key = first+":"+last+":"+binLen+":"+numBins+":"+sampleStride+":"+vert_coords[0]+":"+vert_coords[1]+":"+vert_coords[2]+":"+mode;
+        synchronized (lodCache) {
+          float[] cached = lodCache.get(key);
+          if (cached != null) {
+            return cached;
+          }
+        }
+
+        float[] decimated = new float[numBins * vertLen];
+        boolean trackOuter = (track_idx < vert_idx);
+        int binsPerChunk = Math.max(1, LOD_CHUNK_VALUES / (vertLen * samplesPerBin));
+
+        Map<String, double[]> chunkSubset = new HashMap<>(lodSubset);
+        for (int bin = 0; bin < numBins; bin += binsPerChunk) {
+          int chunkBins = Math.min(binsPerChunk, numBins - bin);
+          boolean hasLastBin = (bin + chunkBins == numBins);
+          int chunkSamples = (chunkBins - 1) * samplesPerBin + (hasLastBin ? lastBinSamples : samplesPerBin);
+          double chunkFirst = first + (double) bin * binLen;
+          chunkSubset.put(trackDim_name, new double[] {chunkFirst, chunkFirst + (double) (chunkSamples - 1) * sampleStride, sampleStride});
+
+          float[] chunk = readFloatRange(chunkSubset);
+          if (chunk == null) {
+            throw new VisADException("ProfileAlongTrack: unsupported array type for level-of-detail: "+arrayType);
+          }
+
+          for (int b = 0; b < chunkBins; b++) {
+            int binStart = b * samplesPerBin;
+            int binEnd = (hasLastBin && (b == chunkBins - 1)) ? chunkSamples : (b + 1) * samplesPerBin;
+            for (int v = 0; v < vertLen; v++) {
+              float min = Float.NaN;
+              float max = Float.NaN;
+              double sum = 0.0;
+              int cnt = 0;
+              for (int t = binStart; t < binEnd; t++) {
+                float val = trackOuter ? chunk[t * vertLen + v] : chunk[v * chunkSamples + t];
+                if (Float.isNaN(val)) continue;
+                if (cnt == 0 || val < min) min = val;
+                if (cnt == 0 || val > max) max = val;
+                sum += val;
+                cnt++;
+              }
+              float reduced;
+              if (cnt == 0) {
+                reduced = Float.NaN;
+              }
+              else if (mode == LOD_MIN) {
+                reduced = min;
+              }
+              else if (mode == LOD_MAX) {
+                reduced = max;
+              }
+              else {
+                reduced = (float) (sum / cnt);
+              }
+              int outBin = bin + b;
+              decimated[trackOuter ? (outBin * vertLen + v) : (v * numBins + outBin)] = reduced;
+            }
+          }
+        }
+
+        synchronized (lodCache) {
+          lodCache.put(key, decimated);
+        }
+        return decimated;
+      }
+
+      /**
+       * Level-of-detail version of {@link #getData}: if the along-track
+       * window has more than {@code maxTrackSamples} profiles, return a
+       * min/max/mean decimated curtain, otherwise read full resolution.
+       *
+       * @param subset Requested subset.
+       * @param maxTrackSamples Along-track sample budget.
+       * @param mode {@link #LOD_MIN}, {@link #LOD_MAX} or {@link #LOD_MEAN}.
+       * @return Curtain for {@code subset}.
+       * @throws Exception if a read fails.
+       */
+      public FlatField getLevelOfDetailData(Map<String, double[]> subset, int maxTrackSamples, int mode) throws Exception {
+        Map<String, double[]> lodSubset = getLevelOfDetailSubset(subset, maxTrackSamples);
+        if (lodSubset == subset) {
+          return getData(subset);
+        }
+        Set domainSet = makeDomain(lodSubset);
+        return makeFlatField(domainSet, new float[][] {getDecimatedRange(subset, lodSubset, mode)});
+      }
+
       public abstract float[] getVertBinAltitude() throws Exception;
       public abstract float[] getTrackTimes() throws Exception;
       public abstract RealType makeVertLocType() throws Exception;
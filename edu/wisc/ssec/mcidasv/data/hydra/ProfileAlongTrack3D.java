@@ -31,6 +31,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 import ucar.ma2.DataType;
+import visad.FlatField;
 import visad.Set;
 import visad.RealTupleType;
 import visad.RealType;
@@ -137,6 +138,19 @@ public class ProfileAlongTrack3D extends MultiDimensionAdapter {
   }
   
 
+  /**
+   * Level-of-detail curtain on the earth located domain, see
+   * {@link ProfileAlongTrack#getLevelOfDetailData}.
+   */
+  public FlatField getLevelOfDetailData(Map<String, double[]> subset, int maxTrackSamples, int mode) throws Exception {
+    Map<String, double[]> lodSubset = adapter2D.getLevelOfDetailSubset(subset, maxTrackSamples);
+    if (lodSubset == subset) {
+      return getData(subset);
+    }
+    Set domainSet = makeDomain(lodSubset);
+    return makeFlatField(domainSet, new float[][] {adapter2D.getDecimatedRange(subset, lodSubset, mode)});
+  }
+
   public Map<String, double[]> getDefaultSubset() {
     return adapter2D.getDefaultSubset();
   }
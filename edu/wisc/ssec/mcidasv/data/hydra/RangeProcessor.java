@@ -28,6 +28,7 @@
 
 package edu.wisc.ssec.mcidasv.data.hydra;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 
@@ -328,75 +329,43 @@ public class RangeProcessor {
         }
 
         float[] newValues = new float[values.length];
+        float[] lut = qf.getLookupTable();
 
-        float val = 0f;
-        int bitOffset = qf.getBitOffset();
-        int divisor = -1;
-
-        // map bit offset to a divisor
-        switch (bitOffset) {
-            case 1:
-                divisor = 2;
-                break;
-            case 2:
-                divisor = 4;
-                break;
-            case 3:
-                divisor = 8;
-                break;
-            case 4:
-                divisor = 16;
-                break;
-            case 5:
-                divisor = 32;
-                break;
-            case 6:
-                divisor = 64;
-                break;
-            case 7:
-                divisor = 128;
-                break;
-            default:
-                divisor = 1;
-                break;
+        for (int k = 0; k < values.length; k++) {
+            newValues[k] = lut[values[k] & 0xFF];
         }
 
-        // now map bit width to a mask
-        int numBits = qf.getNumBits();
-        int mask = -1;
-        switch (numBits) {
-            case 1:
-                mask = (int) 0x00000001;
-                break;
-            case 2:
-                mask = (int) 0x00000003;
-                break;
-            case 3:
-                mask = (int) 0x00000007;
-                break;
-            case 4:
-                mask = (int) 0x0000000F;
-                break;
-            case 5:
-                mask = (int) 0x0000001F;
-                break;
-            case 6:
-                mask = (int) 0x0000003F;
-                break;
-            case 7:
-                mask = (int) 0x0000007F;
-                break;
-            default:
-                mask = (int) 0x00000000;
-                break;
+        return newValues;
+    }
+
+    /**
+     * Extract several quality flags sharing the same packed byte variable in
+     * a single walk over the packed values. Each flag is decoded through its
+     * precomputed {@link QualityFlag#getLookupTable() lookup table}.
+     *
+     * @param values
+     *            Packed byte values. Cannot be {@code null}.
+     * @param flags
+     *            Quality flags to extract. Cannot be {@code null}.
+     *
+     * @return One array of flag values per entry in {@code flags}, in the
+     *         same order.
+     */
+
+    public static float[][] processRangeQualityFlags(byte[] values, List<QualityFlag> flags) {
+
+        int numFlags = flags.size();
+        float[][] luts = new float[numFlags][];
+        float[][] newValues = new float[numFlags][values.length];
+        for (int f = 0; f < numFlags; f++) {
+            luts[f] = flags.get(f).getLookupTable();
         }
 
-        int i = 0;
         for (int k = 0; k < values.length; k++) {
-            val = (float) values[k];
-            i = Util.unsignedByteToInt(values[k]);
-            val = (float) ((i / divisor) & mask);
-            newValues[k] = val;
+            int i = values[k] & 0xFF;
+            for (int f = 0; f < numFlags; f++) {
+                newValues[f][k] = luts[f][i];
+            }
         }
 
         return newValues;
@@ -34,14 +34,18 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
+import edu.wisc.ssec.mcidasv.monitors.cache.CacheMonitor;
+import edu.wisc.ssec.mcidasv.monitors.cache.CacheReport;
 import edu.wisc.ssec.mcidasv.monitors.memory.MemoryMonitor;
+import edu.wisc.ssec.mcidasv.monitors.memory.MemoryPressureHandler;
 import edu.wisc.ssec.mcidasv.monitors.time.TimeMonitor;
 
+import ucar.unidata.data.DataSourceCache;
 import ucar.unidata.util.CacheManager;
 
 public class MonitorManager {
 
-    public enum MonitorType { MEMORY, TIME };
+    public enum MonitorType { MEMORY, TIME, CACHE };
 
     private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(3);
 
@@ -49,9 +53,13 @@ public class MonitorManager {
 
     private final Map<Monitorable, ScheduledFuture<?>> woot = new ConcurrentHashMap<>();
 
+    private final MemoryPressureHandler pressureHandler;
+
     public MonitorManager() {
         monitors.put(MonitorType.MEMORY, new MemoryMonitor(this, 75, 95));
         monitors.put(MonitorType.TIME, new TimeMonitor());
+        monitors.put(MonitorType.CACHE, new CacheMonitor());
+        pressureHandler = new MemoryPressureHandler(scheduler, 75, 95);
     }
 
     public void addListener(final MonitorType type, final Monitoring listener) {
@@ -73,10 +81,35 @@ public class MonitorManager {
         }
     }
 
+    /**
+     * Free memory in graded steps, dropping recomputable cached data first
+     * and clearing all caches only as a last resort.
+     */
+    public void scheduleRelief() {
+        pressureHandler.scheduleRelief();
+    }
+
+    /**
+     * @return The most recent cache and memory attribution report, computed
+     * now if the cache monitor has no listeners.
+     */
+    public CacheReport getCacheReport() {
+        return ((CacheMonitor)monitors.get(MonitorType.CACHE)).getReport();
+    }
+
+    /**
+     * Stop the monitors and remove the memory notification listener.
+     */
+    public void shutdown() {
+        pressureHandler.dispose();
+        scheduler.shutdownNow();
+    }
+
     public void scheduleClearCache() {
         Runnable r = new Runnable() {
             public void run() {
                 CacheManager.clearCache();
+                DataSourceCache.clear();
             }
         };
         scheduler.schedule(r, 1, TimeUnit.SECONDS);
@@ -0,0 +1,142 @@
+/*
+ * This file is part of McIDAS-V
+ *
+ * Copyright 2007-2025
+ * Space Science and Engineering Center (SSEC)
+ * University of Wisconsin - Madison
+ * 1225 W. Dayton Street, Madison, WI 53706, USA
+ * https://www.ssec.wisc.edu/mcidas/
+ * 
+ * All Rights Reserved
+ * 
+ * McIDAS-V is built on Unidata's IDV and SSEC's VisAD libraries, and
+ * some McIDAS-V source code is based on IDV and VisAD source code.  
+ * 
+ * McIDAS-V is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * McIDAS-V is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/.
+ */
+package edu.wisc.ssec.mcidasv.monitors.cache;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.swing.SwingUtilities;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ucar.unidata.data.DataSourceCache;
+import ucar.unidata.data.DataSourceImpl;
+import ucar.unidata.idv.control.DisplayControlImpl;
+
+import visad.data.DataCacheManager;
+
+import edu.wisc.ssec.mcidasv.McIDASV;
+import edu.wisc.ssec.mcidasv.data.adde.AddeImagePrefetcher;
+import edu.wisc.ssec.mcidasv.monitors.Monitorable;
+import edu.wisc.ssec.mcidasv.monitors.Monitoring;
+
+/**
+ * Reports which data sources and displays hold memory and how well the
+ * caches are doing. Data sources are charged for what they hold in the
+ * {@link DataSourceCache}; displays for the data of their displayables.
+ */
+public class CacheMonitor implements Monitorable {
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheMonitor.class);
+
+    private static final Comparator<CacheReport.Holder> LARGEST_FIRST =
+        (a, b) -> Long.compare(b.getBytes(), a.getBytes());
+
+    private final List<Monitoring> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile CacheReport lastReport;
+
+    public void addMonitor(final Monitoring listener) {
+        listeners.add(listener);
+    }
+
+    public void removeMonitor(final Monitoring listener) {
+        if (!listeners.isEmpty()) {
+            listeners.remove(listener);
+        }
+    }
+
+    public boolean hasMonitors() {
+        return !listeners.isEmpty();
+    }
+
+    public void run() {
+        final CacheMonitorEvent event = new CacheMonitorEvent(this, buildReport());
+        for (final Monitoring listener : listeners) {
+            SwingUtilities.invokeLater(new Runnable() {
+                public void run() {
+                    listener.monitorUpdated(event);
+                }
+            });
+        }
+    }
+
+    /**
+     * @return The report from the last update, or a new one if the monitor
+     * is not running.
+     */
+    public CacheReport getReport() {
+        CacheReport report = lastReport;
+        return (report != null && hasMonitors()) ? report : buildReport();
+    }
+
+    private CacheReport buildReport() {
+        List<CacheReport.Holder> sources = new ArrayList<>();
+        List<CacheReport.Holder> displays = new ArrayList<>();
+        McIDASV mcv = McIDASV.getStaticMcv();
+        if (mcv != null) {
+            try {
+                for (Object o : new ArrayList<Object>(mcv.getDataSources())) {
+                    if (o instanceof DataSourceImpl) {
+                        DataSourceImpl source = (DataSourceImpl)o;
+                        sources.add(new CacheReport.Holder(source.toString(), source.getCacheSize()));
+                    }
+                }
+                for (Object o : new ArrayList<Object>(mcv.getDisplayControls())) {
+                    if (o instanceof DisplayControlImpl) {
+                        DisplayControlImpl control = (DisplayControlImpl)o;
+                        displays.add(new CacheReport.Holder(control.getLabel(), control.getEstimatedDataSize()));
+                    }
+                }
+            } catch (Exception e) {
+                // data sources and displays can come and go while we look
+                logger.trace("could not attribute memory", e);
+            }
+        }
+        long prefetched = AddeImagePrefetcher.getStoreSize();
+        if (prefetched > 0) {
+            sources.add(new CacheReport.Holder("ADDE image prefetch", prefetched));
+        }
+        sources.sort(LARGEST_FIRST);
+        displays.sort(LARGEST_FIRST);
+
+        DataCacheManager dcm = DataCacheManager.getCacheManager();
+        Runtime rt = Runtime.getRuntime();
+        CacheReport report = new CacheReport(sources, displays,
+            DataSourceCache.getTotalSize(), DataSourceCache.getMaxSize(),
+            dcm.getTotalSize(), dcm.getCompressedSize(), dcm.getMaxBytes(),
+            dcm.getHitCount(), dcm.getCompressedHitCount(), dcm.getMissCount(),
+            dcm.getEvictionCount(), dcm.getBytesWritten(), dcm.getBytesRead(),
+            rt.totalMemory() - rt.freeMemory(), rt.maxMemory());
+        lastReport = report;
+        return report;
+    }
+}
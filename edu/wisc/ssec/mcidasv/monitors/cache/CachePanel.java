@@ -0,0 +1,144 @@
+/*
+ * This file is part of McIDAS-V
+ *
+ * Copyright 2007-2025
+ * Space Science and Engineering Center (SSEC)
+ * University of Wisconsin - Madison
+ * 1225 W. Dayton Street, Madison, WI 53706, USA
+ * https://www.ssec.wisc.edu/mcidas/
+ * 
+ * All Rights Reserved
+ * 
+ * McIDAS-V is built on Unidata's IDV and SSEC's VisAD libraries, and
+ * some McIDAS-V source code is based on IDV and VisAD source code.  
+ * 
+ * McIDAS-V is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * McIDAS-V is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/.
+ */
+package edu.wisc.ssec.mcidasv.monitors.cache;
+
+import java.awt.BorderLayout;
+import java.awt.GridLayout;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.List;
+
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.table.AbstractTableModel;
+
+import edu.wisc.ssec.mcidasv.monitors.MonitorEvent;
+import edu.wisc.ssec.mcidasv.monitors.MonitorManager;
+import edu.wisc.ssec.mcidasv.monitors.MonitorManager.MonitorType;
+import edu.wisc.ssec.mcidasv.monitors.Monitoring;
+
+/**
+ * Shows a {@link CacheReport}: a summary line and tables of the memory held
+ * by each data source and each display.
+ */
+@SuppressWarnings("serial")
+public class CachePanel extends JPanel implements Monitoring {
+
+    private final JLabel summaryLabel = new JLabel(" ");
+
+    private final HolderModel sourceModel = new HolderModel("Data source");
+
+    private final HolderModel displayModel = new HolderModel("Display");
+
+    public CachePanel() {
+        initComponents();
+    }
+
+    /**
+     * Open a window with a live cache panel. The panel stops listening when
+     * the window is closed.
+     *
+     * @param manager Monitor manager to listen to.
+     *
+     * @return The window.
+     */
+    public static JFrame showWindow(final MonitorManager manager) {
+        final CachePanel panel = new CachePanel();
+        JFrame frame = new JFrame("Cache and Memory Monitor");
+        frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        frame.addWindowListener(new WindowAdapter() {
+            @Override public void windowClosed(final WindowEvent e) {
+                manager.removeListener(MonitorType.CACHE, panel);
+            }
+        });
+        frame.getContentPane().add(panel);
+        frame.setSize(800, 500);
+        frame.setVisible(true);
+        manager.addListener(MonitorType.CACHE, panel);
+        return frame;
+    }
+
+    // runs in the EDT! be cautious!
+    public void monitorUpdated(final MonitorEvent event) {
+        if (event.getType() != MonitorType.CACHE)
+            return;
+
+        CacheReport report = ((CacheMonitorEvent)event).getReport();
+        summaryLabel.setText(report.getSummary());
+        sourceModel.setHolders(report.getDataSources());
+        displayModel.setHolders(report.getDisplays());
+    }
+
+    private void initComponents() {
+        setLayout(new BorderLayout());
+        JPanel tables = new JPanel(new GridLayout(2, 1));
+        tables.add(new JScrollPane(new JTable(sourceModel)));
+        tables.add(new JScrollPane(new JTable(displayModel)));
+        add(summaryLabel, BorderLayout.NORTH);
+        add(tables, BorderLayout.CENTER);
+        summaryLabel.setToolTipText("Heap | data source cache | DataCacheManager memory, hit ratio (hits/compressed hits/misses), evictions and disk I/O");
+    }
+
+    private static class HolderModel extends AbstractTableModel {
+        private final String nameColumn;
+        private List<CacheReport.Holder> holders = java.util.Collections.emptyList();
+
+        HolderModel(final String nameColumn) {
+            this.nameColumn = nameColumn;
+        }
+
+        void setHolders(final List<CacheReport.Holder> holders) {
+            this.holders = holders;
+            fireTableDataChanged();
+        }
+
+        public int getRowCount() {
+            return holders.size();
+        }
+
+        public int getColumnCount() {
+            return 2;
+        }
+
+        @Override public String getColumnName(final int column) {
+            return (column == 0) ? nameColumn : "MB";
+        }
+
+        @Override public Class<?> getColumnClass(final int column) {
+            return (column == 0) ? String.class : Double.class;
+        }
+
+        public Object getValueAt(final int row, final int column) {
+            CacheReport.Holder h = holders.get(row);
+            return (column == 0) ? h.getName() : Math.round(h.getBytes() / 104857.6) / 10.0;
+        }
+    }
+}
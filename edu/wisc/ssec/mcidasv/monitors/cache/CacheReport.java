@@ -0,0 +1,213 @@
+/*
+ * This file is part of McIDAS-V
+ *
+ * Copyright 2007-2025
+ * Space Science and Engineering Center (SSEC)
+ * University of Wisconsin - Madison
+ * 1225 W. Dayton Street, Madison, WI 53706, USA
+ * https://www.ssec.wisc.edu/mcidas/
+ * 
+ * All Rights Reserved
+ * 
+ * McIDAS-V is built on Unidata's IDV and SSEC's VisAD libraries, and
+ * some McIDAS-V source code is based on IDV and VisAD source code.  
+ * 
+ * McIDAS-V is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * McIDAS-V is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/.
+ */
+package edu.wisc.ssec.mcidasv.monitors.cache;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Snapshot of what is holding memory: bytes per data source and per display
+ * control, the size of the data source cache and the effectiveness of the
+ * {@link visad.data.DataCacheManager}.
+ */
+public class CacheReport {
+
+    /** A data source or display control and the bytes attributed to it. */
+    public static class Holder {
+        private final String name;
+        private final long bytes;
+
+        public Holder(final String name, final long bytes) {
+            this.name = name;
+            this.bytes = bytes;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        @Override public String toString() {
+            return String.format("%-50s %10.1f MB", name, bytes / 1048576.0);
+        }
+    }
+
+    private final long timestamp;
+    private final List<Holder> dataSources;
+    private final List<Holder> displays;
+    private final long sourceCacheBytes;
+    private final long sourceCacheMaxBytes;
+    private final long dataCacheBytes;
+    private final long dataCacheCompressedBytes;
+    private final long dataCacheMaxBytes;
+    private final long hits;
+    private final long compressedHits;
+    private final long misses;
+    private final long evictions;
+    private final long bytesWritten;
+    private final long bytesRead;
+    private final long heapUsed;
+    private final long heapMax;
+
+    public CacheReport(final List<Holder> dataSources, final List<Holder> displays,
+                       final long sourceCacheBytes, final long sourceCacheMaxBytes,
+                       final long dataCacheBytes, final long dataCacheCompressedBytes,
+                       final long dataCacheMaxBytes, final long hits,
+                       final long compressedHits, final long misses,
+                       final long evictions, final long bytesWritten,
+                       final long bytesRead, final long heapUsed, final long heapMax)
+    {
+        this.timestamp = System.currentTimeMillis();
+        this.dataSources = Collections.unmodifiableList(dataSources);
+        this.displays = Collections.unmodifiableList(displays);
+        this.sourceCacheBytes = sourceCacheBytes;
+        this.sourceCacheMaxBytes = sourceCacheMaxBytes;
+        this.dataCacheBytes = dataCacheBytes;
+        this.dataCacheCompressedBytes = dataCacheCompressedBytes;
+        this.dataCacheMaxBytes = dataCacheMaxBytes;
+        this.hits = hits;
+        this.compressedHits = compressedHits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.bytesWritten = bytesWritten;
+        this.bytesRead = bytesRead;
+        this.heapUsed = heapUsed;
+        this.heapMax = heapMax;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return Data sources, largest first.
+     */
+    public List<Holder> getDataSources() {
+        return dataSources;
+    }
+
+    /**
+     * @return Display controls, largest first.
+     */
+    public List<Holder> getDisplays() {
+        return displays;
+    }
+
+    public long getSourceCacheBytes() {
+        return sourceCacheBytes;
+    }
+
+    public long getSourceCacheMaxBytes() {
+        return sourceCacheMaxBytes;
+    }
+
+    public long getDataCacheBytes() {
+        return dataCacheBytes;
+    }
+
+    public long getDataCacheCompressedBytes() {
+        return dataCacheCompressedBytes;
+    }
+
+    public long getDataCacheMaxBytes() {
+        return dataCacheMaxBytes;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getCompressedHits() {
+        return compressedHits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return Fraction of DataCacheManager reads served without going to
+     * disk, or 1 if there have been no reads.
+     */
+    public double getHitRatio() {
+        long total = hits + compressedHits + misses;
+        return (total == 0) ? 1.0 : (double)(hits + compressedHits) / total;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getHeapUsed() {
+        return heapUsed;
+    }
+
+    public long getHeapMax() {
+        return heapMax;
+    }
+
+    /**
+     * @return One line summary of the caches.
+     */
+    public String getSummary() {
+        return String.format(
+            "Heap %d/%d MB | source cache %d/%d MB | data cache %d/%d MB, %d MB compressed | hit ratio %.1f%% (%d/%d/%d) | %d evictions | spilled %d MB, read %d MB",
+            mb(heapUsed), mb(heapMax), mb(sourceCacheBytes), mb(sourceCacheMaxBytes),
+            mb(dataCacheBytes), mb(dataCacheMaxBytes), mb(dataCacheCompressedBytes),
+            100.0 * getHitRatio(), hits, compressedHits, misses, evictions,
+            mb(bytesWritten), mb(bytesRead));
+    }
+
+    @Override public String toString() {
+        StringBuilder sb = new StringBuilder(getSummary()).append('\n');
+        sb.append("Data sources:\n");
+        for (Holder h : dataSources) {
+            sb.append("  ").append(h).append('\n');
+        }
+        sb.append("Displays:\n");
+        for (Holder h : displays) {
+            sb.append("  ").append(h).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static long mb(final long bytes) {
+        return bytes / 1048576;
+    }
+}
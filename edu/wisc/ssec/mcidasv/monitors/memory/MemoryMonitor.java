@@ -98,7 +98,7 @@ public class MemoryMonitor implements Monitorable {
             timesAboveThreshold++;
             if (timesAboveThreshold > 5) {
                 if (now - lastTimeRanGC > 5000) {
-                    manager.scheduleClearCache();
+                    manager.scheduleRelief();
                     lastTimeRanGC = now;
                 }
             }
@@ -0,0 +1,249 @@
+/*
+ * This file is part of McIDAS-V
+ *
+ * Copyright 2007-2025
+ * Space Science and Engineering Center (SSEC)
+ * University of Wisconsin - Madison
+ * 1225 W. Dayton Street, Madison, WI 53706, USA
+ * https://www.ssec.wisc.edu/mcidas/
+ *
+ * All Rights Reserved
+ *
+ * McIDAS-V is built on Unidata's IDV and SSEC's VisAD libraries, and
+ * some McIDAS-V source code is based on IDV and VisAD source code.
+ *
+ * McIDAS-V is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * McIDAS-V is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/.
+ */
+
+package edu.wisc.ssec.mcidasv.monitors.memory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.wisc.ssec.mcidasv.data.adde.AddeImagePrefetcher;
+
+import ucar.unidata.data.DataSourceCache;
+import ucar.unidata.util.CacheManager;
+
+import visad.data.DataCacheManager;
+
+/**
+ * Relieves memory pressure in steps, from cheapest to most disruptive,
+ * stopping as soon as enough has been freed:
+ *
+ * <ol>
+ *   <li>drop cached data that can be recomputed: prefetched ADDE images,
+ *   the data source caches and the volatile entries of the
+ *   {@link DataCacheManager}</li>
+ *   <li>compress in-memory {@code DataCacheManager} arrays</li>
+ *   <li>spill compressed and in-memory arrays to disk, and off-heap
+ *   arrays down to half their budget</li>
+ *   <li>clear everything, only if the heap is still critically full</li>
+ * </ol>
+ *
+ * <p>Relief is triggered by collection usage threshold notifications from
+ * the heap memory pools, set at the warning percentage of each pool's
+ * maximum, and can also be requested by the polling {@link MemoryMonitor}.
+ * Only usage left after a collection counts, so caches aren't shed for
+ * garbage a collection would have freed. The goal of
+ * each round is to get heap usage back to ten points below the warning
+ * percentage. Each step logs how much it reclaimed.</p>
+ */
+public class MemoryPressureHandler implements NotificationListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(MemoryPressureHandler.class);
+
+    /** Percentage points below the warning threshold that relief aims for. */
+    private static final int HYSTERESIS = 10;
+
+    /** Minimum time between relief rounds, in milliseconds. */
+    private static final long MIN_INTERVAL = 5000;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final int percentWarning;
+
+    private final int percentCritical;
+
+    private final AtomicBoolean relieving = new AtomicBoolean(false);
+
+    private volatile long lastRelief = 0;
+
+    /**
+     * Create the handler and install heap usage thresholds.
+     *
+     * @param scheduler Runs relief off the notification thread.
+     * @param warning Heap percentage at which relief starts.
+     * @param critical Heap percentage at which clearing everything is allowed.
+     */
+    public MemoryPressureHandler(final ScheduledExecutorService scheduler, final int warning, final int critical) {
+        this.scheduler = scheduler;
+        percentWarning = warning;
+        percentCritical = critical;
+        installThresholds();
+    }
+
+    /**
+     * Set collection usage thresholds on the heap pools that support them,
+     * and listen for the notifications.
+     */
+    private void installThresholds() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP) {
+                continue;
+            }
+            long max = pool.getUsage().getMax();
+            if (max <= 0) {
+                continue;
+            }
+            if (!pool.isCollectionUsageThresholdSupported()) {
+                continue;
+            }
+            long threshold = max / 100 * percentWarning;
+            pool.setCollectionUsageThreshold(threshold);
+            logger.trace("memory threshold for pool '{}' set to {} bytes", pool.getName(), threshold);
+        }
+        ((NotificationEmitter)ManagementFactory.getMemoryMXBean()).addNotificationListener(this, null, null);
+    }
+
+    /**
+     * Remove the notification listener.
+     */
+    public void dispose() {
+        try {
+            ((NotificationEmitter)ManagementFactory.getMemoryMXBean()).removeNotificationListener(this);
+        } catch (Exception e) {
+            logger.trace("listener already removed", e);
+        }
+    }
+
+    @Override public void handleNotification(final Notification notification, final Object handback) {
+        String type = notification.getType();
+        if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(type)) {
+            logger.trace("memory notification: {}", type);
+            scheduleRelief();
+        }
+    }
+
+    /**
+     * Run a relief round on the scheduler, unless one is running or one ran
+     * in the last few seconds.
+     */
+    public void scheduleRelief() {
+        long now = System.currentTimeMillis();
+        if ((now - lastRelief) < MIN_INTERVAL || !relieving.compareAndSet(false, true)) {
+            return;
+        }
+        scheduler.execute(new Runnable() {
+            public void run() {
+                try {
+                    relieve();
+                } catch (Exception e) {
+                    logger.error("memory relief failed", e);
+                } finally {
+                    lastRelief = System.currentTimeMillis();
+                    relieving.set(false);
+                }
+            }
+        });
+    }
+
+    /**
+     * Free memory in graded steps until heap usage should be back under the
+     * target.
+     *
+     * @return Bytes reclaimed.
+     */
+    public long relieve() {
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        long max = (heap.getMax() > 0) ? heap.getMax() : Runtime.getRuntime().maxMemory();
+        long used = heap.getUsed();
+        long target = used - max / 100 * (percentWarning - HYSTERESIS);
+        if (target <= 0) {
+            return 0;
+        }
+        logger.info("memory pressure: {} of {} MB used, trying to free {} MB",
+            mb(used), mb(max), mb(target));
+
+        DataCacheManager dataCache = DataCacheManager.getCacheManager();
+        long freed = 0;
+
+        // 1. recomputable
+        long step = AddeImagePrefetcher.clearStore();
+        long total = DataSourceCache.getTotalSize();
+        if ((total > 0) && (step < target)) {
+            step += DataSourceCache.shed(Math.min(1.0, (double)(target - step) / total));
+        }
+        step += dataCache.dropVolatile(target - freed - step);
+        freed += step;
+        logger.info("memory relief step 1: dropped {} MB of recomputable cached data", mb(step));
+        if (freed >= target) {
+            return freed;
+        }
+
+        // 2. compress
+        step = dataCache.compressInMemory(target - freed);
+        freed += step;
+        logger.info("memory relief step 2: compressing cached arrays saved {} MB", mb(step));
+        if (freed >= target) {
+            return freed;
+        }
+
+        // 3. spill
+        step = dataCache.spillToDisk(target - freed);
+        freed += step;
+        logger.info("memory relief step 3: spilled {} MB of cached arrays to disk", mb(step));
+        // native memory isn't heap, but it counts against the process too
+        long offHeap = dataCache.spillOffHeap(dataCache.getOffHeapSize() - dataCache.getMaxOffHeapSize() / 2);
+        if (offHeap > 0) {
+            logger.info("memory relief step 3: spilled {} MB of off-heap arrays to disk", mb(offHeap));
+        }
+        if (freed >= target) {
+            return freed;
+        }
+
+        // 4. last resort, judged on usage now that steps 1 to 3 are done
+        used = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        if ((100 * used / max) < percentCritical) {
+            logger.info("memory relief freed {} of {} MB, below critical, not clearing caches", mb(freed), mb(target));
+            return freed;
+        }
+        step = DataSourceCache.getTotalSize();
+        DataSourceCache.clear();
+        CacheManager.clearCache();
+        long before = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+        dataCache.flushAllCachedData();
+        long after = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+        step += Math.max(0, before - after);
+        freed += step;
+        logger.warn("memory relief step 4: cleared all caches, about {} MB reclaimed", mb(step));
+        return freed;
+    }
+
+    private static long mb(final long bytes) {
+        return bytes / 1048576;
+    }
+}
@@ -20,6 +20,7 @@ from ch.qos.logback.classic import LoggerContext
 from ucar.unidata.idv.ui.JythonShell import PROP_JYTHON_SHELL_TRUNCATE
 
 from edu.wisc.ssec.mcidasv.McIDASV import getStaticMcv
+from edu.wisc.ssec.mcidasv.monitors.cache import CachePanel
 from edu.wisc.ssec.mcidasv.util import JythonObjectStore
 
 from java.lang import Class
@@ -152,6 +153,19 @@ def getMouseEarthLocation():
     visadLat, visadLon = master.getCursorLatitude(), master.getCursorLongitude()
     return visadLat.getValue(), visadLon.getValue()
     
+def getCacheReport():
+    """Return a snapshot of what is holding memory.
+    
+    The report lists bytes held per data source and per display (largest
+    first, see getDataSources() and getDisplays()), and the size, hit ratio,
+    evictions and disk I/O of the data caches. Printing it gives a summary.
+    """
+    return getStaticMcv().getMonitorManager().getCacheReport()
+    
+def showCacheMonitor():
+    """Open a window that shows the cache report, updated every 2 seconds."""
+    return CachePanel.showWindow(getStaticMcv().getMonitorManager())
+    
 def describeActions(pattern=None):
     """Print out a list of the McIDAS-V actions.
     
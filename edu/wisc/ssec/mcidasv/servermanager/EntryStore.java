@@ -65,6 +65,8 @@ import ucar.unidata.idv.IdvResourceManager;
 import ucar.unidata.idv.chooser.adde.AddeServer;
 import ucar.unidata.xml.XmlResourceCollection;
 
+import edu.wisc.ssec.mcidas.adde.AddeLocalServer;
+
 import edu.wisc.ssec.mcidasv.Constants;
 import edu.wisc.ssec.mcidasv.McIDASV;
 import edu.wisc.ssec.mcidasv.ResourceManager;
@@ -73,6 +75,7 @@ import edu.wisc.ssec.mcidasv.servermanager.AddeEntry.EntryStatus;
 import edu.wisc.ssec.mcidasv.servermanager.AddeEntry.EntryType;
 import edu.wisc.ssec.mcidasv.servermanager.AddeEntry.EntryValidity;
 import edu.wisc.ssec.mcidasv.servermanager.AddeThread.McservEvent;
+import edu.wisc.ssec.mcidasv.servermanager.LocalAddeEntry.AddeFormat;
 
 /**
  * McIDAS-V ADDE server manager. This class is essentially the
@@ -457,6 +460,23 @@ public class EntryStore {
         } catch (IOException e) {
             logger.error(WARN_NO_RESOLVSRV, ADDE_RESOLV);
         }
+        registerInProcessEntries();
+    }
+
+    /**
+     * Hands the enabled local AREA entries to {@link AddeLocalServer}, so
+     * their requests are answered in process rather than by mcservl.
+     */
+    private void registerInProcessEntries() {
+        AddeLocalServer.unregisterAll();
+        setInProcessPort();
+        for (LocalAddeEntry entry : getLocalEntries()) {
+            if ((entry.getFormat() == AddeFormat.MCIDAS_AREA)
+                && (entry.getEntryStatus() == EntryStatus.ENABLED))
+            {
+                AddeLocalServer.register(entry.getGroup(), entry.getDescriptor(), entry.getFileMask());
+            }
+        }
     }
 
     /**
@@ -1242,6 +1262,20 @@ public class EntryStore {
      */
     public static void setLocalPort(final String port) {
         localPort = port;
+        setInProcessPort();
+    }
+
+    /**
+     * Tells {@link AddeLocalServer} which port mcservl listens on, so it
+     * only answers requests meant for it.
+     */
+    private static void setInProcessPort() {
+        try {
+            AddeLocalServer.setLocalPort(Integer.parseInt(localPort));
+        } catch (NumberFormatException e) {
+            logger.warn("bad local ADDE port '{}'", localPort);
+            AddeLocalServer.setLocalPort(-1);
+        }
     }
 
     /**
@@ -49,6 +49,7 @@ import edu.wisc.ssec.mcidasv.McIDASV;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import ucar.unidata.data.DataSourceCache;
 import ucar.unidata.idv.StateManager;
 import ucar.unidata.util.CacheManager;
 import ucar.unidata.util.GuiUtils;
@@ -284,6 +285,7 @@ public class MemoryMonitor extends JPanel implements Runnable {
      */
     public void runGC() {
         CacheManager.clearCache();
+        DataSourceCache.clear();
         Runtime.getRuntime().gc();
         lastTimeRanGC = System.currentTimeMillis();
     }
@@ -322,8 +324,15 @@ public class MemoryMonitor extends JPanel implements Runnable {
             if (timesAboveThreshold > 5) {
                 // Only run every 5 seconds
                 if (now - lastTimeRanGC > 5000) {
-                    // For now just clear the cache. Don't run the gc
-                    CacheManager.clearCache();
+                    // Free memory in steps rather than clearing every
+                    // cache. Don't run the gc.
+                    McIDASV mcv = McIDASV.getStaticMcv();
+                    if (mcv != null) {
+                        mcv.getMonitorManager().scheduleRelief();
+                    } else {
+                        CacheManager.clearCache();
+                        DataSourceCache.shed(0.5);
+                    }
                     // runGC();
                     lastTimeRanGC = now;
                 }
@@ -404,7 +413,6 @@ public class MemoryMonitor extends JPanel implements Runnable {
                                 // Clear data
                                 McIDASV.getStaticMcv().removeAllLayers(false);
                                 McIDASV.getStaticMcv().removeAllData(false);
-                                CacheManager.clearCache();
                                 runGC();
                                 // Prompt for confirmation (this is required)
                                 // McIDASV.getStaticMcv().removeAllLayersAndData();
@@ -0,0 +1,520 @@
+/*
+ * This file is part of McIDAS-V
+ *
+ * Copyright 2007-2025
+ * Space Science and Engineering Center (SSEC)
+ * University of Wisconsin - Madison
+ * 1225 W. Dayton Street, Madison, WI 53706, USA
+ * https://www.ssec.wisc.edu/mcidas/
+ * 
+ * All Rights Reserved
+ * 
+ * McIDAS-V is built on Unidata's IDV and SSEC's VisAD libraries, and
+ * some McIDAS-V source code is based on IDV and VisAD source code.  
+ * 
+ * McIDAS-V is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * McIDAS-V is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/.
+ */
+
+package edu.wisc.ssec.mcidasv.util;
+
+import java.io.PrintStream;
+import java.text.DateFormat;
+import java.util.Date;
+
+import visad.FlatField;
+import visad.VisADException;
+import visad.util.ThreadManager;
+
+/**
+ * Bulk solar zenith and azimuth angles for every pixel of a swath or grid.
+ *
+ * <p>Angles are computed exactly with the {@link SunRelativePosition}
+ * algorithm on a coarse tie grid (every {@code tieStep} lines and elements,
+ * plus the last line and element) and bilinearly interpolated to full
+ * resolution, one block of rows per thread. Azimuth is unwrapped around
+ * each cell's first corner so it interpolates correctly across north. Near
+ * the horizon the atmospheric refraction correction is strongly non-linear,
+ * so there the geometric zenith is interpolated and corrected per pixel. Cells touching a
+ * missing location (e.g. off the edge of a full disk), or where the azimuth
+ * swings rapidly (near the sub-solar point or the poles), are computed
+ * exactly per pixel instead, as are cells within a degree of a pole.</p>
+ *
+ * <p>Unlike {@link SunRelativePosition#getSolarZenith(float[], float[], Date, float[])}
+ * no twilight cutoff is applied: night pixels get zenith angles above 90
+ * degrees rather than {@code NaN}. With {@link #DEFAULT_TIE_STEP} the result
+ * agrees with the per-point method to within {@link #TOLERANCE} degrees for
+ * navigation that is smooth at the tie step, which
+ * {@link #getMaxDeviation(float[], float[], int, Date, float[][], int)} can
+ * be used to verify.</p>
+ */
+public final class SolarGeometry {
+
+    /** Default spacing, in pixels, of the exactly computed tie points. */
+    public static final int DEFAULT_TIE_STEP = 8;
+
+    /** Documented maximum deviation, in degrees, from the per-point method. */
+    public static final double TOLERANCE = 0.05;
+
+    /** Index of solar zenith in the returned arrays. */
+    public static final int ZENITH = 0;
+
+    /** Index of solar azimuth in the returned arrays. */
+    public static final int AZIMUTH = 1;
+
+    /**
+     * Corner azimuth spread, in degrees, above which a cell is computed
+     * exactly. The spread grows as the cell size over the distance to the
+     * sub-solar point (or pole), which is also what drives interpolation
+     * error, so this keeps the error bounded independently of resolution.
+     */
+    private static final double MAX_AZIMUTH_SPREAD = 2.0;
+
+    /**
+     * Corner latitude, in degrees, beyond which a cell is computed exactly.
+     * {@link SunRelativePosition} clamps latitudes to 89.8 degrees, which
+     * leaves a kink in the angles that interpolation cannot follow.
+     */
+    private static final double POLAR_LATITUDE = 89.0;
+
+    /** Zenith, in degrees, beyond which refraction is applied per pixel. */
+    private static final double HORIZON_ZENITH = 84.0;
+
+    /** Below this many pixels everything is done on the calling thread. */
+    private static final int MIN_PARALLEL_LENGTH = 64 * 1024;
+
+    private SolarGeometry() {
+    }
+
+    /**
+     * Compute solar zenith and azimuth with the default tie step.
+     *
+     * @see #getSolarAngles(float[], float[], int, Date, int)
+     */
+    public static float[][] getSolarAngles(float[] longitudes, float[] latitudes, int lineLen, Date dateTime)
+            throws VisADException
+    {
+        return getSolarAngles(longitudes, latitudes, lineLen, dateTime, DEFAULT_TIE_STEP);
+    }
+
+    /**
+     * Compute solar zenith and azimuth for every location of a row-major
+     * grid or swath.
+     *
+     * @param longitudes Longitudes in degrees, row-major.
+     * @param latitudes Latitudes in degrees, same layout.
+     * @param lineLen Number of elements per line.
+     * @param dateTime Observation time.
+     * @param tieStep Tie point spacing in pixels. {@code 1} computes every pixel exactly.
+     * @return {@code float[2][n]} of {zenith, azimuth} in degrees.
+     * @throws VisADException if the parallel computation fails.
+     */
+    public static float[][] getSolarAngles(float[] longitudes, float[] latitudes, int lineLen, Date dateTime,
+                                           int tieStep) throws VisADException
+    {
+        int numPts = longitudes.length;
+        if (numPts != latitudes.length) {
+            throw new IllegalArgumentException("number of longitudes and latitudes must match");
+        }
+        if (lineLen <= 0 || (numPts % lineLen) != 0) {
+            throw new IllegalArgumentException("line length "+lineLen+" does not divide "+numPts+" points");
+        }
+        if (tieStep < 1) {
+            throw new IllegalArgumentException("tie step must be positive: "+tieStep);
+        }
+
+        double julianDay = Calendar.julianDay(dateTime);
+        double[] decEqTime = SunRelativePosition.declinationAndEquationOfTime(julianDay);
+
+        float[][] angles = new float[2][numPts];
+        new Interpolator(longitudes, latitudes, lineLen, numPts / lineLen, tieStep,
+                         julianDay, decEqTime[0], decEqTime[1], angles).run();
+        return angles;
+    }
+
+    /**
+     * Write the solar zenith angle (degrees) of every domain location into
+     * the range of {@code output}.
+     *
+     * @param longitudes Longitudes in degrees, row-major.
+     * @param latitudes Latitudes in degrees, same layout.
+     * @param lineLen Number of elements per line.
+     * @param dateTime Observation time.
+     * @param output Field whose first range component receives the angles.
+     * @throws Exception if the field cannot be updated.
+     */
+    public static void getSolarZenith(float[] longitudes, float[] latitudes, int lineLen, Date dateTime,
+                                      FlatField output) throws Exception
+    {
+        float[][] angles = getSolarAngles(longitudes, latitudes, lineLen, dateTime);
+        float[][] values = output.getFloats(false);
+        System.arraycopy(angles[ZENITH], 0, values[0], 0, values[0].length);
+        output.setSamples(values, false);
+    }
+
+    /**
+     * Compare bulk angles against the per-point method.
+     *
+     * @param longitudes Longitudes used for {@code angles}.
+     * @param latitudes Latitudes used for {@code angles}.
+     * @param lineLen Number of elements per line.
+     * @param dateTime Observation time.
+     * @param angles Result of {@link #getSolarAngles}.
+     * @param sampleStride Check every {@code sampleStride}th pixel.
+     * @return Largest absolute zenith or azimuth difference in degrees.
+     */
+    public static double getMaxDeviation(float[] longitudes, float[] latitudes, int lineLen, Date dateTime,
+                                         float[][] angles, int sampleStride)
+    {
+        SunRelativePosition calculator = new SunRelativePosition(Double.NaN);
+        calculator.setDate(dateTime);
+        double maxDiff = 0.0;
+        for (int k = 0; k < longitudes.length; k += Math.max(1, sampleStride)) {
+            if (Float.isNaN(longitudes[k]) || Float.isNaN(latitudes[k])) {
+                continue;
+            }
+            calculator.setCoordinate(longitudes[k], latitudes[k]);
+            double zenDiff = Math.abs(calculator.getSolarZenith() - angles[ZENITH][k]);
+            double azDiff = Math.abs(calculator.getAzimuth() - angles[AZIMUTH][k]);
+            azDiff = Math.min(azDiff, 360.0 - azDiff);
+            // azimuth is ill-defined at the sub-solar point and the poles
+            if (Math.abs(latitudes[k]) >= 89.0 || calculator.getSolarZenith() < 1.0) {
+                azDiff = 0.0;
+            }
+            maxDiff = Math.max(maxDiff, Math.max(zenDiff, azDiff));
+        }
+        return maxDiff;
+    }
+
+    /**
+     * Checks the bulk angles against the per-point method on synthetic
+     * navigation, using {@link #getMaxDeviation}. Two layouts are checked
+     * with {@link #DEFAULT_TIE_STEP}: a global quarter degree grid, which
+     * holds both poles, the sub-solar point and the terminator, and a swath
+     * from a sun-synchronous orbit, 3000 km wide at about 1 km, passing over
+     * the north pole. This application can be launched with:
+     *
+     * {@preformat shell
+     *     java edu.wisc.ssec.mcidasv.util.SolarGeometry [date]
+     * }
+     *
+     * where <var>date</var> is an optional date and time in the
+     * {@code "yyyy-MM-dd HH:mm:ss"} format, UTC time zone. If it is
+     * omitted, a date near each equinox and solstice is used. The largest
+     * deviation of each case is printed, and the exit status is 1 if any
+     * exceeds {@link #TOLERANCE}.
+     *
+     * @param args The command line argument.
+     * @throws Exception If the date is not properly formatted or the
+     * computation fails.
+     */
+    public static void main(final String[] args) throws Exception {
+        final DateFormat format = Calendar.getDateFormat();
+        final String[] dates = (args.length != 0) ? args : new String[] {
+            "2024-03-20 03:06:00", "2024-06-20 20:51:00",
+            "2024-09-22 12:44:00", "2024-12-21 09:21:00"
+        };
+
+        // global grid, cell centers, north to south
+        final int gridElems = 1440;
+        final int gridLines = 720;
+        final float[] gridLons = new float[gridElems * gridLines];
+        final float[] gridLats = new float[gridElems * gridLines];
+        for (int j = 0; j < gridLines; j++) {
+            for (int i = 0; i < gridElems; i++) {
+                gridLons[j * gridElems + i] = -179.875f + 0.25f * i;
+                gridLats[j * gridElems + i] = 89.875f - 0.25f * j;
+            }
+        }
+
+        // swath: great circle offsets from a 98.7 degree inclination orbit
+        final double earthRadius = 6371.0;
+        final int swathElems = 3000;
+        final int swathLines = 4000;
+        final float[] swathLons = new float[swathElems * swathLines];
+        final float[] swathLats = new float[swathElems * swathLines];
+        final double incl = Math.toRadians(98.7);
+        for (int j = 0; j < swathLines; j++) {
+            // along track from 6000 km past the equator, up to the orbit's
+            // northernmost point, where the swath edge reaches the pole
+            double s = (6000 + j) / earthRadius;
+            double px = Math.cos(s);
+            double py = Math.sin(s) * Math.cos(incl);
+            double pz = Math.sin(s) * Math.sin(incl);
+            // unit normal to the orbit plane
+            double nx = 0.0;
+            double ny = -Math.sin(incl);
+            double nz = Math.cos(incl);
+            for (int i = 0; i < swathElems; i++) {
+                double c = (i - swathElems / 2.0) / earthRadius;
+                double x = Math.cos(c) * px + Math.sin(c) * nx;
+                double y = Math.cos(c) * py + Math.sin(c) * ny;
+                double z = Math.cos(c) * pz + Math.sin(c) * nz;
+                swathLons[j * swathElems + i] = (float) Math.toDegrees(Math.atan2(y, x));
+                swathLats[j * swathElems + i] = (float) Math.toDegrees(Math.asin(z));
+            }
+        }
+
+        final PrintStream out = System.out;
+        double worst = 0.0;
+        for (String date : dates) {
+            final Date time = format.parse(date);
+            float[][] angles = getSolarAngles(gridLons, gridLats, gridElems, time);
+            double gridDev = getMaxDeviation(gridLons, gridLats, gridElems, time, angles, 1);
+            angles = getSolarAngles(swathLons, swathLats, swathElems, time);
+            double swathDev = getMaxDeviation(swathLons, swathLats, swathElems, time, angles, 1);
+            out.println(format.format(time) + "  grid: " + gridDev + "  swath: " + swathDev);
+            worst = Math.max(worst, Math.max(gridDev, swathDev));
+        }
+        out.println("max deviation " + worst + " degrees, tolerance " + TOLERANCE);
+        if (worst > TOLERANCE) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Tie grid evaluation and interpolation state for one call.
+     */
+    private static final class Interpolator {
+
+        private final float[] lons;
+        private final float[] lats;
+        private final int lineLen;
+        private final int numLines;
+        private final int tieStep;
+        private final double julianDay;
+        private final double solarDec;
+        private final double eqTime;
+        private final float[][] angles;
+
+        /** Element/line indices of the tie columns and rows. */
+        private final int[] tieElems;
+        private final int[] tieLines;
+
+        /** Tie grid zenith, geometric zenith, azimuth and latitude, row-major. */
+        private final double[] tieZen;
+        private final double[] tieGeoZen;
+        private final double[] tieAz;
+        private final float[] tieLat;
+
+        /** Whether the cell to the lower right of a tie point must be computed exactly. */
+        private final boolean[] exactCell;
+
+        Interpolator(float[] lons, float[] lats, int lineLen, int numLines, int tieStep,
+                     double julianDay, double solarDec, double eqTime, float[][] angles)
+        {
+            this.lons = lons;
+            this.lats = lats;
+            this.lineLen = lineLen;
+            this.numLines = numLines;
+            this.tieStep = tieStep;
+            this.julianDay = julianDay;
+            this.solarDec = solarDec;
+            this.eqTime = eqTime;
+            this.angles = angles;
+
+            tieElems = tieIndices(lineLen, tieStep);
+            tieLines = tieIndices(numLines, tieStep);
+            int numTies = tieElems.length * tieLines.length;
+            tieZen = new double[numTies];
+            tieGeoZen = new double[numTies];
+            tieAz = new double[numTies];
+            tieLat = new float[numTies];
+            exactCell = new boolean[numTies];
+        }
+
+        private static int[] tieIndices(int len, int step) {
+            int num = ((len - 1) / step) + 1;
+            boolean addLast = ((len - 1) % step) != 0;
+            int[] idx = new int[addLast ? num + 1 : num];
+            for (int i = 0; i < num; i++) {
+                idx[i] = i * step;
+            }
+            if (addLast) {
+                idx[num] = len - 1;
+            }
+            return idx;
+        }
+
+        void run() throws VisADException {
+            boolean parallel = (lons.length >= MIN_PARALLEL_LENGTH);
+
+            // exact angles at tie points, one block of tie rows per thread
+            forRowBlocks(tieLines.length, parallel, (start, stop) -> computeTieRows(start, stop));
+            flagExactCells();
+
+            // full resolution, one block of lines per thread
+            forRowBlocks(numLines, parallel, (start, stop) -> interpolateLines(start, stop));
+        }
+
+        private interface RowBlock {
+            void run(int start, int stop);
+        }
+
+        // start to stop inclusive
+        private static void forRowBlocks(int numRows, boolean parallel, final RowBlock block)
+                throws VisADException
+        {
+            int numProc = Runtime.getRuntime().availableProcessors();
+            if (!parallel || numProc == 1 || numRows < numProc) {
+                block.run(0, numRows - 1);
+                return;
+            }
+            int subLen = numRows / numProc;
+            int rem = numRows % numProc;
+
+            ThreadManager threadManager = new ThreadManager("solarGeometry");
+            for (int i = 0; i < numProc; i++) {
+                final int start = i * subLen;
+                final int stop = (i != numProc - 1) ? (start + subLen - 1) : (start + subLen + rem - 1);
+                threadManager.addRunnable(new ThreadManager.MyRunnable() {
+                    public void run() throws Exception {
+                        block.run(start, stop);
+                    }
+                });
+            }
+            threadManager.runAllParallel();
+        }
+
+        private void computeTieRows(int start, int stop) {
+            double[] zenAz = new double[3];
+            int numTieElems = tieElems.length;
+            for (int tj = start; tj <= stop; tj++) {
+                int lineOffset = tieLines[tj] * lineLen;
+                for (int ti = 0; ti < numTieElems; ti++) {
+                    int k = lineOffset + tieElems[ti];
+                    int t = tj * numTieElems + ti;
+                    tieLat[t] = lats[k];
+                    if (Float.isNaN(lons[k]) || Float.isNaN(lats[k])) {
+                        tieZen[t] = Double.NaN;
+                        continue;
+                    }
+                    exact(k, zenAz);
+                    tieZen[t] = zenAz[0];
+                    tieAz[t] = zenAz[1];
+                    tieGeoZen[t] = zenAz[2];
+                }
+            }
+        }
+
+        private void flagExactCells() {
+            int numTieElems = tieElems.length;
+            for (int tj = 0; tj < tieLines.length - 1; tj++) {
+                for (int ti = 0; ti < numTieElems - 1; ti++) {
+                    int t00 = tj * numTieElems + ti;
+                    int[] corners = { t00, t00 + 1, t00 + numTieElems, t00 + numTieElems + 1 };
+                    boolean exact = false;
+                    for (int c : corners) {
+                        if (Double.isNaN(tieZen[c])) {
+                            exact = true;
+                            break;
+                        }
+                    }
+                    for (int c = 0; !exact && c < corners.length; c++) {
+                        exact = Math.abs(tieLat[corners[c]]) >= POLAR_LATITUDE;
+                    }
+                    for (int c = 1; !exact && c < corners.length; c++) {
+                        exact = Math.abs(azimuthDelta(tieAz[t00], tieAz[corners[c]])) > MAX_AZIMUTH_SPREAD;
+                    }
+                    exactCell[t00] = exact;
+                }
+            }
+        }
+
+        // start to stop inclusive
+        private void interpolateLines(int start, int stop) {
+            double[] zenAz = new double[3];
+            int numTieElems = tieElems.length;
+            float[] zen = angles[ZENITH];
+            float[] azi = angles[AZIMUTH];
+
+            for (int j = start; j <= stop; j++) {
+                int tj = Math.min(j / tieStep, tieLines.length - 2);
+                if (tj < 0) {
+                    tj = 0;
+                }
+                int line0 = tieLines[tj];
+                int line1 = (tieLines.length > 1) ? tieLines[tj + 1] : line0;
+                double fy = (line1 == line0) ? 0.0 : (double) (j - line0) / (line1 - line0);
+                int lineOffset = j * lineLen;
+
+                for (int i = 0; i < lineLen; i++) {
+                    int k = lineOffset + i;
+                    if (Float.isNaN(lons[k]) || Float.isNaN(lats[k])) {
+                        zen[k] = Float.NaN;
+                        azi[k] = Float.NaN;
+                        continue;
+                    }
+
+                    int ti = Math.max(0, Math.min(i / tieStep, numTieElems - 2));
+                    int t00 = tj * numTieElems + ti;
+                    if (tieStep == 1 || numTieElems < 2 || tieLines.length < 2 || exactCell[t00]) {
+                        exact(k, zenAz);
+                        zen[k] = (float) zenAz[0];
+                        azi[k] = (float) zenAz[1];
+                        continue;
+                    }
+
+                    int elem0 = tieElems[ti];
+                    int elem1 = tieElems[ti + 1];
+                    double fx = (double) (i - elem0) / (elem1 - elem0);
+                    int t01 = t00 + 1;
+                    int t10 = t00 + numTieElems;
+                    int t11 = t10 + 1;
+
+                    double w00 = (1 - fx) * (1 - fy);
+                    double w01 = fx * (1 - fy);
+                    double w10 = (1 - fx) * fy;
+                    double w11 = fx * fy;
+
+                    double zenith = w00 * tieZen[t00] + w01 * tieZen[t01] + w10 * tieZen[t10] + w11 * tieZen[t11];
+                    if (zenith > HORIZON_ZENITH) {
+                        double geoZenith = w00 * tieGeoZen[t00] + w01 * tieGeoZen[t01]
+                                         + w10 * tieGeoZen[t10] + w11 * tieGeoZen[t11];
+                        zenith = geoZenith - SunRelativePosition.refractionCorrection(geoZenith);
+                    }
+                    zen[k] = (float) zenith;
+
+                    double az00 = tieAz[t00];
+                    double az = az00 + w01 * azimuthDelta(az00, tieAz[t01])
+                                     + w10 * azimuthDelta(az00, tieAz[t10])
+                                     + w11 * azimuthDelta(az00, tieAz[t11]);
+                    if (az < 0.0) {
+                        az += 360.0;
+                    } else if (az >= 360.0) {
+                        az -= 360.0;
+                    }
+                    azi[k] = (float) az;
+                }
+            }
+        }
+
+        /** Signed difference {@code to - from} in degrees, wrapped into [-180, 180). */
+        private static double azimuthDelta(double from, double to) {
+            double delta = to - from;
+            if (delta >= 180.0) {
+                delta -= 360.0;
+            } else if (delta < -180.0) {
+                delta += 360.0;
+            }
+            return delta;
+        }
+
+        private void exact(int k, double[] zenAz) {
+            double lat = lats[k];
+            if (lat > +89.8) lat = +89.8;
+            if (lat < -89.8) lat = -89.8;
+            SunRelativePosition.computeZenithAzimuth(lons[k], lat, julianDay, solarDec, eqTime, zenAz);
+        }
+    }
+}
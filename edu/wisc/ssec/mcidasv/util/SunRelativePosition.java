@@ -390,7 +390,7 @@ public class SunRelativePosition {
      * @param  zenith The sun zenith angle in degrees.
      * @return The refraction correction in degrees.
      */
-    private static double refractionCorrection(final double zenith) {
+    static double refractionCorrection(final double zenith) {
         final double exoatmElevation = 90 - zenith;
         if (exoatmElevation > 85) {
             return 0;
@@ -436,13 +436,6 @@ public class SunRelativePosition {
      * Results are reported in azimuth and elevation in degrees.
      */
     private void compute() {
-        double latitude  = this.latitude;
-        double longitude = this.longitude;
-
-        // NOAA convention use positive longitude west, and negative east.
-        // Inverse the sign, in order to be closer to OpenGIS convention.
-        longitude = -longitude;
-
         // Compute: 1) Julian day (days ellapsed since January 1, 4723 BC at 12:00 GMT).
         //          2) Time as the centuries ellapsed since January 1, 2000 at 12:00 GMT.
         
@@ -455,10 +448,55 @@ public class SunRelativePosition {
            timeUpdated = true;
         }
         
-        
-        this.noonTime   = Math.round(solarNoonTime(longitude, eqTime) * (60*1000)) +
+        // NOAA convention use positive longitude west, and negative east.
+        this.noonTime   = Math.round(solarNoonTime(-this.longitude, eqTime) * (60*1000)) +
                           (this.time/DAY_MILLIS)*DAY_MILLIS;
 
+        final double[] zenAz = new double[3];
+        computeZenithAzimuth(this.longitude, this.latitude, julianDay, solarDec, eqTime, zenAz);
+
+        azimuth   = zenAz[1];
+        elevation = 90 - zenAz[0];
+        if (elevation < twilight) {
+            // do not report azimuth & elevation after twilight
+            azimuth   = DARK;
+            elevation = DARK;
+        }
+        updated = true;
+    }
+
+    /**
+     * Compute the sun declination and equation of time for a julian day.
+     * These only depend on time, so bulk computations evaluate them once.
+     *
+     * @param julianDay Julian day, see {@link Calendar#julianDay(Date)}.
+     * @return {@code {declination (degrees), equation of time (minutes)}}.
+     */
+    static double[] declinationAndEquationOfTime(final double julianDay) {
+        final double time = (julianDay-2451545)/36525;
+        return new double[] { sunDeclination(time), equationOfTime(time) };
+    }
+
+    /**
+     * Compute the refraction corrected solar zenith and azimuth angles for
+     * one location. No twilight cutoff is applied.
+     *
+     * @param longitude Longitude in degrees, positive East.
+     * @param latitude Latitude in degrees, positive North.
+     * @param julianDay Julian day of the observation.
+     * @param solarDec Sun declination in degrees.
+     * @param eqTime Equation of time in minutes.
+     * @param zenAz Receives {@code {zenith, azimuth, geometric zenith}} in
+     *              degrees, where only the first is refraction corrected.
+     */
+    static void computeZenithAzimuth(double longitude, double latitude,
+                                     final double julianDay, final double solarDec,
+                                     final double eqTime, final double[] zenAz)
+    {
+        // NOAA convention use positive longitude west, and negative east.
+        // Inverse the sign, in order to be closer to OpenGIS convention.
+        longitude = -longitude;
+
         // Formula below use longitude in degrees. Steps are:
         //   1) Extract the time part of the date, in minutes.
         //   2) Apply a correction for longitude and equation of time.
@@ -469,16 +507,14 @@ public class SunRelativePosition {
 
         // Convert all angles to radians.  From this point until
         // the end of this method, local variables are always in
-        // radians. Output variables ('azimuth' and 'elevation')
-        // will still computed in degrees.
-        longitude = Math.toRadians(longitude);
+        // radians. Output angles are still computed in degrees.
         latitude  = Math.toRadians(latitude );
-        solarDec  = Math.toRadians(solarDec );
+        final double dec = Math.toRadians(solarDec);
 
         double csz = Math.sin(latitude) *
-                     Math.sin(solarDec) +
+                     Math.sin(dec) +
                      Math.cos(latitude) *
-                     Math.cos(solarDec) *
+                     Math.cos(dec) *
                      Math.cos(Math.toRadians(trueSolarTime/4 - 180));
         if (csz > +1) csz = +1;
         if (csz < -1) csz = -1;
@@ -489,8 +525,9 @@ public class SunRelativePosition {
         //////////////////////////////////////////
         ////    Compute azimuth in degrees    ////
         //////////////////////////////////////////
+        double azimuth;
         if (Math.abs(azDenom) > 0.001) {
-            double azRad = ((Math.sin(latitude)*Math.cos(zenith)) - Math.sin(solarDec)) / azDenom;
+            double azRad = ((Math.sin(latitude)*Math.cos(zenith)) - Math.sin(dec)) / azDenom;
             if (azRad > +1) azRad = +1;
             if (azRad < -1) azRad = -1;
 
@@ -503,19 +540,13 @@ public class SunRelativePosition {
         }
         azimuth -= 360*Math.floor(azimuth/360);
 
-        ////////////////////////////////////////////
-        ////    Compute elevation in degrees    ////
-        ////////////////////////////////////////////
+        /////////////////////////////////////////
+        ////    Compute zenith in degrees    ////
+        /////////////////////////////////////////
         final double refractionCorrection = refractionCorrection(Math.toDegrees(zenith));
-        final double solarZen = Math.toDegrees(zenith) - refractionCorrection;
-
-        elevation = 90 - solarZen;
-        if (elevation < twilight) {
-            // do not report azimuth & elevation after twilight
-            azimuth   = DARK;
-            elevation = DARK;
-        }
-        updated = true;
+        zenAz[0] = Math.toDegrees(zenith) - refractionCorrection;
+        zenAz[1] = azimuth;
+        zenAz[2] = Math.toDegrees(zenith);
     }
 
     /**
@@ -63,6 +63,7 @@ import ucar.unidata.xml.XmlResourceCollection;
 import ucar.unidata.xml.XmlUtil;
 
 import ucar.visad.UtcDate;
+import ucar.visad.data.AreaImageFlatField;
 
 import visad.DateTime;
 import visad.Real;
@@ -127,6 +128,26 @@ public class DataManager {
     /** The cache percent property */
     public static final String PROP_CACHE_PERCENT = "idv.data.cache.percent";
 
+    /** The compressed cache tier percent property */
+    public static final String PROP_CACHE_COMPRESSED_PERCENT =
+        "idv.data.cache.compressedpercent";
+
+    /** The data source cache percent property */
+    public static final String PROP_SOURCE_CACHE_PERCENT =
+        "idv.data.sourcecache.percent";
+
+    /** The per data source share of the data source cache property */
+    public static final String PROP_SOURCE_CACHE_SOURCEPERCENT =
+        "idv.data.sourcecache.sourcepercent";
+
+    /** Keep imagery as raw counts and calibrate on demand property */
+    public static final String PROP_IMAGERY_RAWCOUNTS =
+        "idv.data.imagery.rawcounts";
+
+    /** Decode ADDE images as they arrive property */
+    public static final String PROP_IMAGERY_STREAMING =
+        "idv.data.imagery.streaming";
+
     /** bbox property */
     public static final String PROP_GEOSUBSET_BBOX =
         "idv.data.geosubset.bbox";
@@ -369,6 +390,26 @@ public class DataManager {
             .setMemoryPercent(dataContext.getIdv().getStateManager()
             .getPreferenceOrProperty(PROP_CACHE_PERCENT,
                                      0.25));
+            visad.data.DataCacheManager.getCacheManager()
+            .setCompressedMemoryPercent(dataContext.getIdv().getStateManager()
+            .getPreferenceOrProperty(PROP_CACHE_COMPRESSED_PERCENT,
+                                     0.10));
+            DataSourceCache.setMemoryPercent(
+                dataContext.getIdv().getStateManager().getPreferenceOrProperty(
+                    PROP_SOURCE_CACHE_PERCENT,
+                    DataSourceCache.DEFAULT_MEMORY_PERCENT));
+            DataSourceCache.setSourcePercent(
+                dataContext.getIdv().getStateManager().getPreferenceOrProperty(
+                    PROP_SOURCE_CACHE_SOURCEPERCENT,
+                    DataSourceCache.DEFAULT_SOURCE_PERCENT));
+            AreaImageFlatField.setStoreRawCounts(
+                dataContext.getIdv().getStateManager().getPreferenceOrProperty(
+                    PROP_IMAGERY_RAWCOUNTS,
+                    AreaImageFlatField.getStoreRawCounts()));
+            AreaImageFlatField.setStreamAreas(
+                dataContext.getIdv().getStateManager().getPreferenceOrProperty(
+                    PROP_IMAGERY_STREAMING,
+                    AreaImageFlatField.getStreamAreas()));
 
             AccountManager accountManager =
                 AccountManager.getGlobalAccountManager();
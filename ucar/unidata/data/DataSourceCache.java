@@ -0,0 +1,690 @@
+/*
+ * This file is part of McIDAS-V
+ *
+ * Copyright 2007-2025
+ * Space Science and Engineering Center (SSEC)
+ * University of Wisconsin - Madison
+ * 1225 W. Dayton Street, Madison, WI 53706, USA
+ * https://www.ssec.wisc.edu/mcidas/
+ *
+ * All Rights Reserved
+ *
+ * McIDAS-V is built on Unidata's IDV and SSEC's VisAD libraries, and
+ * some McIDAS-V source code is based on IDV and VisAD source code.
+ *
+ * McIDAS-V is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * McIDAS-V is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/.
+ */
+
+package ucar.unidata.data;
+
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ucar.unidata.util.CacheManager;
+import ucar.visad.data.AreaImageFlatField;
+
+import visad.Data;
+import visad.FieldImpl;
+import visad.FlatField;
+import visad.FunctionType;
+import visad.LinearSet;
+import visad.Set;
+import visad.Tuple;
+import visad.data.CachedFlatField;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * The cache behind {@link DataSourceImpl#putCache(Object, Object)} and
+ * {@link DataSourceImpl#getCache(Object)}.
+ *
+ * <p>Each entry is weighed by an estimate of the heap it holds, and each
+ * data source has its own budget as well as sharing a global one, so one
+ * source with very large fields can only push out its own entries once
+ * it is over its share. Within a source, entries start on probation and
+ * are promoted to a protected segment when they are read again; eviction
+ * takes the least recently used probationary entries first. Anything used
+ * only once goes before anything used repeatedly.</p>
+ *
+ * <p>{@link #shed(double)} drops the coldest part of the cache, for partial
+ * relief under memory pressure, instead of clearing everything.</p>
+ */
+public class DataSourceCache {
+
+    /** logger */
+    private static final Logger logger =
+        LoggerFactory.getLogger(DataSourceCache.class);
+
+    /** Default share of max memory for all sources together */
+    public static final double DEFAULT_MEMORY_PERCENT = 0.20;
+
+    /** Default share of the global budget any one source may use */
+    public static final double DEFAULT_SOURCE_PERCENT = 0.50;
+
+    /** Weight given to data we can't size */
+    private static final long DEFAULT_WEIGHT = 1024;
+
+    /** Per-entry bookkeeping overhead */
+    private static final long ENTRY_OVERHEAD = 64;
+
+    /** Share of max memory for all sources */
+    private static volatile double memoryPercent = DEFAULT_MEMORY_PERCENT;
+
+    /** Share of the global budget one source may use, by default */
+    private static volatile double sourcePercent = DEFAULT_SOURCE_PERCENT;
+
+    /** Caches for each data source, keyed by the source's cache key */
+    private static final Map<Object, SourceCache> sources =
+        new HashMap<Object, SourceCache>();
+
+    /** Total weight of everything cached */
+    private static long totalBytes = 0;
+
+    /** Guards everything above */
+    private static final Object MUTEX = new Object();
+
+    /** Don't instantiate */
+    private DataSourceCache() {}
+
+    /**
+     * Cache a value for a data source.
+     *
+     * @param sourceKey  the data source's cache key
+     * @param key  key for the value
+     * @param value  the value
+     * @param force  cache even if caching is turned off
+     */
+    public static void put(Object sourceKey, Object key, Object value,
+                           boolean force) {
+        if ( !force && !CacheManager.getDoCache()) {
+            return;
+        }
+        if (value == null) {
+            remove(sourceKey, key);
+            return;
+        }
+        long bytes = estimateSize(value);
+        synchronized (MUTEX) {
+            SourceCache source = sources.get(sourceKey);
+            if (source == null) {
+                source = new SourceCache();
+                sources.put(sourceKey, source);
+            }
+            Entry old = source.remove(key);
+            if (old != null) {
+                totalBytes -= old.bytes;
+            }
+            source.probation.put(key, new Entry(value, bytes));
+            source.bytes += bytes;
+            totalBytes   += bytes;
+            trim(source, key);
+        }
+    }
+
+    /**
+     * Get a cached value for a data source.
+     *
+     * @param sourceKey  the data source's cache key
+     * @param key  key for the value
+     * @param force  look even if caching is turned off
+     *
+     * @return  the value or null
+     */
+    public static Object get(Object sourceKey, Object key, boolean force) {
+        if ( !force && !CacheManager.getDoCache()) {
+            return null;
+        }
+        synchronized (MUTEX) {
+            SourceCache source = sources.get(sourceKey);
+            if (source == null) {
+                return null;
+            }
+            Entry entry = source.protectedEntries.get(key);
+            if (entry == null) {
+                // second hit, promote it
+                entry = source.probation.remove(key);
+                if (entry == null) {
+                    return null;
+                }
+                source.protectedEntries.put(key, entry);
+                source.balance();
+            }
+            entry.hits++;
+            return entry.value;
+        }
+    }
+
+    /**
+     * Remove a value.
+     *
+     * @param sourceKey  the data source's cache key
+     * @param key  key for the value
+     */
+    public static void remove(Object sourceKey, Object key) {
+        synchronized (MUTEX) {
+            SourceCache source = sources.get(sourceKey);
+            if (source == null) {
+                return;
+            }
+            Entry entry = source.remove(key);
+            if (entry != null) {
+                totalBytes -= entry.bytes;
+            }
+        }
+    }
+
+    /**
+     * Remove everything cached for a data source.
+     *
+     * @param sourceKey  the data source's cache key
+     */
+    public static void remove(Object sourceKey) {
+        synchronized (MUTEX) {
+            SourceCache source = sources.remove(sourceKey);
+            if (source != null) {
+                totalBytes -= source.bytes;
+            }
+        }
+    }
+
+    /**
+     * Get a copy of the values cached for a data source.
+     *
+     * @param sourceKey  the data source's cache key
+     *
+     * @return  key to value map, empty if nothing is cached
+     */
+    public static Map<Object, Object> getEntries(Object sourceKey) {
+        Map<Object, Object> entries = new LinkedHashMap<Object, Object>();
+        synchronized (MUTEX) {
+            SourceCache source = sources.get(sourceKey);
+            if (source != null) {
+                for (Map.Entry<Object, Entry> e : source.probation.entrySet()) {
+                    entries.put(e.getKey(), e.getValue().value);
+                }
+                for (Map.Entry<Object, Entry> e
+                        : source.protectedEntries.entrySet()) {
+                    entries.put(e.getKey(), e.getValue().value);
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Get every value cached, for all data sources.
+     *
+     * @return  the values
+     */
+    public static List<Object> getAllValues() {
+        List<Object> values = new ArrayList<Object>();
+        synchronized (MUTEX) {
+            for (SourceCache source : sources.values()) {
+                for (Entry entry : source.probation.values()) {
+                    values.add(entry.value);
+                }
+                for (Entry entry : source.protectedEntries.values()) {
+                    values.add(entry.value);
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Set the budget for one data source, overriding the default share.
+     *
+     * @param sourceKey  the data source's cache key
+     * @param bytes  the budget, or a negative value for the default
+     */
+    public static void setSourceBudget(Object sourceKey, long bytes) {
+        synchronized (MUTEX) {
+            SourceCache source = sources.get(sourceKey);
+            if (source == null) {
+                source = new SourceCache();
+                sources.put(sourceKey, source);
+            }
+            source.budget = bytes;
+            trim(source, null);
+        }
+    }
+
+    /**
+     * Set the share of max memory all sources together may use.
+     *
+     * @param percent  fraction of max memory
+     */
+    public static void setMemoryPercent(double percent) {
+        memoryPercent = percent;
+        synchronized (MUTEX) {
+            trim(null, null);
+        }
+    }
+
+    /**
+     * Set the default share of the global budget one source may use.
+     *
+     * @param percent  fraction of the global budget
+     */
+    public static void setSourcePercent(double percent) {
+        sourcePercent = percent;
+        synchronized (MUTEX) {
+            for (SourceCache source : sources.values()) {
+                trim(source, null);
+            }
+        }
+    }
+
+    /**
+     * Get the global budget.
+     *
+     * @return  bytes
+     */
+    public static long getMaxSize() {
+        return (long) (memoryPercent * Runtime.getRuntime().maxMemory());
+    }
+
+    /**
+     * Get the estimated total size of everything cached.
+     *
+     * @return  bytes
+     */
+    public static long getTotalSize() {
+        synchronized (MUTEX) {
+            return totalBytes;
+        }
+    }
+
+    /**
+     * Drop the coldest entries, across all sources, until the given
+     * fraction of the cached bytes has been freed. Probationary entries
+     * go first, and within each segment the least recently used first.
+     * Sources over their budget are shed before the others.
+     *
+     * @param fraction  fraction of the cached bytes to free, 0 to 1
+     *
+     * @return  the number of bytes freed
+     */
+    public static long shed(double fraction) {
+        synchronized (MUTEX) {
+            long target = (long) (totalBytes * Math.min(1.0,
+                              Math.max(0.0, fraction)));
+            long freed = 0;
+            List<Object> order = new ArrayList<Object>(sources.keySet());
+            order.sort((a, b) -> Long.compare(
+                sources.get(b).bytes - getBudget(sources.get(b)),
+                sources.get(a).bytes - getBudget(sources.get(a))));
+            for (int pass = 0; (pass < 2) && (freed < target); pass++) {
+                for (Object sourceKey : order) {
+                    SourceCache source = sources.get(sourceKey);
+                    Map<Object, Entry> segment = (pass == 0)
+                            ? source.probation
+                            : source.protectedEntries;
+                    freed += evict(source, segment, target - freed, null);
+                    if (freed >= target) {
+                        break;
+                    }
+                }
+            }
+            logger.info("shed {} of {} bytes from the data source cache",
+                        freed, totalBytes + freed);
+            return freed;
+        }
+    }
+
+    /**
+     * Clear everything.
+     */
+    public static void clear() {
+        synchronized (MUTEX) {
+            sources.clear();
+            totalBytes = 0;
+        }
+    }
+
+    /**
+     * Describe what is cached, for debugging and monitoring.
+     *
+     * @return  one line per source
+     */
+    public static String getStats() {
+        StringBuilder sb = new StringBuilder();
+        synchronized (MUTEX) {
+            sb.append("Data source cache: ").append(totalBytes / 1000000)
+              .append(" MB of ").append(getMaxSize() / 1000000)
+              .append(" MB\n");
+            for (Map.Entry<Object, SourceCache> e : sources.entrySet()) {
+                SourceCache source = e.getValue();
+                sb.append("   ").append(e.getKey()).append(": ")
+                  .append(source.bytes / 1000000).append(" MB of ")
+                  .append(getBudget(source) / 1000000).append(" MB, ")
+                  .append(source.probation.size()).append(" probation, ")
+                  .append(source.protectedEntries.size())
+                  .append(" protected\n");
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The budget for a source, its own or the default share.
+     *
+     * @param source  the source
+     *
+     * @return  bytes
+     */
+    private static long getBudget(SourceCache source) {
+        return (source.budget >= 0)
+               ? source.budget
+               : (long) (sourcePercent * getMaxSize());
+    }
+
+    /**
+     * Bring the source under its budget and everything under the global
+     * one. The source just added to is trimmed first; if we are still over
+     * the global budget, sources are trimmed largest first. The entry just
+     * put is always kept, even if it alone is over a budget, so an
+     * oversized value is cached until the next put instead of evicting
+     * itself on the way in.
+     *
+     * @param source  the source just changed, may be null
+     * @param newest  key of the entry just put, may be null
+     */
+    private static void trim(SourceCache source, Object newest) {
+        if (source != null) {
+            long over = source.bytes - getBudget(source);
+            if (over > 0) {
+                long freed = evict(source, source.probation, over, newest);
+                if (freed < over) {
+                    evict(source, source.protectedEntries, over - freed,
+                          newest);
+                }
+            }
+        }
+        long over = totalBytes - getMaxSize();
+        if (over <= 0) {
+            return;
+        }
+        List<SourceCache> bySize = new ArrayList<SourceCache>(sources.values());
+        bySize.sort((a, b) -> Long.compare(b.bytes, a.bytes));
+        for (int pass = 0; (pass < 2) && (over > 0); pass++) {
+            for (SourceCache s : bySize) {
+                over -= evict(s, (pass == 0)
+                                 ? s.probation
+                                 : s.protectedEntries, over, (s == source)
+                        ? newest
+                        : null);
+                if (over <= 0) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Evict least recently used entries from one segment of a source.
+     *
+     * @param source  the source
+     * @param segment  its probation or protected map
+     * @param bytes  how much to free
+     * @param keep  key of an entry not to evict, may be null
+     *
+     * @return  bytes freed
+     */
+    private static long evict(SourceCache source, Map<Object, Entry> segment,
+                              long bytes, Object keep) {
+        long freed = 0;
+        Iterator<Map.Entry<Object, Entry>> it =
+            segment.entrySet().iterator();
+        while ((freed < bytes) && it.hasNext()) {
+            Map.Entry<Object, Entry> e = it.next();
+            if ((keep != null) && keep.equals(e.getKey())) {
+                continue;
+            }
+            it.remove();
+            freed += e.getValue().bytes;
+        }
+        source.bytes -= freed;
+        totalBytes   -= freed;
+        return freed;
+    }
+
+    /**
+     * Estimate the heap held by a cached value. Values of a CachedFlatField
+     * live in the DataCacheManager and are budgeted there, so only the
+     * field's domain counts here. This runs on every put, so a FieldImpl is
+     * weighed by its first sample times its length rather than by walking
+     * every sample.
+     *
+     * @param value  the value
+     *
+     * @return  estimated bytes
+     */
+    public static long estimateSize(Object value) {
+        try {
+            return ENTRY_OVERHEAD + weigh(value, false);
+        } catch (Exception exc) {
+            logger.debug("could not size cache entry", exc);
+            return ENTRY_OVERHEAD + DEFAULT_WEIGHT;
+        }
+    }
+
+    /**
+     * Estimate the memory held by some data, counting the values of a
+     * CachedFlatField as well, wherever the DataCacheManager keeps them.
+     * Used to attribute memory to displays.
+     *
+     * @param value  the value
+     *
+     * @return  estimated bytes
+     */
+    public static long estimateHeldSize(Object value) {
+        try {
+            return weigh(value, true);
+        } catch (Exception exc) {
+            logger.debug("could not size data", exc);
+            return DEFAULT_WEIGHT;
+        }
+    }
+
+    /**
+     * Get the estimated size of what is cached for one data source.
+     *
+     * @param sourceKey  the data source's cache key
+     *
+     * @return  bytes
+     */
+    public static long getSize(Object sourceKey) {
+        synchronized (MUTEX) {
+            SourceCache source = sources.get(sourceKey);
+            return (source == null)
+                   ? 0
+                   : source.bytes;
+        }
+    }
+
+    /**
+     * Weigh one value.
+     *
+     * @param value  the value
+     * @param includeCached  count the values of a CachedFlatField too
+     *
+     * @return  estimated bytes
+     *
+     * @throws Exception  problem walking VisAD data
+     */
+    private static long weigh(Object value, boolean includeCached)
+            throws Exception {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof float[]) {
+            return 4L * ((float[]) value).length;
+        }
+        if (value instanceof double[]) {
+            return 8L * ((double[]) value).length;
+        }
+        if (value instanceof int[]) {
+            return 4L * ((int[]) value).length;
+        }
+        if (value instanceof short[]) {
+            return 2L * ((short[]) value).length;
+        }
+        if (value instanceof byte[]) {
+            return ((byte[]) value).length;
+        }
+        if (value instanceof Object[]) {
+            long bytes = 0;
+            for (Object o : (Object[]) value) {
+                bytes += weigh(o, includeCached);
+            }
+            return bytes;
+        }
+        if (value instanceof Set) {
+            Set set = (Set) value;
+            return (set instanceof LinearSet)
+                   ? DEFAULT_WEIGHT
+                   : 4L * set.getLength() * set.getDimension();
+        }
+        if (value instanceof AreaImageFlatField) {
+            // don't make a lazy image read itself just to be weighed
+            AreaImageFlatField image = (AreaImageFlatField) value;
+            if ( !includeCached || !image.haveData()) {
+                return weigh(image.getDomainSetNoRead(), false);
+            }
+        }
+        if ((value instanceof CachedFlatField) && !includeCached) {
+            return weigh(((FlatField) value).getDomainSet(), false);
+        }
+        if (value instanceof FlatField) {
+            FlatField field = (FlatField) value;
+            int rangeDim =
+                ((FunctionType) field.getType()).getFlatRange().getDimension();
+            return 4L * field.getLength() * rangeDim
+                   + weigh(field.getDomainSet(), includeCached);
+        }
+        if (value instanceof FieldImpl) {
+            FieldImpl field = (FieldImpl) value;
+            int       n     = field.getLength();
+            if ( !includeCached) {
+                return (n == 0)
+                       ? 0
+                       : n * weigh(field.getSample(0, false), false);
+            }
+            long bytes = 0;
+            for (int i = 0; i < n; i++) {
+                bytes += weigh(field.getSample(i, false), includeCached);
+            }
+            return bytes;
+        }
+        if (value instanceof Tuple) {
+            Tuple tuple = (Tuple) value;
+            long  bytes = 0;
+            for (int i = 0, n = tuple.getDimension(); i < n; i++) {
+                bytes += weigh(tuple.getComponent(i), includeCached);
+            }
+            return bytes;
+        }
+        return DEFAULT_WEIGHT;
+    }
+
+    /**
+     * A cached value and its weight.
+     */
+    private static class Entry {
+
+        /** the value */
+        final Object value;
+
+        /** estimated bytes */
+        final long bytes;
+
+        /** times read */
+        int hits = 0;
+
+        /**
+         * ctor
+         *
+         * @param value  the value
+         * @param bytes  estimated bytes
+         */
+        Entry(Object value, long bytes) {
+            this.value = value;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * The entries of one data source, as a segmented LRU: entries read
+     * only once stay on probation, entries read again are protected.
+     */
+    private static class SourceCache {
+
+        /** Entries put but not read since, least recently used first */
+        final LinkedHashMap<Object, Entry> probation =
+            new LinkedHashMap<Object, Entry>(16, 0.75f, true);
+
+        /** Entries read more than once, least recently used first */
+        final LinkedHashMap<Object, Entry> protectedEntries =
+            new LinkedHashMap<Object, Entry>(16, 0.75f, true);
+
+        /** total weight */
+        long bytes = 0;
+
+        /** own budget, negative for the default share */
+        long budget = -1;
+
+        /**
+         * Remove an entry from whichever segment holds it.
+         *
+         * @param key  the key
+         *
+         * @return  the entry or null
+         */
+        Entry remove(Object key) {
+            Entry entry = probation.remove(key);
+            if (entry == null) {
+                entry = protectedEntries.remove(key);
+            }
+            if (entry != null) {
+                bytes -= entry.bytes;
+            }
+            return entry;
+        }
+
+        /**
+         * Keep the protected segment to at most 80% of the source's
+         * entries by demoting its least recently used ones back to
+         * probation, so a burst of repeated reads can't pin everything.
+         */
+        void balance() {
+            int max = Math.max(1, (probation.size() + protectedEntries.size())
+                                  * 4 / 5);
+            Iterator<Map.Entry<Object, Entry>> it =
+                protectedEntries.entrySet().iterator();
+            while ((protectedEntries.size() > max) && it.hasNext()) {
+                Map.Entry<Object, Entry> e = it.next();
+                it.remove();
+                probation.put(e.getKey(), e.getValue());
+            }
+        }
+    }
+}
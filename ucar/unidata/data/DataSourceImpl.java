@@ -49,7 +49,6 @@ import ucar.unidata.idv.ViewManager;
 import ucar.unidata.idv.chooser.IdvChooser;
 import ucar.unidata.idv.chooser.IdvChooserManager;
 import ucar.unidata.idv.ui.DataSelectionWidget;
-import ucar.unidata.util.CacheManager;
 import ucar.unidata.util.FileManager;
 import ucar.unidata.util.FilePoller;
 import ucar.unidata.util.GuiUtils;
@@ -1139,7 +1138,7 @@ public class DataSourceImpl extends SharableImpl implements DataSource,
      */
     protected void flushCache() {
         // System.out.println("flushing cache");
-        CacheManager.remove(dataCacheKey);
+        DataSourceCache.remove(dataCacheKey);
     }
 
 
@@ -1162,7 +1161,7 @@ public class DataSourceImpl extends SharableImpl implements DataSource,
      * @param force   force a cache
      */
     public void putCache(Object key, Object value, boolean force) {
-        CacheManager.put(dataCacheKey, key, value, force);
+        DataSourceCache.put(dataCacheKey, key, value, force);
     }
 
     /**
@@ -1183,7 +1182,7 @@ public class DataSourceImpl extends SharableImpl implements DataSource,
      * @return  the key value, or <code>null</code>
      */
     public Object getCache(Object key, boolean force) {
-        return CacheManager.get(dataCacheKey, key, force);
+        return DataSourceCache.get(dataCacheKey, key, force);
     }
 
     /**
@@ -1192,7 +1191,26 @@ public class DataSourceImpl extends SharableImpl implements DataSource,
      * @param key   key for the object
      */
     public void removeCache(Object key) {
-        CacheManager.remove(dataCacheKey, key);
+        DataSourceCache.remove(dataCacheKey, key);
+    }
+
+    /**
+     * Set how many bytes this data source may hold in the cache before its
+     * least used entries are evicted. Other sources are unaffected.
+     *
+     * @param bytes  the budget, or a negative value for the default share
+     */
+    public void setCacheBudget(long bytes) {
+        DataSourceCache.setSourceBudget(dataCacheKey, bytes);
+    }
+
+    /**
+     * Get the estimated number of bytes this data source holds in the cache.
+     *
+     * @return  bytes
+     */
+    public long getCacheSize() {
+        return DataSourceCache.getSize(dataCacheKey);
     }
 
 
@@ -32,6 +32,7 @@ package ucar.unidata.data.imagery;
 import edu.wisc.ssec.mcidas.AreaDirectory;
 import edu.wisc.ssec.mcidas.AreaDirectoryList;
 import edu.wisc.ssec.mcidas.AreaFileException;
+import edu.wisc.ssec.mcidas.adde.AddeDirectoryCache;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,6 +40,7 @@ import ucar.unidata.data.CompositeDataChoice;
 import ucar.unidata.data.DataCategory;
 import ucar.unidata.data.DataChoice;
 import ucar.unidata.data.DataSelection;
+import ucar.unidata.data.DataSourceCache;
 import ucar.unidata.data.DataSourceDescriptor;
 import ucar.unidata.data.DataSourceImpl;
 import ucar.unidata.data.DirectDataChoice;
@@ -46,7 +48,6 @@ import ucar.unidata.idv.DisplayControl;
 import ucar.unidata.idv.IdvConstants;
 import ucar.unidata.idv.ViewManager;
 import ucar.unidata.idv.control.ImagePlanViewControl;
-import ucar.unidata.util.CacheManager;
 import ucar.unidata.util.IOUtil;
 import ucar.unidata.util.LogUtil;
 import ucar.unidata.util.Misc;
@@ -93,6 +94,7 @@ import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.TimeZone;
 import java.util.TreeMap;
 
@@ -147,6 +149,13 @@ public abstract class ImageDataSource extends DataSourceImpl {
     /** current directories */
     private AreaDirectory[][] currentDirs;
 
+    /** listings read fresh since the last reload */
+    private final java.util.Set<String> refreshedDirs =
+        new java.util.HashSet<String>();
+
+    /** have we been reloaded */
+    private boolean reloaded = false;
+
     /** timeMap */
     protected Hashtable timeMap = new Hashtable();
 
@@ -1226,9 +1235,34 @@ public abstract class ImageDataSource extends DataSourceImpl {
      */
     public void reloadData() {
         currentDirs = null;
+        synchronized (refreshedDirs) {
+            reloaded = true;
+            refreshedDirs.clear();
+        }
         super.reloadData();
     }
 
+    /**
+     * Get the directory listing for a relative request. The first time a
+     * listing is asked for after a reload it is checked against the server
+     * instead of being taken from the {@link AddeDirectoryCache} while
+     * still fresh, so polling picks up new images right away.
+     *
+     * @param url  ADDE imagedir request
+     *
+     * @return the listing
+     *
+     * @throws AreaFileException  if the listing can't be read
+     */
+    protected AreaDirectoryList getRelativeDirectoryList(String url)
+            throws AreaFileException {
+        boolean refresh;
+        synchronized (refreshedDirs) {
+            refresh = reloaded && refreshedDirs.add(url);
+        }
+        return AddeDirectoryCache.getDirectoryList(url, refresh);
+    }
+
 
     /**
      * Get whether we should cache to disk
@@ -1336,8 +1370,8 @@ public abstract class ImageDataSource extends DataSourceImpl {
                   System.err.println(biggestPosition.makeAddeUrl()
                   + "\nfrom aii:" + biggestPosition.makeAddeUrl());
                 */
-                AreaDirectoryList adl =
-                    new AreaDirectoryList(biggestPosition.getURLString());
+                AreaDirectoryList adl = getRelativeDirectoryList(
+                                            biggestPosition.getURLString());
                 biggestPosition.setRequestType(AddeImageInfo.REQ_IMAGEDATA);
                 currentDirs = adl.getSortedDirs();
             } else {
@@ -1567,7 +1601,8 @@ public abstract class ImageDataSource extends DataSourceImpl {
                         aii.setRequestType(aii.REQ_IMAGEDIR);
                         AreaDirectoryList ad;
                         try {  // we may be asking for a date that doesn't exist
-                            ad = new AreaDirectoryList(aii.getURLString());
+                            ad = AddeDirectoryCache.getDirectoryList(
+                                aii.getURLString());
                         } catch (AreaFileException afe) {
                             // If there's an error, we just ignore it.  In the
                             // end, the descriptor list will be empty if there is no
@@ -1881,7 +1916,7 @@ public abstract class ImageDataSource extends DataSourceImpl {
         dataChoices = null;
         getDataChoices();
         getDataContext().dataSourceChanged(this);
-        Hashtable cache = CacheManager.findOrCreate(dataCacheKey);
+        Map<Object, Object> cache = DataSourceCache.getEntries(dataCacheKey);
         flushCache();
         //Should be only one here
         CompositeDataChoice cdc = myCompositeDataChoice;
@@ -121,6 +121,7 @@ import ucar.unidata.data.DataOperand;
 import ucar.unidata.data.DataSelection;
 import ucar.unidata.data.DataSelectionComponent;
 import ucar.unidata.data.DataSource;
+import ucar.unidata.data.DataSourceCache;
 import ucar.unidata.data.DataSourceImpl;
 import ucar.unidata.data.DataTimeRange;
 import ucar.unidata.data.DerivedDataChoice;
@@ -205,6 +206,7 @@ import visad.DisplayEvent;
 import visad.DisplayListener;
 import visad.DisplayRealType;
 import visad.FieldImpl;
+import visad.FlatField;
 import visad.FunctionType;
 import visad.Gridded2DSet;
 import visad.GriddedSet;
@@ -220,6 +222,7 @@ import visad.Text;
 import visad.TextType;
 import visad.Unit;
 import visad.VisADException;
+import visad.data.CachedFlatField;
 import visad.georef.EarthLocation;
 import visad.georef.LatLonPoint;
 import visad.georef.MapProjection;
@@ -7363,11 +7366,121 @@ public abstract class DisplayControlImpl extends DisplayControlBase implements D
             }
             info.removeDisplayable();
             if ((displayable != null) && andDestroyThem) {
+                if (displayable instanceof DisplayableData) {
+                    releaseCachedData(
+                        ((DisplayableData) displayable).getData());
+                }
                 displayable.destroyDisplayable();
             }
         }
     }
 
+    /**
+     * Estimate how many bytes of data the displayables of this control
+     * hold, including values the DataCacheManager keeps for them.
+     *
+     * @return estimated bytes
+     */
+    public long getEstimatedDataSize() {
+        long bytes       = 0;
+        List displayList = getDisplayInfos();
+        for (int i = 0, n = displayList.size(); i < n; i++) {
+            Displayable displayable =
+                ((DisplayInfo) displayList.get(i)).getDisplayable();
+            if (displayable instanceof DisplayableData) {
+                try {
+                    bytes += DataSourceCache.estimateHeldSize(
+                        ((DisplayableData) displayable).getData());
+                } catch (Exception exc) {
+                    logger.debug("could not size displayable data", exc);
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Free the DataCacheManager entries of the cached fields in the given
+     * data, so their memory and spill files go now rather than whenever
+     * the fields get collected. The same field instances are often shared
+     * with the data source cache and with other displays of the same data
+     * choice, so fields still held by either are left alone, as are
+     * fields that can't read their values back.
+     *
+     * @param data the data, may be null
+     *
+     * @throws RemoteException
+     * @throws VisADException
+     */
+    private void releaseCachedData(Data data)
+            throws RemoteException, VisADException {
+        java.util.Set<CachedFlatField> fields =
+            Collections.newSetFromMap(
+                new IdentityHashMap<CachedFlatField, Boolean>());
+        collectCachedFields(data, fields);
+        if (fields.isEmpty()) {
+            return;
+        }
+        java.util.Set<CachedFlatField> inUse =
+            Collections.newSetFromMap(
+                new IdentityHashMap<CachedFlatField, Boolean>());
+        for (Object value : DataSourceCache.getAllValues()) {
+            if (value instanceof Data) {
+                collectCachedFields((Data) value, inUse);
+            }
+        }
+        List controls = (getIdv() != null)
+                        ? getIdv().getDisplayControls()
+                        : null;
+        if (controls != null) {
+            for (Object control : controls) {
+                if ((control == this)
+                        || !(control instanceof DisplayControlImpl)) {
+                    continue;
+                }
+                List infos =
+                    ((DisplayControlImpl) control).getDisplayInfos();
+                for (int i = 0, n = infos.size(); i < n; i++) {
+                    Displayable displayable =
+                        ((DisplayInfo) infos.get(i)).getDisplayable();
+                    if (displayable instanceof DisplayableData) {
+                        collectCachedFields(
+                            ((DisplayableData) displayable).getData(),
+                            inUse);
+                    }
+                }
+            }
+        }
+        for (CachedFlatField field : fields) {
+            if ( !inUse.contains(field)) {
+                field.release();
+            }
+        }
+    }
+
+    /**
+     * Find the cached fields in the given data.
+     *
+     * @param data the data, may be null
+     * @param fields where to put them
+     *
+     * @throws RemoteException
+     * @throws VisADException
+     */
+    private static void collectCachedFields(Data data,
+            java.util.Set<CachedFlatField> fields)
+            throws RemoteException, VisADException {
+        if (data instanceof CachedFlatField) {
+            fields.add((CachedFlatField) data);
+        } else if ((data instanceof FieldImpl)
+                   && !(data instanceof FlatField)) {
+            FieldImpl field = (FieldImpl) data;
+            for (int i = 0, n = field.getLength(); i < n; i++) {
+                collectCachedFields(field.getSample(i, false), fields);
+            }
+        }
+    }
+
 
     /**
      * Remove the given display info from the list of display infos
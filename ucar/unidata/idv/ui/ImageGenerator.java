@@ -2553,6 +2553,7 @@ public class ImageGenerator extends IdvManager {
         getIdv().removeAllDataSources();
         idToDataSource = new Hashtable();
         ucar.unidata.util.CacheManager.clearCache();
+        ucar.unidata.data.DataSourceCache.clear();
 
         //        getIdv().getIdvUIManager().disposeAllWindows();
         if (getIdv().getArgsManager().getIsOffScreen()) {
@@ -30,6 +30,7 @@ package ucar.visad.data;
 
 
 import edu.wisc.ssec.mcidas.*;
+import edu.wisc.ssec.mcidas.adde.AddeAreaStream;
 
 
 import org.slf4j.Logger;
@@ -93,24 +94,76 @@ public class AreaImageFlatField extends CachedFlatField implements SingleBandedI
 
 
     /** _more_ */
-    private String readLabel = "";
+    protected String readLabel = "";
 
     /** _more_ */
     private Set domainSet;
 
     /** _more_ */
-    private DateTime startTime;
+    protected DateTime startTime;
 
 
     /** _more_ */
-    private AddeImageDescriptor aid;
+    protected AddeImageDescriptor aid;
 
     /** _more_ */
-    private int[] bandIndices;
+    protected int[] bandIndices;
 
     /** _more_          */
     private boolean readDataFailed = false;
 
+    /**
+     * Should {@link #create} make fields that keep the raw counts and
+     * calibrate on demand. See {@link RawCountImageFlatField}.
+     */
+    private static boolean storeRawCounts =
+        Boolean.getBoolean("idv.data.imagery.rawcounts");
+
+    /**
+     * Should ADDE images be decoded as they arrive. See
+     * {@link AddeAreaStream}.
+     */
+    private static boolean streamAreas =
+        Boolean.getBoolean("idv.data.imagery.streaming");
+
+    /**
+     * Should ADDE images be decoded line by line as they arrive rather
+     * than read whole by AreaAdapter.
+     *
+     * @param value true to stream
+     */
+    public static void setStreamAreas(boolean value) {
+        streamAreas = value;
+    }
+
+    /**
+     * Are ADDE images decoded as they arrive.
+     *
+     * @return true if streaming
+     */
+    public static boolean getStreamAreas() {
+        return streamAreas;
+    }
+
+    /**
+     * Should {@link #create} make fields that keep the raw 1 or 2 byte
+     * counts of the image rather than calibrated floats.
+     *
+     * @param value true to store raw counts
+     */
+    public static void setStoreRawCounts(boolean value) {
+        storeRawCounts = value;
+    }
+
+    /**
+     * Does {@link #create} make fields that keep the raw counts.
+     *
+     * @return true if raw counts are stored
+     */
+    public static boolean getStoreRawCounts() {
+        return storeRawCounts;
+    }
+
     /**
      * copy ctor
      *
@@ -311,14 +364,41 @@ public class AreaImageFlatField extends CachedFlatField implements SingleBandedI
                                             MathType rangeType,
                                             String readLabel)
             throws VisADException, RemoteException, IOException {
+        return create(aid, aid.getImageInfo(), areaDirectory, rangeType,
+                      readLabel, null);
+    }
+
 
-        AddeImageInfo aii    = aid.getImageInfo();
+    /**
+     * Create a AIFF, with its values if we have them
+     *
+     * @param aid The descriptor
+     * @param aii The image info, or null to size the field and pick the
+     *            band from the directory
+     * @param areaDirectory the directory
+     * @param rangeType Use this range type if its not null
+     * @param readLabel What to show in the gui when we are reading the data
+     * @param floats The values, or null to read them when first needed
+     *
+     * @return The flatfield
+     *
+     * @throws IOException On badness
+     * @throws RemoteException On badness
+     * @throws VisADException On badness
+     */
+    private static AreaImageFlatField create(AddeImageDescriptor aid,
+                                             AddeImageInfo aii,
+                                             AreaDirectory areaDirectory,
+                                             MathType rangeType,
+                                             String readLabel,
+                                             float[][] floats)
+            throws VisADException, RemoteException, IOException {
 
         int           nLines = (aii != null)
-                               ? aid.getImageInfo().getLines()
+                               ? aii.getLines()
                                : areaDirectory.getLines();
         int           nEles  = (aii != null)
-                               ? aid.getImageInfo().getElements()
+                               ? aii.getElements()
                                : areaDirectory.getElements();
 
 
@@ -435,9 +515,14 @@ public class AreaImageFlatField extends CachedFlatField implements SingleBandedI
                 rangeUnits[i] = calUnit;
             }
         }
-        AreaImageFlatField aiff = new MyAreaImageFlatField(aid, image_type,
+        AreaImageFlatField aiff = storeRawCounts
+                                  ? new RawCountImageFlatField(aid,
+                                      image_type, domain_set, null,
+                                      rangeSets, rangeUnits, floats,
+                                      readLabel)
+                                  : new MyAreaImageFlatField(aid, image_type,
                                       domain_set, null, rangeSets,
-                                      rangeUnits, null, readLabel);
+                                      rangeUnits, floats, readLabel);
 
         //        cs.aiff = aiff;
 
@@ -449,6 +534,113 @@ public class AreaImageFlatField extends CachedFlatField implements SingleBandedI
 
 
 
+    /**
+     * Read an image now, for data sources that read their images up front
+     * rather than through {@link #create}. The field has the type
+     * {@link AreaAdapter} gives the same reply, since both are made from
+     * the directory the reply comes with. If {@link #getStoreRawCounts} is
+     * set the field keeps the raw counts, and otherwise if
+     * {@link #getStreamAreas} is set an ADDE reply is decoded as it
+     * arrives.
+     *
+     * @param source the ADDE url or file to read
+     * @param readLabel What to show in the gui when we are reading the data
+     *
+     * @return The flatfield, or null if neither is set or the reply holds
+     *         more than one band, and it should be read with AreaAdapter
+     *
+     * @throws IOException On badness
+     * @throws VisADException On badness
+     */
+    public static AreaImageFlatField createAndRead(String source,
+            String readLabel)
+            throws VisADException, IOException {
+        if (storeRawCounts) {
+            return readWithCounts(source, readLabel);
+        }
+        if (streamAreas && source.startsWith("adde")) {
+            return readStreamed(source, readLabel);
+        }
+        return null;
+    }
+
+
+    /**
+     * Read an image into a {@link RawCountImageFlatField}.
+     *
+     * @param source the ADDE url or file to read
+     * @param readLabel What to show in the gui when we are reading the data
+     *
+     * @return The flatfield
+     *
+     * @throws IOException On badness
+     * @throws VisADException On badness
+     */
+    private static AreaImageFlatField readWithCounts(String source,
+            String readLabel)
+            throws VisADException, IOException {
+        AreaFile areaFile;
+        AreaDirectory areaDirectory;
+        try {
+            areaFile      = AreaFileFactory.getAreaFileInstance(source);
+            areaDirectory = areaFile.getAreaDirectory();
+        } catch (Exception exc) {
+            throw new IOException("could not read " + source, exc);
+        }
+        AddeImageDescriptor aid = new AddeImageDescriptor(areaDirectory,
+                                      source);
+        AreaImageFlatField aiff = create(aid, null, areaDirectory, null,
+                                         readLabel, null);
+        ((RawCountImageFlatField) aiff).setCounts(areaFile);
+        return aiff;
+    }
+
+
+    /**
+     * Read an ADDE image with {@link AddeAreaStream}.
+     *
+     * @param source the ADDE url
+     * @param readLabel What to show in the gui when we are reading the data
+     *
+     * @return The flatfield, or null if the reply holds more than one band
+     *
+     * @throws IOException On badness
+     * @throws VisADException On badness
+     */
+    private static AreaImageFlatField readStreamed(String source,
+            String readLabel)
+            throws VisADException, IOException {
+        AddeAreaStream stream = new AddeAreaStream(source);
+        try {
+            if (stream.getBands() != 1) {
+                return null;
+            }
+            int[]         dir           = stream.getDirectory();
+            AreaDirectory areaDirectory = new AreaDirectory(dir);
+            float[][] samples =
+                stream.readFloats(1.0f
+                                  / areaDirectory.getCalibrationScaleFactor());
+            AddeImageDescriptor aid = new AddeImageDescriptor(areaDirectory,
+                                          source);
+            AreaImageFlatField aiff = create(aid, null, areaDirectory, null,
+                                             readLabel, samples);
+            CoordinateSystem cs = null;
+            try {
+                cs = new AREACoordinateSystem(dir, stream.getNavigation(),
+                        stream.getAuxiliary());
+            } catch (Exception exc) {
+                logger.warn("could not navigate " + readLabel, exc);
+            }
+            aiff.setDomain(aiff.makeDomain(cs, stream.getElements(),
+                                           stream.getLines()));
+            return aiff;
+        } finally {
+            stream.close();
+        }
+    }
+
+
+
     /**
      * _more_
      */
@@ -515,7 +707,7 @@ public class AreaImageFlatField extends CachedFlatField implements SingleBandedI
      *
      * @param domainSet _more_
      */
-    private void setDomain(Set domainSet) {
+    protected void setDomain(Set domainSet) {
         this.domainSet = domainSet;
     }
 
@@ -565,6 +757,12 @@ public class AreaImageFlatField extends CachedFlatField implements SingleBandedI
             String url = (aid.getImageInfo() != null)
                          ? aid.getImageInfo().makeAddeUrl()
                          : aid.getSource();
+            if (streamAreas && url.startsWith("adde")) {
+                float[][] samples = readDataStreaming(url);
+                if (samples != null) {
+                    return samples;
+                }
+            }
             AreaAdapter aa = new AreaAdapter(url, false);
             visad.meteorology.SingleBandedImageImpl ff =
                 (visad.meteorology.SingleBandedImageImpl) aa.getImage();
@@ -599,6 +797,69 @@ public class AreaImageFlatField extends CachedFlatField implements SingleBandedI
     }
 
 
+    /**
+     * Read an ADDE image with {@link AddeAreaStream}, which decodes the
+     * lines as they arrive rather than after the whole reply is in.
+     *
+     * @param url the ADDE url
+     *
+     * @return the values, or null if the stream could not be used and the
+     *         image should be read the usual way
+     */
+    private float[][] readDataStreaming(String url) {
+        AddeAreaStream stream = null;
+        try {
+            stream = new AddeAreaStream(url);
+            int[]     dir      = stream.getDirectory();
+            float     calScale = (1.0f
+                                  / new AreaDirectory(
+                                      dir).getCalibrationScaleFactor());
+            float[][] samples  = stream.readFloats(calScale);
+            CoordinateSystem cs = null;
+            try {
+                cs = new AREACoordinateSystem(dir, stream.getNavigation(),
+                        stream.getAuxiliary());
+            } catch (Exception exc) {
+                logger.warn("could not navigate " + readLabel, exc);
+            }
+            setDomain(makeDomain(cs, stream.getElements(),
+                                 stream.getLines()));
+            return samples;
+        } catch (Exception exc) {
+            logger.warn("could not stream " + url
+                        + ", reading it with AreaAdapter", exc);
+            return null;
+        } finally {
+            if (stream != null) {
+                stream.close();
+            }
+        }
+    }
+
+
+    /**
+     * Make an (element, line) domain with our domain types.
+     *
+     * @param cs the navigation, may be null
+     * @param nEles number of elements
+     * @param nLines number of lines
+     *
+     * @return the domain
+     *
+     * @throws VisADException On badness
+     */
+    protected Set makeDomain(CoordinateSystem cs, int nEles, int nLines)
+            throws VisADException {
+        RealTupleType domainType = ((FunctionType) getType()).getDomain();
+        RealType[]    components = new RealType[domainType.getDimension()];
+        for (int i = 0; i < components.length; i++) {
+            components[i] = (RealType) domainType.getComponent(i);
+        }
+        return new Linear2DSet(new RealTupleType(components, cs, null), 0,
+                               (nEles - 1), nEles, (nLines - 1), 0, nLines);
+    }
+
+
     /**
      * _more_
      *
@@ -667,6 +928,15 @@ public class AreaImageFlatField extends CachedFlatField implements SingleBandedI
         return samples;
     }
 
+    /**
+     * We can read our values again as long as we have a source to read from.
+     *
+     * @return true if readData can be called
+     */
+    protected boolean canReadData() {
+        return aid != null;
+    }
+
     /**
      * Used to provide a hook to derived classes to dynamically read in the data
      *
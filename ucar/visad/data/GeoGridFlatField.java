@@ -255,6 +255,15 @@ public class GeoGridFlatField extends CachedFlatField {
         return coordinateBounds;
     }
 
+    /**
+     * We can read our values again as long as we have a source to read from.
+     *
+     * @return true if readData can be called
+     */
+    protected boolean canReadData() {
+        return geoGrid != null;
+    }
+
     /**
      * Used to provide a hook to derived classes to dynamically read in the data
      *
@@ -0,0 +1,655 @@
+/*
+ * This file is part of McIDAS-V
+ *
+ * Copyright 2007-2025
+ * Space Science and Engineering Center (SSEC)
+ * University of Wisconsin - Madison
+ * 1225 W. Dayton Street, Madison, WI 53706, USA
+ * https://www.ssec.wisc.edu/mcidas/
+ * 
+ * All Rights Reserved
+ * 
+ * McIDAS-V is built on Unidata's IDV and SSEC's VisAD libraries, and
+ * some McIDAS-V source code is based on IDV and VisAD source code.  
+ * 
+ * McIDAS-V is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * McIDAS-V is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/.
+ */
+
+
+package ucar.visad.data;
+
+
+import edu.wisc.ssec.mcidas.AreaFile;
+import edu.wisc.ssec.mcidas.AreaFileFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ucar.unidata.data.imagery.AddeImageDescriptor;
+import ucar.unidata.util.LogUtil;
+
+import visad.*;
+
+import visad.data.CachedFlatField;
+import visad.data.DataCacheManager;
+
+import visad.data.mcidas.AREACoordinateSystem;
+
+import java.lang.ref.Cleaner;
+
+import java.rmi.RemoteException;
+
+
+/**
+ * An {@link AreaImageFlatField} that keeps the raw 1 or 2 byte counts of
+ * the image, plus a table that maps each count to its calibrated value,
+ * rather than 4 byte floats. The floats are made on demand and kept in the
+ * {@link DataCacheManager} as an entry that is dropped first when memory
+ * runs low, so a long loop only pays for the counts of the frames that are
+ * not being looked at.
+ *
+ * <p>Images whose counts do not fit in 2 bytes, and fields whose samples
+ * have been set directly, are handled exactly like an
+ * {@code AreaImageFlatField}.</p>
+ *
+ * <p>Clones share the counts of the field they were made from.</p>
+ */
+public class RawCountImageFlatField extends AreaImageFlatField {
+
+    private static final Logger logger =
+        LoggerFactory.getLogger(RawCountImageFlatField.class);
+
+    /** Removes count stores from the cache when no field uses them */
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    /** Guards reading the counts */
+    private final Object countsMutex = new Object();
+
+    /** The counts, or null if not read yet */
+    private CountStore counts;
+
+    /** The field we were cloned from and share counts with, if not read yet */
+    private RawCountImageFlatField source;
+
+    /** True when the counts can't be used and the floats are the data */
+    private boolean useFloats;
+
+
+    /**
+     * Create a field that reads its counts when first needed.
+     *
+     * @param aid The descriptor
+     * @param type Function type
+     * @param domainSet Domain
+     * @param rangeCoordSys  range CoordSystem
+     * @param rangeSets range sets
+     * @param units units
+     * @param floats The values, if we have them
+     * @param readLabel What to show in the gui when we are reading the data
+     *
+     * @throws VisADException On badness
+     */
+    public RawCountImageFlatField(AddeImageDescriptor aid, FunctionType type,
+                                  Set domainSet,
+                                  CoordinateSystem rangeCoordSys,
+                                  Set[] rangeSets, Unit[] units,
+                                  float[][] floats, String readLabel)
+            throws VisADException {
+        super(aid, type, domainSet, rangeCoordSys, rangeSets, units, floats,
+              readLabel);
+        if (floats != null) {
+            useFloats = true;
+        }
+    }
+
+
+    /**
+     * Clone this object. Unless we are holding floats, the clone shares our
+     * counts rather than copying calibrated values.
+     *
+     * @param copy copy the values
+     * @param type Function type
+     * @param domainSet Domain set
+     * @param rangeCoordSys  range CoordSystem
+     * @param rangeCoordSysArray  rangeCoordSysArray
+     * @param rangeSets range sets
+     * @param units units
+     *
+     * @return New field
+     *
+     * @throws VisADException On badness
+     */
+    public CachedFlatField cloneMe(boolean copy, FunctionType type,
+                                   Set domainSet,
+                                   CoordinateSystem rangeCoordSys,
+                                   CoordinateSystem[] rangeCoordSysArray,
+                                   Set[] rangeSets, Unit[] units)
+            throws VisADException {
+        if (useFloats) {
+            return super.cloneMe(copy, type, domainSet, rangeCoordSys,
+                                 rangeCoordSysArray, rangeSets, units);
+        }
+        RawCountImageFlatField theClone = new RawCountImageFlatField(aid,
+                                              type, domainSet, rangeCoordSys,
+                                              rangeSets, units, null,
+                                              readLabel);
+        synchronized (countsMutex) {
+            if (counts != null) {
+                theClone.counts = counts;
+                theClone.setDomain(getDomainSetNoRead());
+            } else {
+                theClone.source = (source != null)
+                                  ? source
+                                  : this;
+            }
+        }
+        theClone.bandIndices = bandIndices;
+        theClone.startTime   = startTime;
+        theClone.setOffHeap(isOffHeap());
+        theClone.setMetadataMap(getMetadataMap());
+        return theClone;
+    }
+
+
+    /**
+     * Do we have our data, either as counts or as floats.
+     *
+     * @return true if we have the data
+     */
+    public boolean haveData() {
+        return (counts != null) || super.haveData();
+    }
+
+
+    /**
+     * Get the calibrated values, making them from the counts if needed.
+     *
+     * @return the values
+     *
+     * @throws VisADException   problem reading data
+     */
+    protected float[][] getMyValues() throws VisADException {
+        if (useFloats) {
+            return super.getMyValues();
+        }
+        CountStore store = getCounts();
+        if (store != null) {
+            float[][] values = store.getValues();
+            if (values != null) {
+                return values;
+            }
+            // the counts were released out from under us
+            synchronized (countsMutex) {
+                if (counts == store) {
+                    counts = null;
+                }
+            }
+            store = getCounts();
+            if (store != null) {
+                float[][] values2 = store.getValues();
+                if (values2 != null) {
+                    return values2;
+                }
+            }
+        }
+        useFloats = true;
+        return super.getMyValues();
+    }
+
+
+    /**
+     * Get our counts, taking them from the field we were cloned from or
+     * reading them if needed.
+     *
+     * @return the counts, or null if the image can't be held as counts
+     *
+     * @throws VisADException On badness
+     */
+    private CountStore getCounts() throws VisADException {
+        RawCountImageFlatField from;
+        synchronized (countsMutex) {
+            if (counts != null) {
+                return counts;
+            }
+            from = source;
+            source = null;
+        }
+        if (from != null) {
+            CountStore shared = from.getCounts();
+            if (shared != null) {
+                synchronized (countsMutex) {
+                    if (counts == null) {
+                        counts = shared;
+                        setDomain(from.getDomainSetNoRead());
+                    }
+                    return counts;
+                }
+            }
+        }
+        synchronized (countsMutex) {
+            if ((counts == null) && !useFloats && (aid != null)) {
+                counts = readCounts();
+                if (counts == null) {
+                    useFloats = true;
+                }
+            }
+            return counts;
+        }
+    }
+
+
+    /**
+     * Keep the counts of an image that has already been read, rather than
+     * reading them when first needed. If they can't be held the floats
+     * are read when first needed instead.
+     *
+     * @param areaFile the image
+     */
+    void setCounts(AreaFile areaFile) {
+        synchronized (countsMutex) {
+            counts = readCounts(areaFile);
+            if (counts == null) {
+                useFloats = true;
+            }
+        }
+    }
+
+
+    /**
+     * Read the raw counts of our band.
+     *
+     * @return the counts, or null if they don't fit in 2 bytes or the read
+     * failed
+     */
+    private CountStore readCounts() {
+        try {
+            LogUtil.message(readLabel);
+            ucar.unidata.data.DataSourceImpl.incrOutstandingGetDataCalls();
+            String url = (aid.getImageInfo() != null)
+                         ? aid.getImageInfo().makeAddeUrl()
+                         : aid.getSource();
+            return readCounts(AreaFileFactory.getAreaFileInstance(url));
+        } catch (Exception exc) {
+            logger.warn("could not read counts for " + readLabel
+                        + ", reading floats", exc);
+            return null;
+        } finally {
+            ucar.unidata.data.DataSourceImpl.decrOutstandingGetDataCalls();
+            LogUtil.message("");
+        }
+    }
+
+
+    /**
+     * Take the raw counts of our band from an image.
+     *
+     * @param areaFile the image
+     *
+     * @return the counts, or null if they don't fit in 2 bytes or can't be
+     * read
+     */
+    private CountStore readCounts(AreaFile areaFile) {
+        try {
+            int[][][]   data     = areaFile.getData();
+            int[][]     band     = data[(bandIndices != null)
+                                        ? bandIndices[0]
+                                        : 0];
+            int         nLines   = band.length;
+            int         nEles    = band[0].length;
+
+            int         min      = Integer.MAX_VALUE;
+            int         max      = Integer.MIN_VALUE;
+            for (int lineIdx = 0; lineIdx < nLines; lineIdx++) {
+                int[] line = band[lineIdx];
+                for (int elementIdx = 0; elementIdx < nEles; elementIdx++) {
+                    int v = line[elementIdx];
+                    if (v < min) {
+                        min = v;
+                    }
+                    if (v > max) {
+                        max = v;
+                    }
+                }
+            }
+
+            boolean bytes;
+            boolean signed;
+            if ((min >= 0) && (max <= 255)) {
+                bytes  = true;
+                signed = false;
+            } else if ((min >= -128) && (max <= 127)) {
+                bytes  = true;
+                signed = true;
+            } else if ((min >= 0) && (max <= 65535)) {
+                bytes  = false;
+                signed = false;
+            } else if ((min >= -32768) && (max <= 32767)) {
+                bytes  = false;
+                signed = true;
+            } else {
+                logger.debug("counts from {} to {} need floats", min, max);
+                return null;
+            }
+
+            float calScale =
+                (1.0f
+                 / areaFile.getAreaDirectory().getCalibrationScaleFactor());
+            int     size  = bytes
+                            ? 256
+                            : 65536;
+            float[] table = new float[size];
+            for (int i = 0; i < size; i++) {
+                int count = !signed
+                            ? i
+                            : bytes
+                              ? (int) (byte) i
+                              : (int) (short) i;
+                table[i] = calScale * (float) count;
+            }
+
+            DataCacheManager dcm = DataCacheManager.getCacheManager();
+            Object           countsId;
+            if (bytes) {
+                byte[][] packed = new byte[1][nEles * nLines];
+                for (int lineIdx = 0; lineIdx < nLines; lineIdx++) {
+                    int   sampleOffset = (nEles * lineIdx);
+                    int[] line         = band[lineIdx];
+                    for (int elementIdx = 0; elementIdx < nEles;
+                            elementIdx++) {
+                        packed[0][elementIdx + sampleOffset] =
+                            (byte) line[elementIdx];
+                    }
+                }
+                countsId = dcm.addToCache("image counts", packed);
+            } else {
+                short[][] packed = new short[1][nEles * nLines];
+                for (int lineIdx = 0; lineIdx < nLines; lineIdx++) {
+                    int   sampleOffset = (nEles * lineIdx);
+                    int[] line         = band[lineIdx];
+                    for (int elementIdx = 0; elementIdx < nEles;
+                            elementIdx++) {
+                        packed[0][elementIdx + sampleOffset] =
+                            (short) line[elementIdx];
+                    }
+                }
+                countsId = dcm.addToCache("image counts", packed);
+            }
+
+            setDomain(makeNavigatedDomain(areaFile, nEles, nLines));
+            return new CountStore(countsId, bytes, table);
+        } catch (Exception exc) {
+            logger.warn("could not read counts for " + readLabel
+                        + ", reading floats", exc);
+            return null;
+        }
+    }
+
+
+    /**
+     * Make the navigated (element, line) domain for the image we read.
+     *
+     * @param areaFile the image
+     * @param nEles number of elements
+     * @param nLines number of lines
+     *
+     * @return the domain
+     *
+     * @throws VisADException On badness
+     */
+    private Set makeNavigatedDomain(AreaFile areaFile, int nEles, int nLines)
+            throws VisADException {
+        CoordinateSystem cs = null;
+        try {
+            cs = new AREACoordinateSystem(areaFile);
+        } catch (Exception exc) {
+            logger.warn("could not navigate " + readLabel, exc);
+        }
+        return makeDomain(cs, nEles, nLines);
+    }
+
+
+    /**
+     * Set the samples. Once set the floats are our data and the counts are
+     * no longer used.
+     *
+     * @param values the samples
+     * @param errors errors
+     * @param copy   tru to copy
+     *
+     * @throws RemoteException Java RMI Exception
+     * @throws VisADException  Problem in VisAD land
+     */
+    public void setSamples(float[][] values, ErrorEstimate[] errors,
+                           boolean copy)
+            throws VisADException, RemoteException {
+        synchronized (countsMutex) {
+            useFloats = true;
+            counts    = null;
+            source    = null;
+        }
+        super.setSamples(values, errors, copy);
+    }
+
+
+    /**
+     * Release our counts, and any calibrated values made from them, now.
+     * They are read again if the field is used later. Clones that share the
+     * counts read them again too.
+     *
+     * @return true if anything was released
+     */
+    public boolean release() {
+        CountStore store;
+        synchronized (countsMutex) {
+            store  = counts;
+            counts = null;
+            if (aid != null) {
+                useFloats = false;
+            }
+        }
+        boolean released = super.release();
+        if (store != null) {
+            store.release();
+            return true;
+        }
+        return released;
+    }
+
+
+    /**
+     * Get the table that maps each count to its calibrated value. Counts are
+     * used as unsigned indices.
+     *
+     * @return the table or null if we are not holding counts
+     */
+    public float[] getCalibrationTable() {
+        CountStore store = counts;
+        return (store != null)
+               ? store.table
+               : null;
+    }
+
+
+    /**
+     * Replace the table that maps each count to its calibrated value.
+     * Clones that share our counts see the new table too.
+     *
+     * @param table the table, 256 entries for 1 byte counts and 65536 for
+     *              2 byte counts
+     *
+     * @return false if we are not holding counts or the table is the wrong
+     *         size
+     */
+    public boolean setCalibrationTable(float[] table) {
+        CountStore store = counts;
+        if ((store == null) || (table == null)
+                || (table.length != store.table.length)) {
+            return false;
+        }
+        store.setTable(table);
+        return true;
+    }
+
+
+    /**
+     * The counts of an image and the table that calibrates them. Shared by
+     * a field and its clones.
+     */
+    private static final class CountStore {
+
+        /** The cache entries. Removed when no field uses this store */
+        private final Entries entries;
+
+        /** 1 byte counts if true, 2 byte if false */
+        private final boolean bytes;
+
+        /** count to value */
+        private volatile float[] table;
+
+        /**
+         * Create the store
+         *
+         * @param countsId cache id of the counts
+         * @param bytes true for 1 byte counts
+         * @param table calibration table
+         */
+        CountStore(Object countsId, boolean bytes, float[] table) {
+            this.entries = new Entries(countsId);
+            this.bytes   = bytes;
+            this.table   = table;
+            CLEANER.register(this, entries);
+        }
+
+        /**
+         * Get the calibrated values, from the cache if they are still there.
+         *
+         * @return values, or null if the counts have been released
+         */
+        float[][] getValues() {
+            DataCacheManager dcm      = DataCacheManager.getCacheManager();
+            Object           floatsId = entries.floatsId;
+            if (floatsId != null) {
+                float[][] values = dcm.getFloatArray2D(floatsId);
+                if (values != null) {
+                    return values;
+                }
+            }
+            Object countsId = entries.countsId;
+            if (countsId == null) {
+                return null;
+            }
+            float[]   lut = table;
+            float[][] values;
+            if (bytes) {
+                byte[][] raw = dcm.getByteArray2D(countsId);
+                if (raw == null) {
+                    return null;
+                }
+                values = new float[raw.length][];
+                for (int i = 0; i < raw.length; i++) {
+                    byte[]  src = raw[i];
+                    float[] dst = new float[src.length];
+                    for (int j = 0; j < src.length; j++) {
+                        dst[j] = lut[src[j] & 0xFF];
+                    }
+                    values[i] = dst;
+                }
+            } else {
+                short[][] raw = dcm.getShortArray2D(countsId);
+                if (raw == null) {
+                    return null;
+                }
+                values = new float[raw.length][];
+                for (int i = 0; i < raw.length; i++) {
+                    short[] src = raw[i];
+                    float[] dst = new float[src.length];
+                    for (int j = 0; j < src.length; j++) {
+                        dst[j] = lut[src[j] & 0xFFFF];
+                    }
+                    values[i] = dst;
+                }
+            }
+            synchronized (entries) {
+                if (entries.floatsId != null) {
+                    dcm.removeFromCache(entries.floatsId);
+                }
+                entries.floatsId = dcm.addToCache("calibrated image", values,
+                                                  true);
+            }
+            return values;
+        }
+
+        /**
+         * Replace the table and drop the values made with the old one
+         *
+         * @param table the new table
+         */
+        void setTable(float[] table) {
+            this.table = table;
+            entries.dropValues();
+        }
+
+        /**
+         * Remove the counts and values from the cache now
+         */
+        void release() {
+            entries.run();
+        }
+    }
+
+
+    /**
+     * Cleaner action for a count store. It must not refer back to the
+     * store, or the store would never become unreachable.
+     */
+    private static final class Entries implements Runnable {
+
+        /** cache id of the counts */
+        volatile Object countsId;
+
+        /** cache id of the calibrated values, which may be dropped */
+        volatile Object floatsId;
+
+        /**
+         * Create the entries
+         *
+         * @param countsId cache id of the counts
+         */
+        Entries(Object countsId) {
+            this.countsId = countsId;
+        }
+
+        /**
+         * Remove the calibrated values from the cache
+         */
+        synchronized void dropValues() {
+            if (floatsId != null) {
+                DataCacheManager.getCacheManager().removeFromCache(floatsId);
+                floatsId = null;
+            }
+        }
+
+        /**
+         * Remove everything from the cache
+         */
+        public synchronized void run() {
+            dropValues();
+            if (countsId != null) {
+                DataCacheManager.getCacheManager().removeFromCache(countsId);
+                countsId = null;
+            }
+        }
+    }
+
+}
@@ -37,6 +37,9 @@ import org.slf4j.LoggerFactory;
 
 import visad.*;
 import visad.util.DataUtility;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.lang.ref.Cleaner;
 import java.rmi.RemoteException;
 
 
@@ -48,12 +51,15 @@ public class CachedFlatField extends FlatField {
     private static final Logger logger =
         LoggerFactory.getLogger(CachedFlatField.class);
 
+    /** Removes the cache entries of fields that have been garbage collected */
+    private static final Cleaner CLEANER = Cleaner.create();
+
     /** the id for this instance */
     private Object cacheId;
 
     private boolean inCache = false;
 
-    /** Mutex */
+    /** Mutex guarding cacheId, inCache and cleanable */
     transient protected Object MUTEX = new Object();
 
 
@@ -65,6 +71,19 @@ public class CachedFlatField extends FlatField {
 
     private  CachedFlatField parent;
 
+    /** Removes our cache entry when we are collected or released */
+    private transient Cleaner.Cleanable cleanable;
+
+    /**
+     * Default for {@link #setOffHeap(boolean)}, from the
+     * visad.data.offheap system property
+     */
+    private static final boolean DEFAULT_OFF_HEAP =
+        Boolean.getBoolean("visad.data.offheap");
+
+    /** Keep our values off the Java heap when they are not in use */
+    private boolean offHeap = DEFAULT_OFF_HEAP;
+
     /**
      * Create a new CachedFlatField
      *
@@ -175,6 +194,7 @@ public class CachedFlatField extends FlatField {
 
         this.ranges       = that.ranges;
         this.sampleRanges = that.sampleRanges;
+        this.offHeap      = that.offHeap;
         this.cacheId =  null;
         this.inCache = false;
 
@@ -234,15 +254,64 @@ public class CachedFlatField extends FlatField {
 
 
 
-    public void finalize() throws Throwable {
-        super.finalize();
-        //        System.err.println("CachedFlatField.finalize");
-        if(cacheId!=null) {
+    /**
+     * Cleaner action for a cache entry. It must not refer back to the
+     * field, or the field would never become unreachable.
+     */
+    private static class CacheRelease implements Runnable {
+
+        /** the cache id */
+        private final Object cacheId;
+
+        CacheRelease(Object cacheId) {
+            this.cacheId = cacheId;
+        }
+
+        public void run() {
             DataCacheManager.getCacheManager().removeFromCache(cacheId);
         }
     }
 
 
+    /**
+     * Remove our entry, and its spill file, from the DataCacheManager now
+     * rather than when this field is garbage collected. The values are
+     * read again through {@link #readData()} if the field is used later, so
+     * this only does anything for fields that {@link #canReadData() can
+     * read their data}; for others the cache holds the only copy.
+     *
+     * @return true if the cache entry was released
+     */
+    public boolean release() {
+        Cleaner.Cleanable toClean;
+        synchronized (MUTEX) {
+            if (!canReadData() || (cacheId == null)) {
+                return false;
+            }
+            inCache = false;
+            cacheId = null;
+            toClean = cleanable;
+            cleanable = null;
+        }
+        if (toClean != null) {
+            toClean.clean();
+        }
+        return true;
+    }
+
+
+    /**
+     * Can this field read its values again once they have been
+     * {@link #release() released}? Derived classes that implement
+     * {@link #readData()} return true.
+     *
+     * @return false
+     */
+    protected boolean canReadData() {
+        return false;
+    }
+
+
     /**
      * Set the sample
      *
@@ -267,11 +336,7 @@ public class CachedFlatField extends FlatField {
         }
         setRangeErrors(errors);
         this.getRanges(values);
-        if(inCache) {
-            DataCacheManager.getCacheManager().updateData(cacheId, myFloatValues);
-        } else {
-            initCache(myFloatValues);
-        }
+        initCache(myFloatValues);
 
     }
 
@@ -290,7 +355,9 @@ public class CachedFlatField extends FlatField {
         try {
             //      msg("CCF.clone");
             CachedFlatField ccf = (CachedFlatField) super.clone();
+            ccf.MUTEX = new Object();
             ccf.cacheId = null;
+            ccf.cleanable = null;
             float[][]newValues = ccf.unpackFloats(false);
             ccf.nullRanges();
             ccf.initCache(newValues);
@@ -303,6 +370,32 @@ public class CachedFlatField extends FlatField {
 
 
 
+    /**
+     * Keep the range values in off-heap storage when the DataCacheManager
+     * pushes them out of memory, instead of compressing them or writing
+     * them to disk. The float arrays handed out are then heap copies made
+     * on demand. {@link #release()} frees the storage along with the
+     * cache entry.
+     *
+     * @param offHeap true to store the values off-heap
+     */
+    public void setOffHeap(boolean offHeap) {
+        this.offHeap = offHeap;
+        Object id = cacheId;
+        if (id != null) {
+            DataCacheManager.getCacheManager().setOffHeap(id, offHeap);
+        }
+    }
+
+    /**
+     * Are the range values kept off-heap
+     *
+     * @return true if they are
+     */
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
     /**
      * init
      *
@@ -312,12 +405,18 @@ public class CachedFlatField extends FlatField {
      */
     protected void initCache(float[][] data) throws VisADException {
         if(data!=null) {
-            if(cacheId!=null) {
-                DataCacheManager.getCacheManager().updateData(cacheId, data);
-            } else {
-                cacheId = DataCacheManager.getCacheManager().addToCache(getClass().getSimpleName(), data);
+            synchronized (MUTEX) {
+                if(cacheId!=null) {
+                    DataCacheManager.getCacheManager().updateData(cacheId, data);
+                } else {
+                    cacheId = DataCacheManager.getCacheManager().addToCache(getClass().getSimpleName(), data);
+                    cleanable = CLEANER.register(this, new CacheRelease(cacheId));
+                    if (offHeap) {
+                        DataCacheManager.getCacheManager().setOffHeap(cacheId, true);
+                    }
+                }
+                inCache = true;
             }
-            inCache = true;
         }
         //Read the ranges when we first have data
         if (ranges == null) {
@@ -451,17 +550,25 @@ public class CachedFlatField extends FlatField {
      *
      * @throws VisADException   problem reading data
      */
-    private float[][] getMyValues() throws VisADException {
+    protected float[][] getMyValues() throws VisADException {
         //        msg("CCF - getMyValues " + inCache);
-        if(inCache) {
-            if(cacheId == null) {
+        Object id;
+        synchronized (MUTEX) {
+            if(inCache && (cacheId == null)) {
                 //                msg("CCF - WHoa, inCache=true but no cacheId");
                 return null;
             }
-            return DataCacheManager.getCacheManager().getFloatArray2D(cacheId);
+            id = inCache ? cacheId : null;
         }
-
         float[][] values = null;
+        if(id != null) {
+            values = DataCacheManager.getCacheManager().getFloatArray2D(id);
+            //A concurrent release() may have removed the entry, in which
+            //case fall through and read the data again
+            if(values != null) {
+                return values;
+            }
+        }
 
         //If we don't have the values and we have a ccf that we were cloned from 
         //then read the data from it and clear it out
@@ -491,6 +598,21 @@ public class CachedFlatField extends FlatField {
     }
 
 
+    /**
+     * Restore the transient mutex after deserialization.
+     *
+     * @param in the stream
+     *
+     * @throws IOException problem reading
+     * @throws ClassNotFoundException unknown class in the stream
+     */
+    private void readObject(ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        MUTEX = new Object();
+    }
+
+
 
     /**
      * This gets called to notify derived classes that we jus got the data from the parent ccf
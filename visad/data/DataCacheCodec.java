@@ -0,0 +1,253 @@
+/*
+ * This file is part of McIDAS-V
+ *
+ * Copyright 2007-2025
+ * Space Science and Engineering Center (SSEC)
+ * University of Wisconsin - Madison
+ * 1225 W. Dayton Street, Madison, WI 53706, USA
+ * https://www.ssec.wisc.edu/mcidas/
+ *
+ * All Rights Reserved
+ *
+ * McIDAS-V is built on Unidata's IDV and SSEC's VisAD libraries, and
+ * some McIDAS-V source code is based on IDV and VisAD source code.
+ *
+ * McIDAS-V is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * McIDAS-V is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/.
+ */
+
+package visad.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compresses {@link DataCacheManager} arrays for its in-memory compressed
+ * tier.
+ *
+ * <p>Rows are split into blocks and each block is byte shuffled, all the
+ * first bytes of the elements, then all the second bytes, and so on,
+ * before going through a deflater at its fastest level. Neighbouring
+ * floats in satellite and model fields share sign, exponent and high
+ * mantissa bytes, so shuffled they compress far better than they do
+ * interleaved. The layout of row lengths matches {@link DataCacheFile}.</p>
+ */
+final class DataCacheCodec {
+
+  /** elements shuffled together */
+  private static final int BLOCK_ELEMENTS = 16384;
+
+  private static final int STREAM_BUFFER_SIZE = 1 << 16;
+
+  private DataCacheCodec() {}
+
+  /**
+   * Compress the array.
+   *
+   * @param type  one of the DataCacheManager TYPE_ constants
+   * @param data  the array
+   *
+   * @return the compressed bytes
+   *
+   * @throws IOException On badness
+   */
+  static byte[] compress(int type, Object data) throws IOException {
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+    try {
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(
+        new DeflaterOutputStream(bos, deflater, STREAM_BUFFER_SIZE));
+      writeArray(out, data, DataCacheFile.getRank(type),
+                 DataCacheFile.getKind(type));
+      out.close();
+      return bos.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  /**
+   * Inverse of {@link #compress(int, Object)}.
+   *
+   * @param type  the type the array was compressed with
+   * @param packed  the compressed bytes
+   *
+   * @return the array
+   *
+   * @throws IOException On badness
+   */
+  static Object decompress(int type, byte[] packed) throws IOException {
+    Inflater inflater = new Inflater(true);
+    try {
+      DataInputStream in = new DataInputStream(
+        new InflaterInputStream(new ByteArrayInputStream(packed), inflater,
+                                STREAM_BUFFER_SIZE));
+      return readArray(in, DataCacheFile.getRank(type),
+                       DataCacheFile.getKind(type));
+    } finally {
+      inflater.end();
+    }
+  }
+
+  private static void writeArray(DataOutputStream out, Object data, int rank,
+                                 int kind) throws IOException {
+    if (data == null) {
+      out.writeInt(-1);
+      return;
+    }
+    if (rank > 1) {
+      Object[] rows = (Object[])data;
+      out.writeInt(rows.length);
+      for (Object row : rows) {
+        writeArray(out, row, rank - 1, kind);
+      }
+      return;
+    }
+
+    int length = java.lang.reflect.Array.getLength(data);
+    out.writeInt(length);
+    if (kind == DataCacheFile.KIND_BYTE) {
+      out.write((byte[])data, 0, length);
+      return;
+    }
+
+    int elementSize = DataCacheFile.getElementSize(kind);
+    byte[] block = new byte[Math.min(length, BLOCK_ELEMENTS) * elementSize];
+    for (int offset = 0; offset < length; offset += BLOCK_ELEMENTS) {
+      int n = Math.min(BLOCK_ELEMENTS, length - offset);
+      // byte plane b of element i goes to block[b * n + i]
+      switch (kind) {
+        case DataCacheFile.KIND_DOUBLE: {
+          double[] values = (double[])data;
+          for (int i = 0; i < n; i++) {
+            long bits = Double.doubleToRawLongBits(values[offset + i]);
+            for (int b = 0; b < 8; b++) {
+              block[b * n + i] = (byte)(bits >>> (56 - 8 * b));
+            }
+          }
+          break;
+        }
+        case DataCacheFile.KIND_FLOAT: {
+          float[] values = (float[])data;
+          for (int i = 0; i < n; i++) {
+            int bits = Float.floatToRawIntBits(values[offset + i]);
+            block[i] = (byte)(bits >>> 24);
+            block[n + i] = (byte)(bits >>> 16);
+            block[2 * n + i] = (byte)(bits >>> 8);
+            block[3 * n + i] = (byte)bits;
+          }
+          break;
+        }
+        case DataCacheFile.KIND_INT: {
+          int[] values = (int[])data;
+          for (int i = 0; i < n; i++) {
+            int bits = values[offset + i];
+            block[i] = (byte)(bits >>> 24);
+            block[n + i] = (byte)(bits >>> 16);
+            block[2 * n + i] = (byte)(bits >>> 8);
+            block[3 * n + i] = (byte)bits;
+          }
+          break;
+        }
+        default: {
+          short[] values = (short[])data;
+          for (int i = 0; i < n; i++) {
+            short bits = values[offset + i];
+            block[i] = (byte)(bits >>> 8);
+            block[n + i] = (byte)bits;
+          }
+          break;
+        }
+      }
+      out.write(block, 0, n * elementSize);
+    }
+  }
+
+  private static Object readArray(DataInputStream in, int rank, int kind)
+          throws IOException {
+    int length = in.readInt();
+    if (length < 0) {
+      return null;
+    }
+    if (rank > 1) {
+      Object[] rows = DataCacheFile.newRows(kind, rank, length);
+      for (int i = 0; i < length; i++) {
+        rows[i] = readArray(in, rank - 1, kind);
+      }
+      return rows;
+    }
+
+    Object data = DataCacheFile.newLeaf(kind, length);
+    if (kind == DataCacheFile.KIND_BYTE) {
+      in.readFully((byte[])data);
+      return data;
+    }
+
+    int elementSize = DataCacheFile.getElementSize(kind);
+    byte[] block = new byte[Math.min(length, BLOCK_ELEMENTS) * elementSize];
+    for (int offset = 0; offset < length; offset += BLOCK_ELEMENTS) {
+      int n = Math.min(BLOCK_ELEMENTS, length - offset);
+      in.readFully(block, 0, n * elementSize);
+      switch (kind) {
+        case DataCacheFile.KIND_DOUBLE: {
+          double[] values = (double[])data;
+          for (int i = 0; i < n; i++) {
+            long bits = 0;
+            for (int b = 0; b < 8; b++) {
+              bits = (bits << 8) | (block[b * n + i] & 0xFF);
+            }
+            values[offset + i] = Double.longBitsToDouble(bits);
+          }
+          break;
+        }
+        case DataCacheFile.KIND_FLOAT: {
+          float[] values = (float[])data;
+          for (int i = 0; i < n; i++) {
+            int bits = ((block[i] & 0xFF) << 24)
+                     | ((block[n + i] & 0xFF) << 16)
+                     | ((block[2 * n + i] & 0xFF) << 8)
+                     | (block[3 * n + i] & 0xFF);
+            values[offset + i] = Float.intBitsToFloat(bits);
+          }
+          break;
+        }
+        case DataCacheFile.KIND_INT: {
+          int[] values = (int[])data;
+          for (int i = 0; i < n; i++) {
+            values[offset + i] = ((block[i] & 0xFF) << 24)
+                               | ((block[n + i] & 0xFF) << 16)
+                               | ((block[2 * n + i] & 0xFF) << 8)
+                               | (block[3 * n + i] & 0xFF);
+          }
+          break;
+        }
+        default: {
+          short[] values = (short[])data;
+          for (int i = 0; i < n; i++) {
+            values[offset + i] =
+              (short)(((block[i] & 0xFF) << 8) | (block[n + i] & 0xFF));
+          }
+          break;
+        }
+      }
+    }
+    return data;
+  }
+}
@@ -0,0 +1,366 @@
+/*
+ * This file is part of McIDAS-V
+ *
+ * Copyright 2007-2025
+ * Space Science and Engineering Center (SSEC)
+ * University of Wisconsin - Madison
+ * 1225 W. Dayton Street, Madison, WI 53706, USA
+ * https://www.ssec.wisc.edu/mcidas/
+ *
+ * All Rights Reserved
+ *
+ * McIDAS-V is built on Unidata's IDV and SSEC's VisAD libraries, and
+ * some McIDAS-V source code is based on IDV and VisAD source code.
+ *
+ * McIDAS-V is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * McIDAS-V is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/.
+ */
+
+package visad.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads and writes the spill files of {@link DataCacheManager}.
+ *
+ * <p>A file is a small header followed by the raw primitives, in native
+ * byte order:<pre>
+ *   int magic, int version, int byte order (1 = big endian), int cache type
+ *   then, depth first for each (sub)array:
+ *     int length (-1 for a null row)
+ *     the elements, if this is a row of primitives
+ * </pre>
+ * Reads and writes go through a {@link FileChannel} with a direct buffer,
+ * so neither direction goes through object serialization or holds a second
+ * copy of the array on the heap. Files are not memory mapped: a live
+ * mapping would keep them from being deleted or rewritten on Windows.</p>
+ */
+final class DataCacheFile {
+
+  /** "VDCF" */
+  private static final int MAGIC = 0x56444346;
+
+  private static final int VERSION = 1;
+
+  /** size of the direct buffers used for writing and reading */
+  private static final int BUFFER_SIZE = 1 << 20;
+
+  static final int KIND_DOUBLE = 0;
+  static final int KIND_FLOAT = 1;
+  static final int KIND_INT = 2;
+  static final int KIND_SHORT = 3;
+  static final int KIND_BYTE = 4;
+
+  private DataCacheFile() {}
+
+  /**
+   * Write the array to the file, replacing anything already there.
+   *
+   * @param file  the spill file
+   * @param type  one of the DataCacheManager TYPE_ constants
+   * @param data  the array
+   *
+   * @throws IOException On badness
+   */
+  static void write(File file, int type, Object data) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE)
+                                 .order(ByteOrder.nativeOrder());
+      buf.putInt(MAGIC);
+      buf.putInt(VERSION);
+      buf.putInt(ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? 1 : 0);
+      buf.putInt(type);
+      writeArray(channel, buf, data, getRank(type), getKind(type));
+      flush(channel, buf);
+    }
+  }
+
+  /**
+   * Read back an array written by {@link #write(File, int, Object)}.
+   *
+   * @param file  the spill file
+   * @param type  the type the caller expects
+   *
+   * @return the array
+   *
+   * @throws IOException if the file is unreadable or not of the given type
+   */
+  static Object read(File file, int type) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(),
+            StandardOpenOption.READ)) {
+      Reader reader = new Reader(channel);
+      int magic = reader.readInt();
+      int version = reader.readInt();
+      int bigEndian = reader.readInt();
+      int fileType = reader.readInt();
+      if (magic != MAGIC || version != VERSION) {
+        throw new IOException("Not a data cache file:" + file);
+      }
+      if ((bigEndian == 1) != (ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN)) {
+        throw new IOException("Data cache file has foreign byte order:" + file);
+      }
+      if (fileType != type) {
+        throw new IOException("Data cache file:" + file + " has type "
+                              + fileType + ", expected " + type);
+      }
+      return reader.readArray(getRank(type), getKind(type));
+    }
+  }
+
+  /** Number of array dimensions for the cache type */
+  static int getRank(int type) {
+    switch (type) {
+      case DataCacheManager.TYPE_DOUBLE1D:
+      case DataCacheManager.TYPE_FLOAT1D:
+      case DataCacheManager.TYPE_INT1D:
+      case DataCacheManager.TYPE_SHORT1D:
+      case DataCacheManager.TYPE_BYTE1D:
+        return 1;
+      case DataCacheManager.TYPE_DOUBLE2D:
+      case DataCacheManager.TYPE_FLOAT2D:
+      case DataCacheManager.TYPE_INT2D:
+      case DataCacheManager.TYPE_SHORT2D:
+      case DataCacheManager.TYPE_BYTE2D:
+        return 2;
+      case DataCacheManager.TYPE_DOUBLE3D:
+      case DataCacheManager.TYPE_FLOAT3D:
+      case DataCacheManager.TYPE_INT3D:
+      case DataCacheManager.TYPE_SHORT3D:
+      case DataCacheManager.TYPE_BYTE3D:
+        return 3;
+      default:
+        throw new IllegalArgumentException("Unknown type:" + type);
+    }
+  }
+
+  /** Primitive element kind for the cache type */
+  static int getKind(int type) {
+    switch (type) {
+      case DataCacheManager.TYPE_DOUBLE1D:
+      case DataCacheManager.TYPE_DOUBLE2D:
+      case DataCacheManager.TYPE_DOUBLE3D:
+        return KIND_DOUBLE;
+      case DataCacheManager.TYPE_FLOAT1D:
+      case DataCacheManager.TYPE_FLOAT2D:
+      case DataCacheManager.TYPE_FLOAT3D:
+        return KIND_FLOAT;
+      case DataCacheManager.TYPE_INT1D:
+      case DataCacheManager.TYPE_INT2D:
+      case DataCacheManager.TYPE_INT3D:
+        return KIND_INT;
+      case DataCacheManager.TYPE_SHORT1D:
+      case DataCacheManager.TYPE_SHORT2D:
+      case DataCacheManager.TYPE_SHORT3D:
+        return KIND_SHORT;
+      case DataCacheManager.TYPE_BYTE1D:
+      case DataCacheManager.TYPE_BYTE2D:
+      case DataCacheManager.TYPE_BYTE3D:
+        return KIND_BYTE;
+      default:
+        throw new IllegalArgumentException("Unknown type:" + type);
+    }
+  }
+
+  static int getElementSize(int kind) {
+    switch (kind) {
+      case KIND_DOUBLE: return 8;
+      case KIND_FLOAT:
+      case KIND_INT: return 4;
+      case KIND_SHORT: return 2;
+      default: return 1;
+    }
+  }
+
+  /** Allocate the outer array of a 2D or 3D array, rows left null */
+  static Object[] newRows(int kind, int rank, int length) {
+    switch (kind) {
+      case KIND_DOUBLE:
+        return (rank == 2) ? new double[length][] : new double[length][][];
+      case KIND_FLOAT:
+        return (rank == 2) ? new float[length][] : new float[length][][];
+      case KIND_INT:
+        return (rank == 2) ? new int[length][] : new int[length][][];
+      case KIND_SHORT:
+        return (rank == 2) ? new short[length][] : new short[length][][];
+      default:
+        return (rank == 2) ? new byte[length][] : new byte[length][][];
+    }
+  }
+
+  /** Allocate a row of primitives */
+  static Object newLeaf(int kind, int length) {
+    switch (kind) {
+      case KIND_DOUBLE: return new double[length];
+      case KIND_FLOAT: return new float[length];
+      case KIND_INT: return new int[length];
+      case KIND_SHORT: return new short[length];
+      default: return new byte[length];
+    }
+  }
+
+  private static void flush(FileChannel channel, ByteBuffer buf)
+          throws IOException {
+    buf.flip();
+    while (buf.hasRemaining()) {
+      channel.write(buf);
+    }
+    buf.clear();
+  }
+
+  private static void writeInt(FileChannel channel, ByteBuffer buf, int value)
+          throws IOException {
+    if (buf.remaining() < 4) {
+      flush(channel, buf);
+    }
+    buf.putInt(value);
+  }
+
+  private static void writeArray(FileChannel channel, ByteBuffer buf,
+                                 Object data, int rank, int kind)
+          throws IOException {
+    if (data == null) {
+      writeInt(channel, buf, -1);
+      return;
+    }
+    if (rank > 1) {
+      Object[] rows = (Object[])data;
+      writeInt(channel, buf, rows.length);
+      for (Object row : rows) {
+        writeArray(channel, buf, row, rank - 1, kind);
+      }
+      return;
+    }
+
+    int length = java.lang.reflect.Array.getLength(data);
+    writeInt(channel, buf, length);
+    int elementSize = getElementSize(kind);
+    int offset = 0;
+    while (offset < length) {
+      if (buf.remaining() < elementSize) {
+        flush(channel, buf);
+      }
+      int n = Math.min(length - offset, buf.remaining() / elementSize);
+      // the typed views don't move the byte buffer, so advance it ourselves
+      switch (kind) {
+        case KIND_DOUBLE:
+          buf.asDoubleBuffer().put((double[])data, offset, n);
+          buf.position(buf.position() + n * elementSize);
+          break;
+        case KIND_FLOAT:
+          buf.asFloatBuffer().put((float[])data, offset, n);
+          buf.position(buf.position() + n * elementSize);
+          break;
+        case KIND_INT:
+          buf.asIntBuffer().put((int[])data, offset, n);
+          buf.position(buf.position() + n * elementSize);
+          break;
+        case KIND_SHORT:
+          buf.asShortBuffer().put((short[])data, offset, n);
+          buf.position(buf.position() + n * elementSize);
+          break;
+        default:
+          buf.put((byte[])data, offset, n);
+          break;
+      }
+      offset += n;
+    }
+  }
+
+  /**
+   * Reads the file front to back through a direct buffer, bulk copying
+   * rows out of it.
+   */
+  private static class Reader {
+
+    private final FileChannel channel;
+
+    private final ByteBuffer buf;
+
+    Reader(FileChannel channel) {
+      this.channel = channel;
+      buf = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.nativeOrder());
+      buf.limit(0);
+    }
+
+    /** make sure at least numBytes are buffered */
+    private void fill(int numBytes) throws IOException {
+      if (buf.remaining() >= numBytes) {
+        return;
+      }
+      buf.compact();
+      while (buf.position() < numBytes) {
+        if (channel.read(buf) < 0) {
+          throw new IOException("Truncated data cache file");
+        }
+      }
+      buf.flip();
+    }
+
+    int readInt() throws IOException {
+      fill(4);
+      return buf.getInt();
+    }
+
+    Object readArray(int rank, int kind) throws IOException {
+      int length = readInt();
+      if (length < 0) {
+        return null;
+      }
+      if (rank > 1) {
+        Object[] rows = newRows(kind, rank, length);
+        for (int i = 0; i < length; i++) {
+          rows[i] = readArray(rank - 1, kind);
+        }
+        return rows;
+      }
+
+      Object data = newLeaf(kind, length);
+      int elementSize = getElementSize(kind);
+      int offset = 0;
+      while (offset < length) {
+        fill(elementSize);
+        int n = Math.min(length - offset, buf.remaining() / elementSize);
+        // the typed views don't move the byte buffer, so advance it ourselves
+        switch (kind) {
+          case KIND_DOUBLE:
+            buf.asDoubleBuffer().get((double[])data, offset, n);
+            break;
+          case KIND_FLOAT:
+            buf.asFloatBuffer().get((float[])data, offset, n);
+            break;
+          case KIND_INT:
+            buf.asIntBuffer().get((int[])data, offset, n);
+            break;
+          case KIND_SHORT:
+            buf.asShortBuffer().get((short[])data, offset, n);
+            break;
+          default:
+            buf.get((byte[])data, offset, n);
+            break;
+        }
+        if (kind != KIND_BYTE) {
+          buf.position(buf.position() + n * elementSize);
+        }
+        offset += n;
+      }
+      return data;
+    }
+  }
+}
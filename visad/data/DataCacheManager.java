@@ -28,20 +28,16 @@
 
 package visad.data;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
-import java.util.Enumeration;
-import java.util.Hashtable;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -74,52 +70,120 @@ import org.slf4j.LoggerFactory;
  * </pre>
  *
  * The cachemanager will keep the data arrays in memory until the total size
- * is greater than getMaxSize(). Then it will serialize the data arrays in a
+ * is greater than getMaxBytes(). Then it will serialize the data arrays in a
  * least recently used manner until the totalSize less than the max size.
+ *
+ * <p>Arrays pushed out of memory first go to a compressed tier, still in
+ * memory, of up to getMaxCompressedSize() bytes. Only when that fills up are
+ * its least recently used entries written to disk. Arrays that don't
+ * compress well go straight to disk. Set the compressed percentage to 0 to
+ * turn the tier off.</p>
+ *
+ * <p>Entries marked off-heap with {@link #setOffHeap(Object, boolean)} are
+ * pushed out of memory into direct buffers instead, see
+ * {@link DataCacheOffHeap}. The heap arrays are then only views, recreated
+ * by a bulk copy when the data is next read and dropped again on eviction,
+ * so very large fields don't stay on the collected heap. Off-heap storage
+ * has its own budget of getMaxOffHeapSize() bytes; its least recently used
+ * entries are written to disk when it fills up, and entries go to disk
+ * directly if native memory can't be allocated.</p>
+ *
+ * <p>Entries are held in a concurrent map and each entry guards its own
+ * state, so there is no global lock on the access path; only threads that
+ * find the cache over budget line up to evict. In-memory entries
+ * are also kept in access order, keyed by a stamp that is renewed on every
+ * access, so the least recently used entry is always the first one. The
+ * size is checked whenever data is added, updated or read back from disk.</p>
  */
-public class DataCacheManager  implements Runnable {
+public class DataCacheManager implements Runnable {
   
   private static final Logger logger =
       LoggerFactory.getLogger(DataCacheManager.class);
   
-  private double memoryPercentage = 0.25;
+  private volatile double memoryPercentage = 0.25;
+
+  /** share of max memory for the compressed tier */
+  private volatile double compressedPercentage = 0.10;
+
+  /** share of max memory for off-heap storage */
+  private volatile double offHeapPercentage = 0.5;
+
+  /** use the compressed tier only if it at least saves this much */
+  private static final double MAX_COMPRESSED_RATIO = 0.8;
 
   /** the singleton */
-  private static DataCacheManager cacheManager;
+  private static volatile DataCacheManager cacheManager;
 
   /** Where to store the cached data */
-  private File cacheDir;
+  private volatile File cacheDir;
 
   /** for unique ids */
-  private int idCnt = 0;
+  private final AtomicLong idCnt = new AtomicLong();
 
   /** for unique ids */
   private long baseTime;
 
   /** The cache */
-  private Hashtable<Object, CacheInfo> cache = new Hashtable<Object,
-                                                 CacheInfo>();
+  private final Map<Object, CacheInfo> cache =
+      new ConcurrentHashMap<Object, CacheInfo>();
+
+  /** in-memory entries that can simply be dropped, least recently used first */
+  private final ConcurrentSkipListMap<Long, CacheInfo> volatileLru =
+      new ConcurrentSkipListMap<Long, CacheInfo>();
+
+  /** in-memory entries that get written to disk, least recently used first */
+  private final ConcurrentSkipListMap<Long, CacheInfo> lru =
+      new ConcurrentSkipListMap<Long, CacheInfo>();
+
+  /** compressed entries, least recently used first */
+  private final ConcurrentSkipListMap<Long, CacheInfo> compressedLru =
+      new ConcurrentSkipListMap<Long, CacheInfo>();
+
+  /** entries held off-heap, least recently used first */
+  private final ConcurrentSkipListMap<Long, CacheInfo> offHeapLru =
+      new ConcurrentSkipListMap<Long, CacheInfo>();
 
-  /** a mutex */
-  private final Object MUTEX = new Object();
+  /** source of the access stamps that order the lru maps */
+  private final AtomicLong accessClock = new AtomicLong();
 
   /** Total number of bytes in memory */
-  private int totalSize = 0;
+  private final AtomicLong totalSize = new AtomicLong();
+
+  /** Total number of compressed bytes in memory */
+  private final AtomicLong compressedSize = new AtomicLong();
+
+  /** only one thread evicts at a time, the others over budget wait for it */
+  private final Object evictLock = new Object();
+
+  /** reads served from memory */
+  private final AtomicLong hitCount = new AtomicLong();
+
+  /** reads served from the compressed tier */
+  private final AtomicLong compressedHitCount = new AtomicLong();
+
+  /** reads served from disk */
+  private final AtomicLong missCount = new AtomicLong();
+
+  /** entries pushed out of memory */
+  private final AtomicLong evictionCount = new AtomicLong();
+
+  /** reads served from off-heap storage */
+  private final AtomicLong offHeapHitCount = new AtomicLong();
+
+  /** Total number of bytes held off the heap */
+  private final AtomicLong offHeapSize = new AtomicLong();
+
+  /** bytes written to cache files */
+  private final AtomicLong bytesWritten = new AtomicLong();
 
-  private boolean running = false;
+  /** bytes read from cache files */
+  private final AtomicLong bytesRead = new AtomicLong();
 
   /**
    * ctor
    */
   private DataCacheManager() {
     baseTime = System.currentTimeMillis();
-    try {
-      //Start  the cache monitor in a thread
-      Thread t = new Thread(this);
-      t.start();
-    } catch(Exception exc) {
-      throw new RuntimeException(exc);
-    }
   }
 
   /**
@@ -129,23 +193,23 @@ public class DataCacheManager  implements Runnable {
    */
   public static DataCacheManager getCacheManager() {
     if (cacheManager == null) {
-      cacheManager = new DataCacheManager();
+      synchronized (DataCacheManager.class) {
+        if (cacheManager == null) {
+          cacheManager = new DataCacheManager();
+        }
+      }
     }
     return cacheManager;
   }
 
+  /**
+   * Used to be the 5 second polling loop. The size is now checked whenever
+   * data is added, updated or read back, so this does nothing.
+   *
+   * @deprecated there is no polling thread any more
+   */
+  @Deprecated
   public void run() {
-    if(running) return;
-    running= true;
-    try {
-      while (true) {
-        Thread.currentThread().sleep(5000);
-        checkCache();
-      }
-    } catch(Exception exc) {
-      logger.error("Error in DataCacheManager", exc);
-    }
-    running =false;
   }
 
   /**
@@ -175,7 +239,7 @@ public class DataCacheManager  implements Runnable {
    * @return unique id
    */
   public Object getId() {
-    return "data_" + baseTime + "_" + (idCnt++);
+    return "data_" + baseTime + "_" + idCnt.getAndIncrement();
   }
 
   /**
@@ -187,16 +251,15 @@ public class DataCacheManager  implements Runnable {
    * @return the unique id
    */
   private Object addToCache(String what, Object data, int type, boolean removeIfNeeded) {
-    synchronized (MUTEX) {
-      CacheInfo info = new CacheInfo(this, getId(), data, type, removeIfNeeded);
-      if (what != null) {
-        info.what = what;
-      }
-      cache.put(info.getId(), info);
-      totalSize += info.getSize();
-      checkCache();
-      return info.getId();
+    CacheInfo info = new CacheInfo(this, getId(), data, type, removeIfNeeded);
+    if (what != null) {
+      info.what = what;
     }
+    cache.put(info.getId(), info);
+    totalSize.addAndGet(info.getSize());
+    touch(info);
+    checkCache();
+    return info.getId();
   }
 
   /**
@@ -206,34 +269,27 @@ public class DataCacheManager  implements Runnable {
    * @param data  the new data
    */
   public void updateData(Object cacheId, Object data) {
-    synchronized (MUTEX) {
-      //      if(cacheId == null)
-      //          return addToCache(data, findType(data));
-      CacheInfo info = cache.get(cacheId);
-//      if(info==null) {
-//        return addToCache(data);
-//      }
-
-      int oldSize = info.data != null
+    CacheInfo info = cache.get(cacheId);
+    synchronized (info) {
+      long oldSize = info.data != null
                   ? info.getSize()
                   : 0;
+      dropCompressed(info);
+      dropOffHeap(info);
       info.setData(data);
-      int newSize = info.getSize();
-      totalSize -= oldSize;
-      totalSize += newSize;
-      checkCache();
+      totalSize.addAndGet(info.getSize() - oldSize);
     }
+    touch(info);
+    checkCache();
   }
 
   public boolean inMemory(Object cacheId) {
-    synchronized (MUTEX) {
-      CacheInfo info =  cache.get(cacheId);
-      if (info == null) {
-        return false;
-      }
-      info.dataAccessed();
-      return (info.data!=null);
+    CacheInfo info =  cache.get(cacheId);
+    if (info == null) {
+      return false;
     }
+    touch(info);
+    return (info.data!=null);
   }
 
   /**
@@ -244,40 +300,84 @@ public class DataCacheManager  implements Runnable {
    * @return
    */
   private Object getData(Object cacheId) {
-    CacheInfo info = null;
-    Object data = null;
-    synchronized (MUTEX) {
-      info = cache.get(cacheId);
-      if (info == null) {
-        return null;
-      }
+    CacheInfo info = cache.get(cacheId);
+    if (info == null) {
+      return null;
+    }
+    Object data = info.data;
+    if (data != null) {
+      hitCount.incrementAndGet();
+      touch(info);
+      return data;
+    }
+    synchronized (info) {
       data = info.data;
-      info.dataAccessed();
-      if (data != null) {
-        return data;
+      if (data == null) {
+        if (info.removed) {
+          return null;
+        }
+        try {
+          long t1 = System.currentTimeMillis();
+          if (info.compressed != null) {
+            data = DataCacheCodec.decompress(info.type, info.compressed);
+            dropCompressed(info);
+            info.setDataFromCache(data);
+            info.compressedHit();
+            compressedHitCount.incrementAndGet();
+            long t2 = System.currentTimeMillis();
+            logger.debug("Decompressed {} bytes in {} ms", info.getSize(), (t2-t1));
+          } else if (info.offHeapData != null) {
+            // the off-heap copy stays as the backing store
+            data = DataCacheOffHeap.load(info.type, info.offHeapData);
+            info.setDataFromCache(data);
+            touchOffHeap(info);
+            offHeapHitCount.incrementAndGet();
+          } else {
+            info.setDataFromCache(data = DataCacheFile.read(info.cacheFile, info.type));
+            long t2 = System.currentTimeMillis();
+            logger.debug("Read {} bytes from file in {} ms", info.getSize(), (t2-t1));
+            info.cacheMissed();
+            missCount.incrementAndGet();
+            bytesRead.addAndGet(info.getSize());
+          }
+          totalSize.addAndGet(info.getSize());
+        }
+        catch (Exception exc) {
+          throw new RuntimeException(exc);
+        }
       }
-      try {
-        long t1 = System.currentTimeMillis();
-        FileInputStream fis = new FileInputStream(info.cacheFile);
-        BufferedInputStream bis = new BufferedInputStream(fis,100000);
-        ObjectInputStream ois = new ObjectInputStream(bis);
-        info.setDataFromCache(data = ois.readObject());
-        long t2 = System.currentTimeMillis();
-        System.err.println("Read " + info.getSize() +" bytes from file in " + (t2-t1) +" ms");
-        totalSize += info.getSize();
-        ois.close();
-        bis.close();
-        fis.close();
-        checkCache();
-        info.cacheMissed();
-        return data;
+    }
+    touch(info);
+    checkCache();
+    return data;
+  }
+
+  /**
+   * Record an access. The entry gets a new stamp, moving it to the most
+   * recently used end of its lru map if it is in memory.
+   *
+   * @param info  the cacheinfo
+   */
+  private void touch(CacheInfo info) {
+    info.dataAccessed();
+    long stamp = accessClock.incrementAndGet();
+    synchronized (info) {
+      ConcurrentSkipListMap<Long, CacheInfo> order = getLru(info);
+      if (info.lruStamp != 0) {
+        order.remove(info.lruStamp, info);
+        info.lruStamp = 0;
       }
-      catch (Exception exc) {
-        throw new RuntimeException(exc);
+      if (info.data != null && !info.removed) {
+        info.lruStamp = stamp;
+        order.put(stamp, info);
       }
     }
   }
 
+  private ConcurrentSkipListMap<Long, CacheInfo> getLru(CacheInfo info) {
+    return info.removeIfNeeded ? volatileLru : lru;
+  }
+
   public  File getCacheFile() {
     return new File(getCacheDir() + "/" + getId() + ".dat");
   }
@@ -288,9 +388,7 @@ public class DataCacheManager  implements Runnable {
    * @param cacheId  the cache id
    */
   public void removeFromCache(Object cacheId) {
-    synchronized (MUTEX) {
-      removeFromCache(cache.get(cacheId));
-    }
+    removeFromCache(cache.get(cacheId));
   }
 
 
@@ -298,23 +396,29 @@ public class DataCacheManager  implements Runnable {
     if (info == null) {
       return;
     }
-    synchronized (MUTEX) {
+    synchronized (info) {
       if (info.data != null) {
         info.data = null;
-        totalSize -= info.getSize();
+        totalSize.addAndGet(-info.getSize());
+      }
+      if (info.lruStamp != 0) {
+        getLru(info).remove(info.lruStamp, info);
+        info.lruStamp = 0;
       }
+      dropCompressed(info);
+      dropOffHeap(info);
+      info.removed = true;
       cache.remove(info.id);
       info.remove();
     }
   }
 
   public void flushAllCachedData() {
-    synchronized (MUTEX) {
-      for (CacheInfo info : getCacheInfos()) {
-        flushCachedData(info);
-      }
-      Runtime.getRuntime().gc();
+    for (CacheInfo info : getCacheInfos()) {
+      flushCachedData(info, true);
+      spillOffHeap(info);
     }
+    Runtime.getRuntime().gc();
   }
 
   /**
@@ -324,61 +428,378 @@ public class DataCacheManager  implements Runnable {
    * {@link Runtime#gc()}.</p>
    */
   public void clearCache() {
-    synchronized (MUTEX) {
-      for (CacheInfo info : getCacheInfos()) {
+    for (CacheInfo info : getCacheInfos()) {
+      removeFromCache(info);
+    }
+  }
+
+  /**
+   * Remove least recently used volatile entries, the ones their owners can
+   * recreate, until at least the given number of bytes has been freed.
+   *
+   * @param bytes  how much to free
+   *
+   * @return the number of bytes freed
+   */
+  public long dropVolatile(long bytes) {
+    long freed = 0;
+    while (freed < bytes) {
+      Map.Entry<Long, CacheInfo> first = volatileLru.pollFirstEntry();
+      if (first == null) {
+        break;
+      }
+      CacheInfo info = first.getValue();
+      synchronized (info) {
+        // touched since it was polled; it is back in the map
+        if (info.lruStamp != first.getKey()) {
+          continue;
+        }
+        long size = (info.data != null) ? info.getSize() : 0;
         removeFromCache(info);
+        if (size > 0) {
+          evictionCount.incrementAndGet();
+        }
+        freed += size;
+      }
+    }
+    return freed;
+  }
+
+  /**
+   * Move least recently used entries into the compressed tier, ignoring its
+   * size limit, until at least the given number of bytes has been freed.
+   * Entries that don't compress well go to disk instead.
+   *
+   * @param bytes  how much to free
+   *
+   * @return the number of bytes freed, net of the compressed copies
+   */
+  public long compressInMemory(long bytes) {
+    long freed = 0;
+    while (freed < bytes) {
+      Map.Entry<Long, CacheInfo> first = lru.pollFirstEntry();
+      if (first == null) {
+        break;
+      }
+      CacheInfo info = first.getValue();
+      synchronized (info) {
+        // touched since it was polled; it is back in the map
+        if (info.lruStamp != first.getKey()) {
+          continue;
+        }
+        info.lruStamp = 0;
+        if (info.data == null) {
+          continue;
+        }
+        long size = info.getSize();
+        flushCachedData(info, false);
+        freed += size - ((info.compressed != null) ? info.compressed.length : 0);
+      }
+    }
+    return freed;
+  }
+
+  /**
+   * Write compressed entries, then in-memory ones, to disk, least recently
+   * used first, until at least the given number of bytes has been freed.
+   *
+   * @param bytes  how much to free
+   *
+   * @return the number of bytes freed
+   */
+  public long spillToDisk(long bytes) {
+    long freed = 0;
+    while (freed < bytes) {
+      Map.Entry<Long, CacheInfo> first = compressedLru.pollFirstEntry();
+      if (first == null) {
+        break;
+      }
+      CacheInfo info = first.getValue();
+      synchronized (info) {
+        // compressed again since it was polled; it is back in the map
+        if (info.compressedStamp != first.getKey()) {
+          continue;
+        }
+        long size = (info.compressed != null) ? info.compressed.length : 0;
+        spillCompressed(info);
+        freed += size;
+      }
+    }
+    while (freed < bytes) {
+      Map.Entry<Long, CacheInfo> first = lru.pollFirstEntry();
+      if (first == null) {
+        break;
+      }
+      CacheInfo info = first.getValue();
+      synchronized (info) {
+        // touched since it was polled; it is back in the map
+        if (info.lruStamp != first.getKey()) {
+          continue;
+        }
+        info.lruStamp = 0;
+        if (info.data == null) {
+          continue;
+        }
+        long size = info.getSize();
+        flushCachedData(info, true);
+        freed += size;
       }
     }
+    return freed;
   }
 
   /**
-   * If this cacheinfo has never been written to disk then write it
-   * null out the data reference
+   * Write least recently used off-heap entries to disk until at least the
+   * given number of bytes of native memory has been freed.
+   *
+   * @param bytes  how much to free
+   *
+   * @return the number of off-heap bytes freed
+   */
+  public long spillOffHeap(long bytes) {
+    long freed = 0;
+    while (freed < bytes) {
+      Map.Entry<Long, CacheInfo> first = offHeapLru.pollFirstEntry();
+      if (first == null) {
+        break;
+      }
+      CacheInfo info = first.getValue();
+      synchronized (info) {
+        // touched since it was polled; it is back in the map
+        if (info.offHeapStamp != first.getKey()) {
+          continue;
+        }
+        info.offHeapStamp = 0;
+        freed += spillOffHeap(info);
+      }
+    }
+    return freed;
+  }
+
+  /**
+   * Move an off-heap entry to disk, writing the file if needed. If the
+   * array is in memory the off-heap copy is only dropped.
    *
    * @param info  the cacheinfo
+   *
+   * @return the number of off-heap bytes freed
    */
-  private void flushCachedData(CacheInfo info) {
+  private long spillOffHeap(CacheInfo info) {
+    try {
+      synchronized (info) {
+        if (info.offHeapData == null) {
+          return 0;
+        }
+        long size = DataCacheOffHeap.sizeOf(info.offHeapData);
+        // with the array in memory it may still be edited in place, so the
+        // copy is just dropped and the array is written when it is flushed
+        if (info.data == null && !info.cacheFileGood) {
+          Object data = DataCacheOffHeap.load(info.type, info.offHeapData);
+          DataCacheFile.write(info.cacheFile, info.type, data);
+          info.cacheFileGood = true;
+          bytesWritten.addAndGet(info.getSize());
+        }
+        dropOffHeap(info);
+        return size;
+      }
+    } catch (Exception exc) {
+      throw new RuntimeException(exc);
+    }
+  }
+
+  /**
+   * Renew an off-heap entry's place in the off-heap lru map. Caller holds
+   * the info's monitor.
+   *
+   * @param info  the cacheinfo
+   */
+  private void touchOffHeap(CacheInfo info) {
+    if (info.offHeapStamp != 0) {
+      offHeapLru.remove(info.offHeapStamp, info);
+    }
+    info.offHeapStamp = accessClock.incrementAndGet();
+    offHeapLru.put(info.offHeapStamp, info);
+  }
+
+  /**
+   * Push the data out of memory. Volatile entries are removed. Off-heap
+   * entries are copied into direct buffers unless going to disk, there is no
+   * room under the off-heap budget or native memory runs out. Others are
+   * compressed into the compressed tier if it is on and they compress well,
+   * or else written to disk if they have never been written.
+   *
+   * @param info  the cacheinfo
+   * @param toDisk  skip the compressed tier and off-heap storage
+   */
+  private void flushCachedData(CacheInfo info, boolean toDisk) {
     try {
       if (info.removeIfNeeded) {
+        if (info.data != null) {
+          evictionCount.incrementAndGet();
+        }
         removeFromCache(info);
         return;
       }
 
-      if (info.data == null) {
-        return;
+      synchronized (info) {
+        if (info.data == null) {
+          if (toDisk) {
+            spillCompressed(info);
+          }
+          return;
+        }
+
+        // the array may have been edited in place since it was loaded
+        if (info.offHeapData != null && !toDisk
+            && !DataCacheOffHeap.update(info.type, info.offHeapData, info.data)) {
+          dropOffHeap(info);
+        }
+
+        if (info.offHeap && !toDisk && info.offHeapData == null
+            && info.getSize() <= getMaxOffHeapSize()) {
+          try {
+            info.offHeapData = DataCacheOffHeap.store(info.type, info.data);
+            offHeapSize.addAndGet(DataCacheOffHeap.sizeOf(info.offHeapData));
+            touchOffHeap(info);
+          } catch (OutOfMemoryError oom) {
+            logger.warn("no native memory for {} bytes off-heap, writing to disk", info.getSize());
+          }
+        }
+
+        if (info.offHeapData != null && !toDisk) {
+          evictionCount.incrementAndGet();
+          info.data = null;
+          totalSize.addAndGet(-info.getSize());
+          if (info.lruStamp != 0) {
+            lru.remove(info.lruStamp, info);
+            info.lruStamp = 0;
+          }
+          return;
+        }
+
+        // off-heap entries that couldn't be stored go straight to disk
+        byte[] packed = null;
+        if (!toDisk && !info.offHeap && compressedPercentage > 0) {
+          packed = DataCacheCodec.compress(info.type, info.data);
+          if (packed.length > MAX_COMPRESSED_RATIO * info.getSize()) {
+            packed = null;
+          }
+        }
+
+        if (packed != null) {
+          info.compressed = packed;
+          compressedSize.addAndGet(packed.length);
+          info.compressedStamp = accessClock.incrementAndGet();
+          compressedLru.put(info.compressedStamp, info);
+        } else if (!info.cacheFileGood) {
+          // good only while the array hasn't been handed out since it was written
+          DataCacheFile.write(info.cacheFile, info.type, info.data);
+          info.cacheFileGood = true;
+          bytesWritten.addAndGet(info.getSize());
+        }
+        // the compressed copy or the file replaces any off-heap one
+        dropOffHeap(info);
+        evictionCount.incrementAndGet();
+        info.data = null;
+        totalSize.addAndGet(-info.getSize());
+        if (info.lruStamp != 0) {
+          lru.remove(info.lruStamp, info);
+          info.lruStamp = 0;
+        }
       }
+    } catch (Exception exc) {
+      throw new RuntimeException(exc);
+    }
+  }
 
-      if (!info.cacheFileGood) {
-        FileOutputStream fos = new FileOutputStream(info.cacheFile);
-        BufferedOutputStream bos = new BufferedOutputStream(fos,100000);
-        ObjectOutputStream oos = new ObjectOutputStream(fos);
-        oos.writeObject(info.data);
-        oos.close();
-        bos.close();
-        fos.close();
+  /**
+   * Move a compressed entry to disk, writing the file if needed.
+   *
+   * @param info  the cacheinfo
+   */
+  private void spillCompressed(CacheInfo info) {
+    try {
+      synchronized (info) {
+        if (info.compressed == null) {
+          return;
+        }
+        if (!info.cacheFileGood) {
+          DataCacheFile.write(info.cacheFile, info.type,
+                              DataCacheCodec.decompress(info.type, info.compressed));
+          info.cacheFileGood = true;
+          bytesWritten.addAndGet(info.getSize());
+        }
+        dropCompressed(info);
       }
-      info.data = null;
-      totalSize -= info.getSize();
     } catch (Exception exc) {
       throw new RuntimeException(exc);
     }
   }
 
+  /**
+   * Forget the compressed copy, if any. Caller holds the info's monitor.
+   *
+   * @param info  the cacheinfo
+   */
+  private void dropCompressed(CacheInfo info) {
+    if (info.compressed != null) {
+      compressedSize.addAndGet(-info.compressed.length);
+      compressedLru.remove(info.compressedStamp, info);
+      info.compressed = null;
+      info.compressedStamp = 0;
+    }
+  }
+
+  /**
+   * Forget the off-heap copy, if any. Caller holds the info's monitor.
+   *
+   * @param info  the cacheinfo
+   */
+  private void dropOffHeap(CacheInfo info) {
+    if (info.offHeapData != null) {
+      offHeapSize.addAndGet(-DataCacheOffHeap.sizeOf(info.offHeapData));
+      offHeapLru.remove(info.offHeapStamp, info);
+      info.offHeapData = null;
+      info.offHeapStamp = 0;
+    }
+  }
+
+  /**
+   * Keep an entry off the Java heap when it is pushed out of memory,
+   * rather than compressing it or writing it to disk. Turning this off
+   * brings an entry that is only held off-heap back onto the heap.
+   *
+   * @param cacheId  the cache id
+   * @param offHeap  true to keep the entry off-heap
+   */
+  public void setOffHeap(Object cacheId, boolean offHeap) {
+    CacheInfo info = cache.get(cacheId);
+    if (info == null) {
+      return;
+    }
+    synchronized (info) {
+      info.offHeap = offHeap;
+      if (!offHeap && info.offHeapData != null) {
+        if (info.data == null) {
+          info.setDataFromCache(DataCacheOffHeap.load(info.type, info.offHeapData));
+          totalSize.addAndGet(info.getSize());
+        }
+        dropOffHeap(info);
+      }
+    }
+    touch(info);
+    checkCache();
+  }
+
   /**
    * Get the list of sorted CacheInfo objects
    *
    * @return  Sorted list of cacheinfos
    */
   public List<CacheInfo> getCacheInfos() {
-    synchronized (MUTEX) {
-      List<CacheInfo> infos = new ArrayList<CacheInfo>(cache.size());
-      for (Enumeration keys = cache.keys(); keys.hasMoreElements(); ) {
-        CacheInfo info = cache.get(keys.nextElement());
-        infos.add(info);
-      }
-      Collections.sort(infos);
-      return infos;
-    }
+    List<CacheInfo> infos = new ArrayList<CacheInfo>(cache.values());
+    Collections.sort(infos);
+    return infos;
   }
 
   public  void setMemoryPercent(double percentage) {
@@ -386,37 +807,203 @@ public class DataCacheManager  implements Runnable {
     checkCache();
   }
 
+  /**
+   * Get the in-memory budget, clamped to fit an int.
+   *
+   * @return  the budget in bytes, at most Integer.MAX_VALUE
+   * @deprecated use {@link #getMaxBytes()}, which does not clamp
+   */
+  @Deprecated
   public int getMaxSize() {
-    return (int)(memoryPercentage*Runtime.getRuntime().maxMemory());
+    return (int) Math.min(getMaxBytes(), Integer.MAX_VALUE);
+  }
+
+  /**
+   * Get the in-memory budget.
+   *
+   * @return  the budget in bytes
+   */
+  public long getMaxBytes() {
+    return (long)(memoryPercentage*Runtime.getRuntime().maxMemory());
+  }
+
+  /**
+   * Set the share of max memory the compressed tier may use. 0 turns the
+   * tier off and sends evicted data straight to disk.
+   *
+   * @param percentage  fraction of max memory
+   */
+  public void setCompressedMemoryPercent(double percentage) {
+    compressedPercentage = percentage;
+    checkCache();
+  }
+
+  public long getMaxCompressedSize() {
+    return (long)(compressedPercentage*Runtime.getRuntime().maxMemory());
+  }
+
+  /**
+   * Set the budget for off-heap storage, as a share of max memory. Entries
+   * over it are written to disk, least recently used first.
+   *
+   * @param percentage  fraction of max memory
+   */
+  public void setOffHeapMemoryPercent(double percentage) {
+    offHeapPercentage = percentage;
+    checkCache();
+  }
+
+  public long getMaxOffHeapSize() {
+    return (long)(offHeapPercentage*Runtime.getRuntime().maxMemory());
+  }
+
+  /**
+   * Get the number of compressed bytes currently held in memory
+   *
+   * @return compressed bytes in memory
+   */
+  public long getCompressedSize() {
+    return compressedSize.get();
+  }
+
+  /**
+   * Get the number of bytes of cached data currently in memory
+   *
+   * @return bytes in memory
+   */
+  public long getTotalSize() {
+    return totalSize.get();
+  }
+
+  /**
+   * Get the number of reads served from memory
+   *
+   * @return memory hits
+   */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /**
+   * Get the number of reads served by decompressing
+   *
+   * @return compressed tier hits
+   */
+  public long getCompressedHitCount() {
+    return compressedHitCount.get();
+  }
+
+  /**
+   * Get the number of reads that had to go to disk
+   *
+   * @return misses
+   */
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  /**
+   * Get the number of times an entry was pushed out of memory
+   *
+   * @return evictions
+   */
+  public long getEvictionCount() {
+    return evictionCount.get();
+  }
+
+  /**
+   * Get the number of reads served from off-heap storage
+   *
+   * @return off-heap hits
+   */
+  public long getOffHeapHitCount() {
+    return offHeapHitCount.get();
+  }
+
+  /**
+   * Get the number of bytes held off the Java heap
+   *
+   * @return off-heap bytes
+   */
+  public long getOffHeapSize() {
+    return offHeapSize.get();
+  }
+
+  /**
+   * Get the number of bytes written to cache files
+   *
+   * @return bytes spilled
+   */
+  public long getBytesWritten() {
+    return bytesWritten.get();
+  }
+
+  /**
+   * Get the number of bytes read back from cache files
+   *
+   * @return bytes read
+   */
+  public long getBytesRead() {
+    return bytesRead.get();
   }
 
   /**
    *  Check if we are above the max size. If so then flush data from memory  until we are below the threshold
    */
     public  void checkCache() {
-      if (totalSize < getMaxSize()) {
+      if (totalSize.get() <= getMaxBytes()
+          && compressedSize.get() <= getMaxCompressedSize()
+          && offHeapSize.get() <= getMaxOffHeapSize()) {
         return;
       }
-      synchronized (MUTEX) {
+      // wait for anyone already evicting, then evict whatever is still over
+      synchronized (evictLock) {
         //First do the volatile ones
-        for (CacheInfo info : getCacheInfos()) {
-          if(info.removeIfNeeded) {
-            flushCachedData(info);
-            if (totalSize <= getMaxSize()) {
-              break;
-            }
+        evict(volatileLru);
+        evict(lru);
+        long maxCompressed = getMaxCompressedSize();
+        while (compressedSize.get() > maxCompressed) {
+          Map.Entry<Long, CacheInfo> first = compressedLru.pollFirstEntry();
+          if (first == null) {
+            break;
           }
-        }
-        if (totalSize <= getMaxSize()) {
-          for (CacheInfo info : getCacheInfos()) {
-            flushCachedData(info);
-            if (totalSize <= getMaxSize()) {
-              break;
+          CacheInfo info = first.getValue();
+          synchronized (info) {
+            if (info.compressedStamp == first.getKey()) {
+              spillCompressed(info);
             }
           }
         }
+        long overOffHeap = offHeapSize.get() - getMaxOffHeapSize();
+        if (overOffHeap > 0) {
+          spillOffHeap(overOffHeap);
+        }
+      }
+    }
+
+  /**
+   * Flush least recently used entries from the given map until we are
+   * below the max size or it is empty.
+   *
+   * @param order  the lru map
+   */
+  private void evict(ConcurrentSkipListMap<Long, CacheInfo> order) {
+    long max = getMaxBytes();
+    while (totalSize.get() > max) {
+      Map.Entry<Long, CacheInfo> first = order.pollFirstEntry();
+      if (first == null) {
+        return;
+      }
+      CacheInfo info = first.getValue();
+      synchronized (info) {
+        // touched since it was polled; it is back in the map
+        if (info.lruStamp != first.getKey()) {
+          continue;
+        }
+        flushCachedData(info, false);
       }
     }
+  }
 
   /**
    * Print out the cache statistics
@@ -426,40 +1013,35 @@ public class DataCacheManager  implements Runnable {
   }
 
   public String getStats() {
-    synchronized (MUTEX) {
-      StringBuffer sb = new StringBuffer();
-      int mb =(int)( getMaxSize()/(double)1000000.0);
-      int total =(int)( totalSize/(double)1000000.0);
-      sb.append("Cache total size:" + total +" MB   max size:" + mb +" MB  (" + (100*memoryPercentage)+"% of max memory)");
+    StringBuffer sb = new StringBuffer();
+    long mb =(long)( getMaxBytes()/(double)1000000.0);
+    long total =(long)( totalSize.get()/(double)1000000.0);
+    sb.append("Cache total size:" + total +" MB   max size:" + mb +" MB  (" + (100*memoryPercentage)+"% of max memory)");
+    sb.append("\n");
+    long cmb =(long)( getMaxCompressedSize()/(double)1000000.0);
+    long ctotal =(long)( compressedSize.get()/(double)1000000.0);
+    sb.append("Compressed size:" + ctotal +" MB   max size:" + cmb +" MB  (" + (100*compressedPercentage)+"% of max memory)");
+    sb.append("\n");
+    sb.append("Off-heap size:" + (offHeapSize.get() / 1000000) + " MB   max size:" + (getMaxOffHeapSize() / 1000000) + " MB  (" + (100*offHeapPercentage)+"% of max memory)");
+    sb.append("\n");
+    sb.append("Hits:" + hitCount.get() + "  compressed hits:" + compressedHitCount.get() + "  off-heap hits:" + offHeapHitCount.get() + "  misses:" + missCount.get() + "  evictions:" + evictionCount.get());
+    sb.append("  written:" + (bytesWritten.get() / 1000000) + " MB  read:" + (bytesRead.get() / 1000000) + " MB");
+    sb.append("\n");
+    List<CacheInfo> infos= getCacheInfos();
+    if(infos.size()==0) {
+      sb.append("nothing in cache");
       sb.append("\n");
-      List<CacheInfo> infos= getCacheInfos();
-      if(infos.size()==0) {
-        sb.append("nothing in cache");
-        sb.append("\n");
-      } else {
-        sb.append("entry size/in cache/data access/cache miss/last touched");
-        sb.append("\n");
-        int cnt = 0;
-        for (CacheInfo info : infos) {
-          sb.append("   #" + (++cnt) +" ");
-          sb.append(info.toString());
-          /*
-                          "   #" + (++cnt) +" cache entry:" + info.getSize() + "   " + (info.data != null) +
-                                   "   " + info.dataAccessedCnt + "   " + info.cacheMissedCnt + "   " +
-                                   new Date(info.lastTime));
-          */
-          sb.append('\n');
-
-          /*
-          sb.append("what:" + info.what);
-          sb.append("\n");
-          sb.append(info.where.substring(300));
-          sb.append("\n");
-          */
-        }
+    } else {
+      sb.append("entry size/in cache/compressed/data access/cache miss/compressed hit/last touched");
+      sb.append("\n");
+      int cnt = 0;
+      for (CacheInfo info : infos) {
+        sb.append("   #" + (++cnt) +" ");
+        sb.append(info.toString());
+        sb.append('\n');
       }
-      return sb.toString();
     }
+    return sb.toString();
   }
 
   /**
@@ -468,21 +1050,17 @@ public class DataCacheManager  implements Runnable {
    * @param where
    */
   private void checkStats(String where) {
-    synchronized (MUTEX) {
-      int tmp = 0;
-      for (Enumeration keys = cache.keys(); keys.hasMoreElements(); ) {
-        CacheInfo info = cache.get(keys.nextElement());
-        if (info.data != null) tmp += info.getSize();
-      }
+    long tmp = 0;
+    for (CacheInfo info : cache.values()) {
+      if (info.data != null) tmp += info.getSize();
+    }
 
-      if (tmp != totalSize) {
+    if (tmp != totalSize.get()) {
+      System.err.println(
+        "WHOAA: " + where + "  " + tmp + " != total size:" + totalSize.get());
+      for (CacheInfo info : cache.values()) {
         System.err.println(
-          "WHOAA: " + where + "  " + tmp + " != total size:" + totalSize);
-        for (Enumeration keys = cache.keys(); keys.hasMoreElements(); ) {
-          CacheInfo info = cache.get(keys.nextElement());
-          System.err.println(
-            "   cache entry:" + info.getSize() + " " + (info.data != null));
-        }
+          "   cache entry:" + info.getSize() + " " + (info.data != null));
       }
     }
   }
@@ -490,6 +1068,8 @@ public class DataCacheManager  implements Runnable {
   /**
    * Class CacheInfo
    *
+   * <p>Changes to the data, the spill file and the lru stamp happen while
+   * holding the CacheInfo's own monitor.</p>
    *
    * @author IDV Development Team
    */
@@ -502,21 +1082,25 @@ public class DataCacheManager  implements Runnable {
     private int type;
 
     /**  */
-    private int size;
+    private long size;
 
     /**  */
     private Object id;
 
     /**  */
-    private long lastTime;
+    private volatile long lastTime;
 
     /**  */
-    private Object data;
+    private volatile Object data;
 
     /**  */
     private File cacheFile;
 
-    /**           */
+    /**
+     * the spill file matches the data. Cleared whenever the array is handed
+     * out again, since callers may edit it in place (for example through
+     * getFloats(false)) without calling updateData.
+     */
     private boolean cacheFileGood = false;
 
     /**           */
@@ -531,6 +1115,30 @@ public class DataCacheManager  implements Runnable {
 
     private boolean removeIfNeeded = false;
 
+    /** key in the lru map while in memory, 0 when not in it */
+    private long lruStamp = 0;
+
+    /** set once removed from the cache */
+    private boolean removed = false;
+
+    /** the data, compressed, while in the compressed tier */
+    private byte[] compressed;
+
+    /** key in the compressed lru map while compressed */
+    private long compressedStamp = 0;
+
+    /**           */
+    private int compressedHitCnt = 0;
+
+    /** push out of memory into off-heap storage */
+    private boolean offHeap = false;
+
+    /** the data, in direct buffers, once an off-heap entry is evicted */
+    private Object offHeapData;
+
+    /** key in the off-heap lru map while held off-heap */
+    private long offHeapStamp = 0;
+
     /**
      *
      *
@@ -567,6 +1175,13 @@ public class DataCacheManager  implements Runnable {
       cacheMissedCnt++;
     }
 
+    /**
+     *
+     */
+    private void compressedHit() {
+      compressedHitCnt++;
+    }
+
     /**
      *
      *
@@ -590,7 +1205,8 @@ public class DataCacheManager  implements Runnable {
     }
 
     public String toString() {
-        return what+"   " + getTypeName(type) + ":" + getSize() + "   " + (data != null) + "   " + dataAccessedCnt + "   " + cacheMissedCnt + "   " + new Date(lastTime);
+        byte[] packed = compressed;
+        return what+"   " + getTypeName(type) + ":" + getSize() + "   " + (data != null) + "   " + (packed != null ? packed.length : 0) + "   " + dataAccessedCnt + "   " + cacheMissedCnt + "   " + compressedHitCnt + "   " + new Date(lastTime);
     }
 
     /**
@@ -602,9 +1218,7 @@ public class DataCacheManager  implements Runnable {
      */
     public int compareTo(CacheInfo o) {
       CacheInfo that = (CacheInfo)o;
-      if (this.lastTime < that.lastTime) return -1;
-      if (this.lastTime == that.lastTime) return 0;
-      return 1;
+      return Long.compare(this.lastTime, that.lastTime);
     }
 
     /**
@@ -615,6 +1229,7 @@ public class DataCacheManager  implements Runnable {
     private void setDataFromCache(Object data) {
       lastTime = System.currentTimeMillis();
       this.data = data;
+      cacheFileGood = false;
     }
 
     /**
@@ -631,7 +1246,7 @@ public class DataCacheManager  implements Runnable {
      *
      * @return
      */
-    public int getSize() {
+    public long getSize() {
       return size;
     }
 
@@ -648,21 +1263,21 @@ public class DataCacheManager  implements Runnable {
   /********
    Begin generated access methods
    *****/
-  private static final int TYPE_DOUBLE1D = 0;
-  private static final int TYPE_FLOAT1D = 1;
-  private static final int TYPE_INT1D = 2;
-  private static final int TYPE_SHORT1D = 3;
-  private static final int TYPE_BYTE1D = 4;
-  private static final int TYPE_DOUBLE2D = 5;
-  private static final int TYPE_FLOAT2D = 6;
-  private static final int TYPE_INT2D = 7;
-  private static final int TYPE_SHORT2D = 8;
-  private static final int TYPE_BYTE2D = 9;
-  private static final int TYPE_DOUBLE3D = 10;
-  private static final int TYPE_FLOAT3D = 11;
-  private static final int TYPE_INT3D = 12;
-  private static final int TYPE_SHORT3D = 13;
-  private static final int TYPE_BYTE3D = 14;
+  static final int TYPE_DOUBLE1D = 0;
+  static final int TYPE_FLOAT1D = 1;
+  static final int TYPE_INT1D = 2;
+  static final int TYPE_SHORT1D = 3;
+  static final int TYPE_BYTE1D = 4;
+  static final int TYPE_DOUBLE2D = 5;
+  static final int TYPE_FLOAT2D = 6;
+  static final int TYPE_INT2D = 7;
+  static final int TYPE_SHORT2D = 8;
+  static final int TYPE_BYTE2D = 9;
+  static final int TYPE_DOUBLE3D = 10;
+  static final int TYPE_FLOAT3D = 11;
+  static final int TYPE_INT3D = 12;
+  static final int TYPE_SHORT3D = 13;
+  static final int TYPE_BYTE3D = 14;
 
   /**
    * get the value from the cache
@@ -1385,95 +2000,95 @@ public class DataCacheManager  implements Runnable {
   }
 
   /** Get the size of the array **/
-  private static int getArraySize(int type, Object values) {
+  private static long getArraySize(int type, Object values) {
     if (type == TYPE_DOUBLE1D) {
       double[] data = (double[])values;
-      return 8 * data.length;
+      return 8L * data.length;
     }
 
     if (type == TYPE_FLOAT1D) {
       float[] data = (float[])values;
-      return 4 * data.length;
+      return 4L * data.length;
     }
 
     if (type == TYPE_INT1D) {
       int[] data = (int[])values;
-      return 4 * data.length;
+      return 4L * data.length;
     }
 
     if (type == TYPE_SHORT1D) {
       short[] data = (short[])values;
-      return 2 * data.length;
+      return 2L * data.length;
     }
 
     if (type == TYPE_BYTE1D) {
       byte[] data = (byte[])values;
-      return 1 * data.length;
+      return 1L * data.length;
     }
 
     if (type == TYPE_DOUBLE2D) {
       double[][] data = (double[][])values;
       if (data[0] == null) return 0;
-      return 8 * data.length * data[0].length;
+      return 8L * data.length * data[0].length;
     }
 
     if (type == TYPE_FLOAT2D) {
       float[][] data = (float[][])values;
       if (data[0] == null) return 0;
-      return 4 * data.length * data[0].length;
+      return 4L * data.length * data[0].length;
     }
 
     if (type == TYPE_INT2D) {
       int[][] data = (int[][])values;
       if (data[0] == null) return 0;
-      return 4 * data.length * data[0].length;
+      return 4L * data.length * data[0].length;
     }
 
     if (type == TYPE_SHORT2D) {
       short[][] data = (short[][])values;
       if (data[0] == null) return 0;
-      return 2 * data.length * data[0].length;
+      return 2L * data.length * data[0].length;
     }
 
     if (type == TYPE_BYTE2D) {
       byte[][] data = (byte[][])values;
       if (data[0] == null) return 0;
-      return 1 * data.length * data[0].length;
+      return 1L * data.length * data[0].length;
     }
 
     if (type == TYPE_DOUBLE3D) {
       double[][][] data = (double[][][])values;
       if (data[0] == null) return 0;
       if (data[0][0] == null) return 0;
-      return 8 * data.length * data[0].length * data[0][0].length;
+      return 8L * data.length * data[0].length * data[0][0].length;
     }
 
     if (type == TYPE_FLOAT3D) {
       float[][][] data = (float[][][])values;
       if (data[0] == null) return 0;
       if (data[0][0] == null) return 0;
-      return 4 * data.length * data[0].length * data[0][0].length;
+      return 4L * data.length * data[0].length * data[0][0].length;
     }
 
     if (type == TYPE_INT3D) {
       int[][][] data = (int[][][])values;
       if (data[0] == null) return 0;
       if (data[0][0] == null) return 0;
-      return 4 * data.length * data[0].length * data[0][0].length;
+      return 4L * data.length * data[0].length * data[0][0].length;
     }
 
     if (type == TYPE_SHORT3D) {
       short[][][] data = (short[][][])values;
       if (data[0] == null) return 0;
       if (data[0][0] == null) return 0;
-      return 2 * data.length * data[0].length * data[0][0].length;
+      return 2L * data.length * data[0].length * data[0][0].length;
     }
 
     if (type == TYPE_BYTE3D) {
       byte[][][] data = (byte[][][])values;
       if (data[0] == null) return 0;
       if (data[0][0] == null) return 0;
-      return 1 * data.length * data[0].length * data[0][0].length;
+      return 1L * data.length * data[0].length * data[0][0].length;
     }
     throw new IllegalArgumentException("Unknown type:" + type);
   }
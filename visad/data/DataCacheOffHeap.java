@@ -0,0 +1,278 @@
+/*
+ * This file is part of McIDAS-V
+ *
+ * Copyright 2007-2025
+ * Space Science and Engineering Center (SSEC)
+ * University of Wisconsin - Madison
+ * 1225 W. Dayton Street, Madison, WI 53706, USA
+ * https://www.ssec.wisc.edu/mcidas/
+ *
+ * All Rights Reserved
+ *
+ * McIDAS-V is built on Unidata's IDV and SSEC's VisAD libraries, and
+ * some McIDAS-V source code is based on IDV and VisAD source code.
+ *
+ * McIDAS-V is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * McIDAS-V is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser Public License
+ * along with this program.  If not, see https://www.gnu.org/licenses/.
+ */
+
+package visad.data;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Keeps {@link DataCacheManager} arrays outside the Java heap, in direct
+ * buffers, for entries marked off-heap.
+ *
+ * <p>Each leaf array is split over buffers of at most 1GB, so its size is
+ * not limited by what a single buffer can address. Rows keep the shape of
+ * the array, with null rows kept as null. Buffers use the native byte
+ * order, which makes copying in and out a bulk memory copy.</p>
+ *
+ * <p>Native memory is returned when the buffers are collected; dropping the
+ * stored value is all that releasing it takes, and the garbage collector
+ * only sees a small object per buffer rather than the array itself.</p>
+ */
+final class DataCacheOffHeap {
+
+  /** largest buffer, in bytes; a multiple of every element size */
+  private static final int MAX_CHUNK_BYTES = 1 << 30;
+
+  private DataCacheOffHeap() {}
+
+  /** one leaf array, split over direct buffers */
+  private static final class Leaf {
+
+    final int length;
+
+    final ByteBuffer[] chunks;
+
+    Leaf(int length, ByteBuffer[] chunks) {
+      this.length = length;
+      this.chunks = chunks;
+    }
+  }
+
+  /**
+   * Copy the array into direct buffers.
+   *
+   * @param type  one of the DataCacheManager TYPE_ constants
+   * @param data  the array
+   *
+   * @return the stored value, for {@link #load(int, Object)}
+   */
+  static Object store(int type, Object data) {
+    return store(data, DataCacheFile.getRank(type), DataCacheFile.getKind(type));
+  }
+
+  /**
+   * Copy a stored value back onto the heap.
+   *
+   * @param type  the type the array was stored with
+   * @param stored  what {@link #store(int, Object)} returned
+   *
+   * @return the array
+   */
+  static Object load(int type, Object stored) {
+    return load(stored, DataCacheFile.getRank(type), DataCacheFile.getKind(type));
+  }
+
+  /**
+   * Copy the array over a stored value of the same shape, so in-place edits
+   * made while it was on the heap are kept without new buffers.
+   *
+   * @param type  the type the array was stored with
+   * @param stored  what {@link #store(int, Object)} returned
+   * @param data  the array
+   *
+   * @return false if the shapes differ and nothing was copied
+   */
+  static boolean update(int type, Object stored, Object data) {
+    if (!sameShape(stored, data, DataCacheFile.getRank(type))) {
+      return false;
+    }
+    update(stored, data, DataCacheFile.getRank(type), DataCacheFile.getKind(type));
+    return true;
+  }
+
+  /**
+   * Get the native memory held by a stored value.
+   *
+   * @param stored  what {@link #store(int, Object)} returned
+   *
+   * @return bytes
+   */
+  static long sizeOf(Object stored) {
+    if (stored == null) {
+      return 0;
+    }
+    if (stored instanceof Leaf) {
+      long bytes = 0;
+      for (ByteBuffer chunk : ((Leaf)stored).chunks) {
+        bytes += chunk.capacity();
+      }
+      return bytes;
+    }
+    long bytes = 0;
+    for (Object row : (Object[])stored) {
+      bytes += sizeOf(row);
+    }
+    return bytes;
+  }
+
+  private static Object store(Object data, int rank, int kind) {
+    if (data == null) {
+      return null;
+    }
+    if (rank > 1) {
+      Object[] rows = (Object[])data;
+      Object[] stored = new Object[rows.length];
+      for (int i = 0; i < rows.length; i++) {
+        stored[i] = store(rows[i], rank - 1, kind);
+      }
+      return stored;
+    }
+
+    int length = java.lang.reflect.Array.getLength(data);
+    int elementSize = DataCacheFile.getElementSize(kind);
+    int perChunk = MAX_CHUNK_BYTES / elementSize;
+    int numChunks = Math.max(1, (length + perChunk - 1) / perChunk);
+    ByteBuffer[] chunks = new ByteBuffer[numChunks];
+    for (int c = 0; c < numChunks; c++) {
+      int offset = c * perChunk;
+      int n = Math.min(perChunk, length - offset);
+      ByteBuffer buf = ByteBuffer.allocateDirect(n * elementSize)
+                                 .order(ByteOrder.nativeOrder());
+      switch (kind) {
+        case DataCacheFile.KIND_DOUBLE:
+          buf.asDoubleBuffer().put((double[])data, offset, n);
+          break;
+        case DataCacheFile.KIND_FLOAT:
+          buf.asFloatBuffer().put((float[])data, offset, n);
+          break;
+        case DataCacheFile.KIND_INT:
+          buf.asIntBuffer().put((int[])data, offset, n);
+          break;
+        case DataCacheFile.KIND_SHORT:
+          buf.asShortBuffer().put((short[])data, offset, n);
+          break;
+        default:
+          buf.put((byte[])data, offset, n);
+          break;
+      }
+      chunks[c] = buf;
+    }
+    return new Leaf(length, chunks);
+  }
+
+  private static boolean sameShape(Object stored, Object data, int rank) {
+    if (stored == null || data == null) {
+      return stored == data;
+    }
+    if (rank > 1) {
+      Object[] storedRows = (Object[])stored;
+      Object[] rows = (Object[])data;
+      if (storedRows.length != rows.length) {
+        return false;
+      }
+      for (int i = 0; i < rows.length; i++) {
+        if (!sameShape(storedRows[i], rows[i], rank - 1)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    return ((Leaf)stored).length == java.lang.reflect.Array.getLength(data);
+  }
+
+  private static void update(Object stored, Object data, int rank, int kind) {
+    if (stored == null) {
+      return;
+    }
+    if (rank > 1) {
+      Object[] storedRows = (Object[])stored;
+      Object[] rows = (Object[])data;
+      for (int i = 0; i < rows.length; i++) {
+        update(storedRows[i], rows[i], rank - 1, kind);
+      }
+      return;
+    }
+
+    int offset = 0;
+    for (ByteBuffer chunk : ((Leaf)stored).chunks) {
+      ByteBuffer buf = chunk.duplicate().order(ByteOrder.nativeOrder());
+      int n = buf.capacity() / DataCacheFile.getElementSize(kind);
+      switch (kind) {
+        case DataCacheFile.KIND_DOUBLE:
+          buf.asDoubleBuffer().put((double[])data, offset, n);
+          break;
+        case DataCacheFile.KIND_FLOAT:
+          buf.asFloatBuffer().put((float[])data, offset, n);
+          break;
+        case DataCacheFile.KIND_INT:
+          buf.asIntBuffer().put((int[])data, offset, n);
+          break;
+        case DataCacheFile.KIND_SHORT:
+          buf.asShortBuffer().put((short[])data, offset, n);
+          break;
+        default:
+          buf.put((byte[])data, offset, n);
+          break;
+      }
+      offset += n;
+    }
+  }
+
+  private static Object load(Object stored, int rank, int kind) {
+    if (stored == null) {
+      return null;
+    }
+    if (rank > 1) {
+      Object[] storedRows = (Object[])stored;
+      Object[] rows = DataCacheFile.newRows(kind, rank, storedRows.length);
+      for (int i = 0; i < storedRows.length; i++) {
+        rows[i] = load(storedRows[i], rank - 1, kind);
+      }
+      return rows;
+    }
+
+    Leaf leaf = (Leaf)stored;
+    Object data = DataCacheFile.newLeaf(kind, leaf.length);
+    int offset = 0;
+    for (ByteBuffer chunk : leaf.chunks) {
+      // duplicate so concurrent loads don't share a position
+      ByteBuffer buf = chunk.duplicate().order(ByteOrder.nativeOrder());
+      int n = buf.capacity() / DataCacheFile.getElementSize(kind);
+      switch (kind) {
+        case DataCacheFile.KIND_DOUBLE:
+          buf.asDoubleBuffer().get((double[])data, offset, n);
+          break;
+        case DataCacheFile.KIND_FLOAT:
+          buf.asFloatBuffer().get((float[])data, offset, n);
+          break;
+        case DataCacheFile.KIND_INT:
+          buf.asIntBuffer().get((int[])data, offset, n);
+          break;
+        case DataCacheFile.KIND_SHORT:
+          buf.asShortBuffer().get((short[])data, offset, n);
+          break;
+        default:
+          buf.get((byte[])data, offset, n);
+          break;
+      }
+      offset += n;
+    }
+    return data;
+  }
+}